@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary groups which are read in place from a memory-mapped file (see {@link Reader}), so loading them costs
+ * nothing and only groups which are asked for are decoded.
+ * <p>
+ * Layout (all numbers are big-endian ints, a string is the number of its UTF-8 bytes and the bytes, -1 - null):
+ *
+ * <pre>
+ * header:  MAGIC, VERSION, flags (1 - words have counts, 2 - payloads), groupsCount
+ * groups:  for each group wordsCount, then for each word the word, occurrences and spellingsCount and spellings if
+ *          there are counts, the payload if there are payloads
+ * offsets: offset of each group from the start of the file
+ * footer:  offset of the offsets, MAGIC
+ * </pre>
+ */
+public class BinaryOutputFormat extends OutputFormat {
+
+    private static final int MAGIC = 0x5954474F; // "YTGO"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FOOTER_SIZE = 8;
+    private static final int WITH_COUNTS = 1;
+    private static final int WITH_PAYLOADS = 2;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[] { ".grp" };
+    }
+
+    @Override
+    public void write(List<Group> groups, OutputWriter out, boolean withCounts) throws IOException {
+        long start = out.getPosition();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // payloads are given either to all words or to none of them
+        boolean withPayloads = !groups.isEmpty() && groups.get(0).getElements().get(0).getPayload() != null;
+        out.writeInt((withCounts ? WITH_COUNTS : 0) | (withPayloads ? WITH_PAYLOADS : 0));
+        out.writeInt(groups.size());
+        int[] offsets = new int[groups.size()];
+        int groupId = 0;
+        for (Group grp : groups) {
+            offsets[groupId++] = offset(out, start);
+            List<WordWrapper> words = grp.getElements();
+            out.writeInt(words.size());
+            for (WordWrapper wrd : words) {
+                out.writeString(wrd.getOriginalWord());
+                if (withCounts) {
+                    out.writeInt(wrd.getOccurrences());
+                    out.writeInt(wrd.getSpellings().size());
+                    for (String spelling : wrd.getSpellings()) {
+                        out.writeString(spelling);
+                    }
+                }
+                if (withPayloads) {
+                    out.writeString(wrd.getPayload());
+                }
+            }
+        }
+        int offsetsStart = offset(out, start);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        out.writeInt(offsetsStart);
+        out.writeInt(MAGIC);
+    }
+
+    // offsets are ints, so the mapping of a file is one buffer
+    private static int offset(OutputWriter out, long start) throws IOException {
+        long offset = out.getPosition() - start;
+        if (offset > Integer.MAX_VALUE - FOOTER_SIZE) {
+            throw new IOException("binary groups can not be larger than 2 GB");
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Opens the file with groups written in this format.
+     */
+    public static Reader open(String file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Groups read in place from the buffer, a group is decoded each time it is asked for.
+     */
+    public static class Reader {
+        private final ByteBuffer data;
+        private final boolean withCounts;
+        private final boolean withPayloads;
+        private final int groupsCount;
+        private final int offsetsStart;
+
+        public Reader(ByteBuffer data) throws IOException {
+            this.data = data;
+            if (data.limit() < HEADER_SIZE + FOOTER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION
+                    || data.getInt(data.limit() - 4) != MAGIC) {
+                throw new IOException("not binary groups of version " + VERSION);
+            }
+            withCounts = (data.getInt(8) & WITH_COUNTS) != 0;
+            withPayloads = (data.getInt(8) & WITH_PAYLOADS) != 0;
+            groupsCount = data.getInt(12);
+            offsetsStart = data.getInt(data.limit() - FOOTER_SIZE);
+        }
+
+        public int getGroupsCount() {
+            return groupsCount;
+        }
+
+        public boolean hasCounts() {
+            return withCounts;
+        }
+
+        /**
+         * Decodes the group, its words have the counts and payloads which were written.
+         */
+        public Group getGroup(int groupId) {
+            int pos = data.getInt(offsetsStart + 4 * groupId);
+            int wordsCount = data.getInt(pos);
+            pos += 4;
+            List<WordWrapper> words = new ArrayList<WordWrapper>(wordsCount);
+            for (int i = 0; i < wordsCount; i++) {
+                WordWrapper wrd = new WordWrapper(getString(pos));
+                pos = skipString(pos);
+                if (withCounts) {
+                    int occurrences = data.getInt(pos);
+                    int spellingsCount = data.getInt(pos + 4);
+                    pos += 8;
+                    List<String> spellings = new ArrayList<String>(spellingsCount);
+                    for (int j = 0; j < spellingsCount; j++) {
+                        spellings.add(getString(pos));
+                        pos = skipString(pos);
+                    }
+                    wrd.setOccurrences(occurrences, spellings);
+                }
+                if (withPayloads) {
+                    wrd.setPayload(getString(pos));
+                    pos = skipString(pos);
+                }
+                words.add(wrd);
+            }
+            return Group.view(words);
+        }
+
+        /**
+         * Returns a read-only view of all groups, which can be given e.g. to another format.
+         */
+        public List<Group> getGroups() {
+            return new AbstractList<Group>() {
+                @Override
+                public Group get(int index) {
+                    return getGroup(index);
+                }
+
+                @Override
+                public int size() {
+                    return groupsCount;
+                }
+            };
+        }
+
+        private String getString(int pos) {
+            int length = data.getInt(pos);
+            if (length < 0) {
+                return null;
+            }
+            ByteBuffer bytes = data.duplicate();
+            bytes.position(pos + 4);
+            bytes.limit(pos + 4 + length);
+            return StandardCharsets.UTF_8.decode(bytes).toString();
+        }
+
+        private int skipString(int pos) {
+            return pos + 4 + Math.max(data.getInt(pos), 0);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Burkhard-Keller tree of strings over the Levenshtein distance. It finds all stored strings within the given distance
+ * from a query without comparing the query with each of them: children of every node are indexed by their distance to
+ * it, and by the triangle inequality only children with distance in [d - radius, d + radius] can contain matches, where
+ * d is the distance between the query and the node.
+ */
+public class BkTree {
+
+    private static class Node {
+        String key;
+        // ids of all strings equal to the key
+        List<Integer> ids = new ArrayList<Integer>(1);
+        // children by their distance to this node, the array grows when needed
+        Node[] children;
+
+        Node(String key, int id) {
+            this.key = key;
+            ids.add(id);
+        }
+    }
+
+    private Node root;
+
+    /**
+     * Stores the string with the specified id. Several ids can be stored for the same string.
+     */
+    public void add(String key, int id) {
+        if (root == null) {
+            root = new Node(key, id);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int dist = WordDifferenceCalculator.calcLevenshteinDistance(node.key, key);
+            if (dist == 0) {
+                node.ids.add(id);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new Node[dist + 1];
+            } else if (node.children.length <= dist) {
+                node.children = Arrays.copyOf(node.children, dist + 1);
+            }
+            if (node.children[dist] == null) {
+                node.children[dist] = new Node(key, id);
+                return;
+            }
+            node = node.children[dist];
+        }
+    }
+
+    /**
+     * Returns ids of all stored strings which Levenshtein distance to the query is not greater than the radius.
+     */
+    public List<Integer> find(String query, int radius) {
+        List<Integer> result = new ArrayList<Integer>();
+        if (root == null) {
+            return result;
+        }
+        Deque<Node> nodesToCheck = new ArrayDeque<Node>();
+        nodesToCheck.push(root);
+        while (!nodesToCheck.isEmpty()) {
+            Node node = nodesToCheck.pop();
+            int dist = WordDifferenceCalculator.calcLevenshteinDistance(node.key, query);
+            if (dist <= radius) {
+                result.addAll(node.ids);
+            }
+            if (node.children == null) {
+                continue;
+            }
+            int maxChildDist = Math.min(dist + radius, node.children.length - 1);
+            for (int childDist = Math.max(1, dist - radius); childDist <= maxChildDist; childDist++) {
+                if (node.children[childDist] != null) {
+                    nodesToCheck.push(node.children[childDist]);
+                }
+            }
+        }
+        return result;
+    }
+}
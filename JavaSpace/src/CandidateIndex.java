@@ -0,0 +1,15 @@
+import java.util.List;
+
+/**
+ * Index of strings which gives candidates for similarity check, so that not each pair of strings has to be compared.
+ * Candidates may contain strings which are not similar, but similar strings should not be missed (or should be missed
+ * rarely, if the index is a probabilistic one).
+ */
+public interface CandidateIndex {
+
+    /**
+     * Returns ids of strings added before which may be similar to the given one, and adds the given string with the
+     * specified id.
+     */
+    List<Integer> addAndFindCandidates(String str, int id);
+}
@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Input which is gzip or zlib (deflate) compressed or plain, the format is told by the magic bytes at the beginning.
+ * Compressed input is inflated in a background thread into a few buffers ahead, so inflating and parsing of the
+ * inflated bytes go at the same time, and the reader of the channel waits only when it is faster.
+ * <p>
+ * A gzip file may have several members (e.g. made by bgzip or by concatenating gzip files), then members can be
+ * inflated in an executor in parallel. Member bounds are known only after inflating, so each offset where a member
+ * header may start is inflated speculatively, and the chain of members is followed from the beginning: the member
+ * which ends at the start of a candidate proves it, and wrong candidates inside compressed data are dropped. Big
+ * members are inflated by the background thread in turn, so memory stays bounded.
+ */
+public class CompressedInput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // inflated buffers which may wait for the reader
+    private static final int BUFFERS_AHEAD = 16;
+    // members inflated in parallel ahead of the one being read
+    private static final int MEMBERS_AHEAD = 8;
+    // a member inflated in parallel is kept whole up to this size
+    private static final int MAX_MEMBER_SIZE = 1 << 23;
+
+    private static final int GZIP_MAGIC = 0x1F8B;
+    private static final int DEFLATED = 8;
+    // flags of a gzip header
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int RESERVED_FLAGS = 0xE0;
+
+    // buffer which marks the end of inflated input
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Opens the file, the channel gives it inflated if it is compressed. Members of a gzip file are inflated in the
+     * executor if it is given.
+     */
+    public static ReadableByteChannel open(String filePath, ExecutorService executor) throws IOException {
+        final FileChannel channel = FileChannel.open(Paths.get(filePath));
+        try {
+            int magic = readMagic(channel);
+            if (magic == GZIP_MAGIC && executor != null) {
+                return new InflatingChannel(channel, new GzipMembers(channel, executor));
+            } else if (magic == GZIP_MAGIC || isZlib(magic)) {
+                return open(magic, Channels.newInputStream(channel), channel);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a channel of the stream (e.g. System.in), it is inflated if it is compressed.
+     */
+    public static ReadableByteChannel open(InputStream in) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(in, 2);
+        byte[] head = new byte[2];
+        int length = 0;
+        for (int count = 0; count >= 0 && length < head.length; length += Math.max(count, 0)) {
+            count = stream.read(head, length, head.length - length);
+        }
+        stream.unread(head, 0, length);
+        int magic = length == 2 ? (head[0] & 0xFF) << 8 | head[1] & 0xFF : -1;
+        return open(magic, stream, Channels.newChannel(stream));
+    }
+
+    /**
+     * Returns true if the file is gzip or zlib compressed.
+     */
+    public static boolean isCompressed(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath));
+        try {
+            int magic = readMagic(channel);
+            return magic == GZIP_MAGIC || isZlib(magic);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static ReadableByteChannel open(int magic, final InputStream in, ReadableByteChannel plain)
+            throws IOException {
+        if (magic == GZIP_MAGIC) {
+            return new InflatingChannel(plain, new GZIPInputStream(in, BUFFER_SIZE));
+        } else if (isZlib(magic)) {
+            return new InflatingChannel(plain, new InflaterInputStream(in, new Inflater(), BUFFER_SIZE));
+        }
+        return plain;
+    }
+
+    // the first two bytes, -1 if there are fewer
+    private static int readMagic(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(2);
+        for (int count = 0; count >= 0 && head.hasRemaining(); count = channel.read(head, head.position())) {
+            // reads until both bytes are read or the file ends
+        }
+        return head.position() == 2 ? (head.get(0) & 0xFF) << 8 | head.get(1) & 0xFF : -1;
+    }
+
+    // zlib header: deflate method, window up to 32K and the check of both bytes
+    private static boolean isZlib(int magic) {
+        return magic >= 0 && (magic >> 8 & 0x0F) == DEFLATED && (magic >> 12) <= 7 && magic % 31 == 0;
+    }
+
+    /**
+     * Channel of bytes inflated by the background thread, it closes the input when it is closed.
+     */
+    private static class InflatingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel input;
+        private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(BUFFERS_AHEAD);
+        private final Thread inflater;
+        private volatile IOException failure;
+        private byte[] buffer;
+        private int position;
+        private boolean open = true;
+
+        InflatingChannel(ReadableByteChannel input, final InputStream inflated) {
+            this(input, new Source() {
+                @Override
+                public void inflate(BlockingQueue<byte[]> buffers) throws IOException, InterruptedException {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    for (int count = inflated.read(buf); count >= 0; count = inflated.read(buf)) {
+                        if (count > 0) {
+                            buffers.put(Arrays.copyOf(buf, count));
+                        }
+                    }
+                }
+            });
+        }
+
+        InflatingChannel(ReadableByteChannel input, final Source source) {
+            this.input = input;
+            inflater = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        source.inflate(buffers);
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (RuntimeException e) {
+                        failure = new IOException(e);
+                    }
+                    try {
+                        buffers.put(END);
+                    } catch (InterruptedException e) {
+                        // the channel is closed
+                    }
+                }
+            }, "inflater");
+            // an unclosed channel does not keep the program running
+            inflater.setDaemon(true);
+            inflater.start();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (buffer == END) {
+                return -1;
+            }
+            if (buffer == null || position == buffer.length) {
+                try {
+                    buffer = buffers.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+                if (buffer == END) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+            }
+            int count = Math.min(dst.remaining(), buffer.length - position);
+            dst.put(buffer, position, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            inflater.interrupt();
+            input.close();
+        }
+    }
+
+    // inflates the whole input into buffers in order
+    private interface Source {
+        void inflate(BlockingQueue<byte[]> buffers) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Members of a gzip file inflated in the executor speculatively (see {@link CompressedInput}).
+     */
+    private static class GzipMembers implements Source {
+        private final FileChannel channel;
+        private final ExecutorService executor;
+
+        GzipMembers(FileChannel channel, ExecutorService executor) {
+            this.channel = channel;
+            this.executor = executor;
+        }
+
+        @Override
+        public void inflate(BlockingQueue<byte[]> buffers) throws IOException, InterruptedException {
+            long size = channel.size();
+            Deque<Long> offsets = new ArrayDeque<Long>();
+            Deque<Future<Member>> members = new ArrayDeque<Future<Member>>();
+            Candidates candidates = new Candidates(channel, size);
+            long next = 0;
+            try {
+                while (next < size) {
+                    // candidates inside the last member are wrong
+                    while (!offsets.isEmpty() && offsets.peekFirst() < next) {
+                        offsets.removeFirst();
+                        members.removeFirst().cancel(false);
+                    }
+                    while (offsets.size() < MEMBERS_AHEAD) {
+                        long offset = candidates.next();
+                        if (offset < 0) {
+                            break;
+                        }
+                        if (offset >= next) {
+                            offsets.addLast(offset);
+                            members.addLast(executor.submit(inflateTask(offset)));
+                        }
+                    }
+                    if (offsets.isEmpty() || offsets.peekFirst() != next) {
+                        if (next == 0) {
+                            throw new ZipException("Not in GZIP format");
+                        }
+                        // trailing bytes which are not a member are ignored as GZIPInputStream does
+                        return;
+                    }
+                    offsets.removeFirst();
+                    Member member = get(members.removeFirst());
+                    if (member == null || member.end < 0) {
+                        // the member is too big to keep it whole, or it is broken and inflating it in turn tells how
+                        member = inflateMember(channel, next, buffers);
+                    } else {
+                        for (int start = 0; start < member.length; start += BUFFER_SIZE) {
+                            buffers.put(Arrays.copyOfRange(member.bytes, start,
+                                    Math.min(start + BUFFER_SIZE, member.length)));
+                        }
+                    }
+                    if (member.end < 0) {
+                        if (next == 0) {
+                            throw new ZipException("Not in GZIP format");
+                        }
+                        return;
+                    }
+                    next = member.end;
+                }
+            } finally {
+                // interrupting would close the channel for all readers, so running tasks just end
+                for (Future<Member> member : members) {
+                    member.cancel(false);
+                }
+            }
+        }
+
+        private Callable<Member> inflateTask(final long offset) {
+            return new Callable<Member>() {
+                @Override
+                public Member call() throws IOException, InterruptedException {
+                    // it is not known yet whether a member starts at the offset
+                    return inflateMember(channel, offset, null);
+                }
+            };
+        }
+
+        private static Member get(Future<Member> member) throws IOException, InterruptedException {
+            try {
+                return member.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    // offsets where a gzip member header may start, found as they are asked for
+    private static class Candidates {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer window = ByteBuffer.allocate(BUFFER_SIZE);
+        private long windowStart;
+        private long scanned;
+
+        Candidates(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            window.limit(0);
+        }
+
+        // the next candidate, -1 if there are no more
+        long next() throws IOException {
+            while (scanned + 3 < size) {
+                if (scanned + 4 > windowStart + window.limit()) {
+                    windowStart = scanned;
+                    window.clear();
+                    for (int count = 0; count >= 0 && window.hasRemaining();
+                            count = channel.read(window, windowStart + window.position())) {
+                        // reads the whole window or the rest of the file
+                    }
+                    window.flip();
+                }
+                int i = (int) (scanned - windowStart);
+                scanned++;
+                if (window.get(i) == (byte) 0x1F && window.get(i + 1) == (byte) 0x8B && window.get(i + 2) == DEFLATED
+                        && (window.get(i + 3) & RESERVED_FLAGS) == 0) {
+                    return scanned - 1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // inflated bytes of a member and the offset after it, -1 - there is no valid member at the offset
+    private static class Member {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int length;
+        long end = -1;
+    }
+
+    // compressed bytes read by positions, several threads may read the channel at once
+    private static class Input {
+        private final FileChannel channel;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        // offset of buf in the file
+        private long bufStart;
+        private int pos;
+        private int limit;
+
+        Input(FileChannel channel, long offset) {
+            this.channel = channel;
+            bufStart = offset;
+        }
+
+        boolean fill() throws IOException {
+            bufStart += limit;
+            pos = 0;
+            limit = Math.max(channel.read(ByteBuffer.wrap(buf), bufStart), 0);
+            return limit > 0;
+        }
+
+        // the next byte, -1 at the end of the file
+        int read() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        long readLittleEndian(int bytes) throws IOException {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                int b = read();
+                if (b < 0) {
+                    return -1;
+                }
+                value |= (long) b << (8 * i);
+            }
+            return value;
+        }
+
+        long position() {
+            return bufStart + pos;
+        }
+    }
+
+    /**
+     * Inflates the member at the offset into the buffers, or into the member if there are no buffers, then null is
+     * returned if it is too big. The member has end -1 if the offset is not the start of a member. If there are
+     * buffers, the offset is surely the start of a member once its header is valid, so broken data is an error.
+     */
+    private static Member inflateMember(FileChannel channel, long offset, BlockingQueue<byte[]> buffers)
+            throws IOException, InterruptedException {
+        Member member = new Member();
+        Input in = new Input(channel, offset);
+        if (!readHeader(in)) {
+            return member;
+        }
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (in.pos == in.limit && !in.fill()) {
+                        return broken(member, buffers, "Unexpected end of the GZIP member at " + offset);
+                    }
+                    inflater.setInput(in.buf, in.pos, in.limit - in.pos);
+                    in.pos = in.limit;
+                }
+                if (member.length == member.bytes.length) {
+                    if (buffers != null) {
+                        buffers.put(member.bytes);
+                        member.bytes = new byte[BUFFER_SIZE];
+                        member.length = 0;
+                    } else if (member.length == MAX_MEMBER_SIZE) {
+                        return null;
+                    } else {
+                        member.bytes = Arrays.copyOf(member.bytes, Math.min(member.length * 2, MAX_MEMBER_SIZE));
+                    }
+                }
+                int count = inflater.inflate(member.bytes, member.length, member.bytes.length - member.length);
+                crc.update(member.bytes, member.length, count);
+                member.length += count;
+                length += count;
+            }
+            in.pos = in.limit - inflater.getRemaining();
+        } catch (DataFormatException e) {
+            return broken(member, buffers, "Corrupt GZIP member at " + offset + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        if (in.readLittleEndian(4) != crc.getValue() || in.readLittleEndian(4) != (length & 0xFFFFFFFFL)) {
+            return broken(member, buffers, "Corrupt GZIP trailer of the member at " + offset);
+        }
+        if (buffers != null && member.length > 0) {
+            buffers.put(Arrays.copyOf(member.bytes, member.length));
+            member.length = 0;
+        }
+        member.end = in.position();
+        return member;
+    }
+
+    private static Member broken(Member member, BlockingQueue<byte[]> buffers, String message) throws ZipException {
+        if (buffers != null) {
+            throw new ZipException(message);
+        }
+        member.end = -1;
+        return member;
+    }
+
+    // passes the gzip header, returns false if it is not valid
+    private static boolean readHeader(Input in) throws IOException {
+        if (in.read() != 0x1F || in.read() != 0x8B || in.read() != DEFLATED) {
+            return false;
+        }
+        int flags = in.read();
+        if (flags < 0 || (flags & RESERVED_FLAGS) != 0 || in.readLittleEndian(4) < 0 || in.readLittleEndian(2) < 0) {
+            return false;
+        }
+        if ((flags & FEXTRA) != 0) {
+            long extra = in.readLittleEndian(2);
+            for (long i = 0; i < extra; i++) {
+                if (in.read() < 0) {
+                    return false;
+                }
+            }
+        }
+        for (int flag : new int[] { FNAME, FCOMMENT }) {
+            if ((flags & flag) != 0) {
+                for (int b = in.read(); b != 0; b = in.read()) {
+                    if (b < 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return (flags & FHCRC) == 0 || in.readLittleEndian(2) >= 0;
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free disjoint-set which can be used from several threads at once.
+ * <p>
+ * Roots are always linked so that the element with the smaller index becomes the parent, which excludes cycles without
+ * any locking: a link is made only by compare-and-set on a root, and if another thread has changed that root in the
+ * meantime the union is just retried. As a side effect the representative of each set is its smallest element, so the
+ * result does not depend on the order in which threads made their unions.
+ * <p>
+ * Paths are shortened by halving (each passed element is re-linked to its grandparent), which is safe to do
+ * concurrently because it never changes the set an element belongs to.
+ */
+public class ConcurrentUnionFind implements DisjointSet {
+
+    private final AtomicIntegerArray parent;
+
+    public ConcurrentUnionFind(int size) {
+        parent = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return parent.length();
+    }
+
+    @Override
+    public int find(int element) {
+        while (true) {
+            int prnt = parent.get(element);
+            if (prnt == element) {
+                return element;
+            }
+            int grandPrnt = parent.get(prnt);
+            if (grandPrnt != prnt) {
+                parent.compareAndSet(element, prnt, grandPrnt);
+            }
+            element = grandPrnt;
+        }
+    }
+
+    @Override
+    public boolean union(int first, int second) {
+        while (true) {
+            int frstRoot = find(first);
+            int scndRoot = find(second);
+            if (frstRoot == scndRoot) {
+                return false;
+            }
+            // link the root with the bigger index to the one with the smaller index
+            int child = Math.max(frstRoot, scndRoot);
+            int newParent = Math.min(frstRoot, scndRoot);
+            if (parent.compareAndSet(child, child, newParent)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * CSV (RFC 4180) with a header and a record per word: group_id, word, then occurrences if counts are written and
+ * payload if the first word has one. A field with a comma, a quote or a line break is quoted, so {@link CsvReader}
+ * reads it back as it was.
+ */
+public class CsvOutputFormat extends OutputFormat {
+
+    private static final String[] ESCAPES = new String['"' + 1];
+
+    static {
+        ESCAPES['"'] = "\"\"";
+    }
+
+    @Override
+    public String getName() {
+        return "csv";
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[] { ".csv" };
+    }
+
+    @Override
+    public void write(List<Group> groups, OutputWriter out, boolean withCounts) throws IOException {
+        // payloads are given either to all words or to none of them
+        boolean withPayloads = !groups.isEmpty() && groups.get(0).getElements().get(0).getPayload() != null;
+        out.append("group_id,word");
+        out.append(withCounts ? ",occurrences" : "");
+        out.append(withPayloads ? ",payload\r\n" : "\r\n");
+        int groupId = 0;
+        for (Group grp : groups) {
+            for (WordWrapper wrd : grp.getElements()) {
+                out.append(groupId);
+                out.append(",");
+                appendField(out, wrd.getOriginalWord());
+                if (withCounts) {
+                    out.append(",");
+                    out.append(wrd.getOccurrences());
+                }
+                if (withPayloads) {
+                    out.append(",");
+                    appendField(out, wrd.getPayload() != null ? wrd.getPayload() : "");
+                }
+                out.append("\r\n");
+            }
+            groupId++;
+        }
+    }
+
+    private static void appendField(OutputWriter out, String field) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < field.length() && !quoted; i++) {
+            char c = field.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quoted) {
+            out.append("\"");
+            out.append(field, ESCAPES);
+            out.append("\"");
+        } else {
+            out.append(field);
+        }
+    }
+}
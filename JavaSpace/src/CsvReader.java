@@ -0,0 +1,358 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of CSV (RFC 4180) fields of UTF-8 input, only a buffer of the input is kept in memory. Fields are
+ * separated by commas and records by line breaks (CRLF, LF or CR), a field in double quotes can have commas, line
+ * breaks and doubled quotes, which stand for one quote. It is lenient to broken quoting: a quote inside an unquoted
+ * field is kept, chars after the closing quote are added to the field, and an unclosed quoted field ends at the end of
+ * the input.
+ * <p>
+ * Fields are found in bytes, since separators and quotes are ASCII chars which are never a part of other UTF-8 chars,
+ * and only fields which are asked for are decoded, so skipped columns cost no strings (see
+ * {@link #readRecord(int[], String[])}).
+ * <p>
+ * As an iterator it gives all fields of all records in turn, an {@link IOException} is thrown then as
+ * {@link UncheckedIOException}.
+ */
+public class CsvReader implements Iterator<String>, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+
+    // result of reading a field which is not decoded
+    private static final String SKIPPED = new String();
+
+    // input, either a channel or a buffer, e.g. a memory-mapped chunk of a file
+    private final ReadableByteChannel channel;
+    private final ByteBuffer source;
+    private final byte[] buf;
+    // bytes in buf from pos to limit are not read yet
+    private int pos;
+    private int limit;
+    private boolean atStart = true;
+    // the last read field, the one read ahead included, ended its record
+    private boolean recordEnd = true;
+    // the input ended inside a quoted field
+    private boolean unclosedQuote;
+    // bytes of the field being read which are not in the buffer any more or are unquoted
+    private byte[] field = new byte[64];
+    private int fieldLength;
+    // the field read by hasNext(), null - no field is read ahead
+    private String nextField;
+
+    public CsvReader(ReadableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    // a small buffer lets tests put fields across its bounds, it holds a byte order mark at least
+    CsvReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        source = null;
+        buf = new byte[Math.max(bufferSize, 3)];
+    }
+
+    /**
+     * Reads the rest of the buffer, which starts at a record bound, e.g. a memory-mapped chunk of a file.
+     */
+    CsvReader(ByteBuffer bytes) {
+        channel = null;
+        source = bytes;
+        buf = new byte[Math.max(Math.min(BUFFER_SIZE, bytes.remaining()), 1)];
+        atStart = false;
+    }
+
+    /**
+     * Opens the UTF-8 file.
+     */
+    public static CsvReader open(String filePath) throws IOException {
+        return new CsvReader(FileChannel.open(Paths.get(filePath)));
+    }
+
+    // reads next bytes into the buffer, returns false at the end of the input
+    private boolean fill() throws IOException {
+        pos = 0;
+        if (channel != null) {
+            ByteBuffer bytes = ByteBuffer.wrap(buf);
+            // a byte order mark is read whole
+            int count = 0;
+            while (count >= 0 && bytes.position() < (atStart ? 3 : 1)) {
+                count = channel.read(bytes);
+            }
+            limit = bytes.position();
+        } else {
+            limit = Math.min(buf.length, source.remaining());
+            source.get(buf, 0, limit);
+        }
+        if (atStart) {
+            atStart = false;
+            if (limit >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB && buf[2] == (byte) 0xBF) {
+                pos = 3;
+                return limit > pos || fill();
+            }
+        }
+        return limit > 0;
+    }
+
+    /**
+     * Returns the next field, null at the end of the input. An empty line is a record of one empty field.
+     */
+    public String readField() throws IOException {
+        if (nextField != null) {
+            String result = nextField;
+            nextField = null;
+            return result;
+        }
+        return read(true);
+    }
+
+    // reads the next field, decodes it only if it is kept, otherwise returns SKIPPED, null at the end of the input
+    private String read(boolean keep) throws IOException {
+        if (pos == limit && !fill()) {
+            if (!recordEnd) {
+                // the record ends with a separator, so its last field is empty
+                recordEnd = true;
+                return keep ? "" : SKIPPED;
+            }
+            return null;
+        }
+        fieldLength = 0;
+        if (buf[pos] != QUOTE) {
+            return readUnquoted(pos, keep);
+        }
+
+        pos++;
+        int start = pos;
+        while (true) {
+            if (pos == limit) {
+                append(start, keep);
+                if (!fill()) {
+                    recordEnd = true;
+                    unclosedQuote = true;
+                    return result(keep);
+                }
+                start = pos;
+            }
+            if (buf[pos] == QUOTE) {
+                if (fieldLength == 0 && pos + 1 < limit && isDelimiter(buf[pos + 1])) {
+                    // the usual case: the whole field is in the buffer and has no doubled quotes
+                    String result = keep ? new String(buf, start, pos - start, StandardCharsets.UTF_8) : SKIPPED;
+                    pos++;
+                    endField();
+                    return result;
+                }
+                append(start, keep);
+                pos++;
+                if (pos == limit && !fill()) {
+                    recordEnd = true;
+                    return result(keep);
+                }
+                if (buf[pos] != QUOTE) {
+                    return readUnquoted(pos, keep);
+                }
+                // a doubled quote
+                start = pos;
+            }
+            pos++;
+        }
+    }
+
+    // reads the field from start to the separator or the line break, bytes before start are in field
+    private String readUnquoted(int start, boolean keep) throws IOException {
+        while (true) {
+            if (pos == limit) {
+                append(start, keep);
+                if (!fill()) {
+                    recordEnd = true;
+                    return result(keep);
+                }
+                start = pos;
+            }
+            if (isDelimiter(buf[pos])) {
+                String result;
+                if (keep && fieldLength == 0) {
+                    result = new String(buf, start, pos - start, StandardCharsets.UTF_8);
+                } else {
+                    append(start, keep);
+                    result = result(keep);
+                }
+                endField();
+                return result;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == SEPARATOR || b == '\n' || b == '\r';
+    }
+
+    // passes the separator or the line break at pos
+    private void endField() throws IOException {
+        byte b = buf[pos++];
+        recordEnd = b != SEPARATOR;
+        if (b == '\r' && (pos < limit || fill()) && buf[pos] == '\n') {
+            pos++;
+        }
+    }
+
+    private void append(int start, boolean keep) {
+        if (!keep) {
+            return;
+        }
+        int length = pos - start;
+        if (fieldLength + length > field.length) {
+            field = Arrays.copyOf(field, Math.max(field.length * 2, fieldLength + length));
+        }
+        System.arraycopy(buf, start, field, fieldLength, length);
+        fieldLength += length;
+    }
+
+    private String result(boolean keep) {
+        return keep ? new String(field, 0, fieldLength, StandardCharsets.UTF_8) : SKIPPED;
+    }
+
+    /**
+     * Returns fields of the next record, null at the end of the input.
+     */
+    public List<String> readRecord() throws IOException {
+        String str = readField();
+        if (str == null) {
+            return null;
+        }
+        List<String> record = new ArrayList<String>();
+        record.add(str);
+        while (!recordEnd) {
+            record.add(readField());
+        }
+        return record;
+    }
+
+    /**
+     * Reads the next record and puts values of the given columns (indices from 0) into values, a column which the
+     * record does not have gets an empty string. Other fields are skipped without decoding. Returns false at the end of
+     * the input.
+     */
+    public boolean readRecord(int[] columns, String[] values) throws IOException {
+        Arrays.fill(values, "");
+        int column = 0;
+        if (nextField != null) {
+            // the iterator has read the first field ahead
+            setValue(columns, values, column++, nextField);
+            nextField = null;
+            if (recordEnd) {
+                return true;
+            }
+        }
+        do {
+            boolean keep = false;
+            for (int c : columns) {
+                keep |= c == column;
+            }
+            String str = read(keep);
+            if (str == null) {
+                return column > 0;
+            }
+            setValue(columns, values, column++, str);
+        } while (!recordEnd);
+        return true;
+    }
+
+    private static void setValue(int[] columns, String[] values, int column, String value) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == column) {
+                values[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the input ended inside a quoted field.
+     */
+    boolean hasUnclosedQuote() {
+        return unclosedQuote;
+    }
+
+    /**
+     * Returns values of the column (index from 0) of the rest records in turn, see {@link #readRecord(int[], String[])}.
+     */
+    public Iterator<String> column(final int column) {
+        return new Iterator<String>() {
+            private final int[] columns = { column };
+            private final String[] values = new String[1];
+            private boolean hasValue;
+
+            @Override
+            public boolean hasNext() {
+                if (!hasValue) {
+                    try {
+                        hasValue = readRecord(columns, values);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return hasValue;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasValue = false;
+                return values[0];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextField == null) {
+            try {
+                nextField = readField();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextField != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = nextField;
+        nextField = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
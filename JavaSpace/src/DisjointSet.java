@@ -0,0 +1,19 @@
+/**
+ * Disjoint-set of integer elements in the range [0, size()).
+ */
+public interface DisjointSet {
+
+    int size();
+
+    /**
+     * Returns the representative element of the set which contains the specified element.
+     */
+    int find(int element);
+
+    /**
+     * Joins sets which contain the specified elements.
+     * 
+     * @return true if the elements were in different sets before this call
+     */
+    boolean union(int first, int second);
+}
@@ -1,7 +1,12 @@
 public class Executor {
 
     public static void main(String[] args) throws Exception {
-        Task3Handler.execute();
+        if (args.length > 0) {
+            // words to look up in the group index of the previous run
+            Task3Handler.lookup(args);
+        } else {
+            Task3Handler.execute();
+        }
 
     }
 
@@ -4,19 +4,32 @@ import java.util.List;
 public class Group {
 
     // elements of this group
-    private List<WordWrapper> elements = new LinkedList<WordWrapper>();
+    private List<WordWrapper> elements;
 
     // this is used to determine if current group already was emptied into another group.
     private boolean markedForDeletion = false;
 
     public Group(List<WordWrapper> words) {
-        elements.addAll(words);
+        elements = new LinkedList<WordWrapper>(words);
     }
 
     public Group(WordWrapper word) {
+        elements = new LinkedList<WordWrapper>();
         elements.add(word);
     }
 
+    private Group() {
+    }
+
+    /**
+     * Makes a group which uses the given list as is, e.g. a read-only view of a group from WordStore.
+     */
+    static Group view(List<WordWrapper> elements) {
+        Group grp = new Group();
+        grp.elements = elements;
+        return grp;
+    }
+
     public List<WordWrapper> getElements() {
         return elements;
     }
@@ -0,0 +1,381 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import stemming.GeneralStemmer;
+
+/**
+ * Binary file with the result of grouping, which can be opened without stemming and uniting anything again. The file
+ * is memory-mapped and read in place, so opening it costs nothing and only the pages touched by lookups are loaded.
+ * <p>
+ * Layout (all numbers are big-endian ints, strings are UTF-8):
+ * 
+ * <pre>
+ * header:      MAGIC, VERSION, wordsCount, stemsCount, groupsCount, offsets of the 6 sections below, version of
+ *              stemmed forms (see GeneralStemmer.getVersion())
+ * words:       wordsCount + 1 offsets into the bytes section, then the bytes of distinct words sorted as bytes
+ * stems:       the same for distinct stemmed forms
+ * word stems:  wordsCount + 1 offsets into the ids array, then ids of stems of each word
+ * word group:  group id of each word
+ * stem group:  group id of each stem
+ * group words: groupsCount + 1 offsets into the ids array, then ids of words of each group in their order
+ * </pre>
+ * 
+ * Groups are numbered in the order of the list they were written from. A word which appears several times in the input
+ * is stored once.
+ * <p>
+ * Unknown words are looked up by their stemmed forms, which are comparable only if they are made by the same stemmers,
+ * so such lookups are refused if the version of stemmed forms differs from the one the file was written with.
+ */
+public class GroupIndexFile {
+
+    private static final int MAGIC = 0x59544749; // "YTGI"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 5 + 6 + 1;
+
+    // strings are compared as their UTF-8 bytes, which is the order binary search in the file relies on
+    private static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] o1, byte[] o2) {
+            int len = Math.min(o1.length, o2.length);
+            for (int i = 0; i < len; i++) {
+                int diff = (o1[i] & 0xFF) - (o2[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return o1.length - o2.length;
+        }
+    };
+
+    private final ByteBuffer data;
+    private final int wordsCount;
+    private final int stemsCount;
+    private final int groupsCount;
+    private final int wordsStart;
+    private final int stemsStart;
+    private final int wordStemsStart;
+    private final int wordGroupStart;
+    private final int stemGroupStart;
+    private final int groupWordsStart;
+    private final int stemmingVersion;
+    // whether the current version of stemmed forms was compared with the one of the file
+    private volatile boolean stemmingChecked;
+
+    private GroupIndexFile(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("not a group index file of version " + VERSION);
+        }
+        wordsCount = data.getInt(8);
+        stemsCount = data.getInt(12);
+        groupsCount = data.getInt(16);
+        wordsStart = data.getInt(20);
+        stemsStart = data.getInt(24);
+        wordStemsStart = data.getInt(28);
+        wordGroupStart = data.getInt(32);
+        stemGroupStart = data.getInt(36);
+        groupWordsStart = data.getInt(40);
+        stemmingVersion = data.getInt(44);
+    }
+
+    /**
+     * Maps the file into memory. Nothing but the header is read here.
+     */
+    public static GroupIndexFile open(String file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new GroupIndexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getWordsCount() {
+        return wordsCount;
+    }
+
+    public int getGroupsCount() {
+        return groupsCount;
+    }
+
+    /**
+     * Returns the id of the group of the word, or -1 if there was no such word. Only the exact original word is
+     * searched here, see {@link #findGroupByStems(String)} for unknown words.
+     */
+    public int findGroup(String word) {
+        int wordId = find(wordsStart, wordsCount, word);
+        return wordId < 0 ? -1 : data.getInt(wordGroupStart + 4 * wordId);
+    }
+
+    /**
+     * Returns the id of the group of the word if it is known, otherwise stems the word and returns the group of the
+     * first of its stemmed forms which is known. Returns -1 if nothing was found. Throws IllegalStateException if the
+     * file was written with other stemmers.
+     */
+    public int findGroupByStems(String word) throws Exception {
+        int groupId = findGroup(word);
+        if (groupId >= 0) {
+            return groupId;
+        }
+        checkStemming();
+        for (String stem : GeneralStemmer.getStemmedStrings(word)) {
+            int stemId = find(stemsStart, stemsCount, stem);
+            if (stemId >= 0) {
+                return data.getInt(stemGroupStart + 4 * stemId);
+            }
+        }
+        return -1;
+    }
+
+    // the version is computed from class files, so it is compared once
+    private void checkStemming() throws IOException {
+        if (stemmingChecked) {
+            return;
+        }
+        if ((int) GeneralStemmer.getVersion() != stemmingVersion) {
+            throw new IllegalStateException("the index file was written with other stemmers, write it again");
+        }
+        stemmingChecked = true;
+    }
+
+    /**
+     * Returns words of the group in the order they had in the group.
+     */
+    public List<String> getGroupWords(int groupId) {
+        int from = data.getInt(groupWordsStart + 4 * groupId);
+        int to = data.getInt(groupWordsStart + 4 * (groupId + 1));
+        int idsStart = groupWordsStart + 4 * (groupsCount + 1);
+        List<String> result = new ArrayList<String>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(getString(wordsStart, wordsCount, data.getInt(idsStart + 4 * i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns stemmed forms of the word, or an empty list if there was no such word.
+     */
+    public List<String> getStems(String word) {
+        List<String> result = new ArrayList<String>();
+        int wordId = find(wordsStart, wordsCount, word);
+        if (wordId < 0) {
+            return result;
+        }
+        int from = data.getInt(wordStemsStart + 4 * wordId);
+        int to = data.getInt(wordStemsStart + 4 * (wordId + 1));
+        int idsStart = wordStemsStart + 4 * (wordsCount + 1);
+        for (int i = from; i < to; i++) {
+            result.add(getString(stemsStart, stemsCount, data.getInt(idsStart + 4 * i)));
+        }
+        return result;
+    }
+
+    // binary search of the string in the dictionary section, returns its id or -1
+    private int find(int sectionStart, int count, String str) {
+        byte[] key = str.getBytes(StandardCharsets.UTF_8);
+        int bytesStart = sectionStart + 4 * (count + 1);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int from = bytesStart + data.getInt(sectionStart + 4 * mid);
+            int to = bytesStart + data.getInt(sectionStart + 4 * (mid + 1));
+            int cmp = compare(from, to, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // compares bytes of the file in [from, to) with the key in the same way as BYTES_ORDER does
+    private int compare(int from, int to, byte[] key) {
+        int len = Math.min(to - from, key.length);
+        for (int i = 0; i < len; i++) {
+            int diff = (data.get(from + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (to - from) - key.length;
+    }
+
+    private String getString(int sectionStart, int count, int id) {
+        int bytesStart = sectionStart + 4 * (count + 1);
+        int from = data.getInt(sectionStart + 4 * id);
+        int to = data.getInt(sectionStart + 4 * (id + 1));
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(bytesStart + from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes groups and stemmed forms of their words into the file.
+     */
+    public static void write(List<Group> groups, String file) throws IOException {
+        // distinct words and stems, sorted by their bytes
+        Set<String> distinctWords = new LinkedHashSet<String>();
+        Set<String> distinctStems = new LinkedHashSet<String>();
+        for (Group grp : groups) {
+            for (WordWrapper wrd : grp.getElements()) {
+                // every spelling of collapsed identical words can be looked up
+                distinctWords.addAll(wrd.getSpellings());
+                distinctStems.addAll(wrd.getStemmedForms());
+            }
+        }
+        byte[][] words = sortedBytes(distinctWords);
+        byte[][] stems = sortedBytes(distinctStems);
+        Map<String, Integer> wordIds = ids(words);
+        Map<String, Integer> stemIds = ids(stems);
+
+        int[] wordGroup = new int[words.length];
+        int[] stemGroup = new int[stems.length];
+        int[][] wordStems = new int[words.length][];
+        int[][] groupWords = new int[groups.size()][];
+        for (int groupId = 0; groupId < groups.size(); groupId++) {
+            Set<Integer> grpWords = new LinkedHashSet<Integer>();
+            for (WordWrapper wrd : groups.get(groupId).getElements()) {
+                Set<Integer> stemsOfWord = new LinkedHashSet<Integer>();
+                for (String stem : wrd.getStemmedForms()) {
+                    int stemId = stemIds.get(stem);
+                    stemsOfWord.add(stemId);
+                    stemGroup[stemId] = groupId;
+                }
+                int[] stemsArray = toArray(stemsOfWord);
+                for (String spelling : wrd.getSpellings()) {
+                    int wordId = wordIds.get(spelling);
+                    grpWords.add(wordId);
+                    wordGroup[wordId] = groupId;
+                    wordStems[wordId] = stemsArray;
+                }
+            }
+            groupWords[groupId] = toArray(grpWords);
+        }
+
+        int wordsStart = 4 * HEADER_INTS;
+        int stemsStart = wordsStart + dictionarySize(words);
+        int wordStemsStart = stemsStart + dictionarySize(stems);
+        int wordGroupStart = wordStemsStart + postingsSize(wordStems);
+        int stemGroupStart = wordGroupStart + 4 * wordGroup.length;
+        int groupWordsStart = stemGroupStart + 4 * stemGroup.length;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(words.length);
+            out.writeInt(stems.length);
+            out.writeInt(groups.size());
+            out.writeInt(wordsStart);
+            out.writeInt(stemsStart);
+            out.writeInt(wordStemsStart);
+            out.writeInt(wordGroupStart);
+            out.writeInt(stemGroupStart);
+            out.writeInt(groupWordsStart);
+            out.writeInt((int) GeneralStemmer.getVersion());
+            writeDictionary(out, words);
+            writeDictionary(out, stems);
+            writePostings(out, wordStems);
+            writeInts(out, wordGroup);
+            writeInts(out, stemGroup);
+            writePostings(out, groupWords);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[][] sortedBytes(Set<String> strings) {
+        byte[][] result = new byte[strings.size()][];
+        int i = 0;
+        for (String str : strings) {
+            result[i++] = str.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(result, BYTES_ORDER);
+        return result;
+    }
+
+    private static Map<String, Integer> ids(byte[][] strings) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (int i = 0; i < strings.length; i++) {
+            result.put(new String(strings[i], StandardCharsets.UTF_8), i);
+        }
+        return result;
+    }
+
+    private static int[] toArray(Set<Integer> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    private static int dictionarySize(byte[][] strings) {
+        int size = 4 * (strings.length + 1);
+        for (byte[] str : strings) {
+            size += str.length;
+        }
+        return size;
+    }
+
+    private static int postingsSize(int[][] postings) {
+        int size = 4 * (postings.length + 1);
+        for (int[] ids : postings) {
+            size += 4 * ids.length;
+        }
+        return size;
+    }
+
+    private static void writeDictionary(DataOutputStream out, byte[][] strings) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] str : strings) {
+            offset += str.length;
+            out.writeInt(offset);
+        }
+        for (byte[] str : strings) {
+            out.write(str);
+        }
+    }
+
+    private static void writePostings(DataOutputStream out, int[][] postings) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (int[] ids : postings) {
+            offset += ids.length;
+            out.writeInt(offset);
+        }
+        for (int[] ids : postings) {
+            writeInts(out, ids);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+}
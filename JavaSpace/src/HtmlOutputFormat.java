@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Groups as tables of an html page, a row per word. Words and payloads are escaped (as in HTML 4 an apostrophe is left
+ * as is, text is never in attributes here).
+ */
+public class HtmlOutputFormat extends OutputFormat {
+
+    private static final String[] ESCAPES = new String['>' + 1];
+
+    static {
+        ESCAPES['&'] = "&amp;";
+        ESCAPES['<'] = "&lt;";
+        ESCAPES['>'] = "&gt;";
+        ESCAPES['"'] = "&quot;";
+    }
+
+    @Override
+    public String getName() {
+        return "html";
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[] { ".html", ".htm" };
+    }
+
+    /**
+     * If counts are written then each row has all spellings of the word and the number of its occurrences in the
+     * input. A word with a payload has it in one more cell.
+     */
+    @Override
+    public void write(List<Group> groups, OutputWriter html, boolean withCounts) throws IOException {
+        html.append("<!DOCTYPE html>\n");
+        html.append("<html>\n");
+        
+        html.append("\t<head>\n");
+        html.append("\t<meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\">\n");
+        html.append("\t\t<title>Задание 3</title>\n");
+        html.append("\t</head>\n");
+        
+        html.append("\t<body>\n");
+
+        for (Group grp : groups) {
+            html.append("\t\t<table>\n");
+
+            for (WordWrapper wrd : grp.getElements()) {
+                html.append("\t\t\t<tr>\n\t\t\t\t<td>");
+                if (withCounts) {
+                    List<String> spellings = wrd.getSpellings();
+                    for (int i = 0; i < spellings.size(); i++) {
+                        if (i > 0) {
+                            html.append(", ");
+                        }
+                        html.append(spellings.get(i), ESCAPES);
+                    }
+                    html.append("</td>\n\t\t\t\t<td>");
+                    html.append(wrd.getOccurrences());
+                } else {
+                    html.append(wrd.getOriginalWord(), ESCAPES);
+                }
+                if (wrd.getPayload() != null) {
+                    html.append("</td>\n\t\t\t\t<td>");
+                    html.append(wrd.getPayload(), ESCAPES);
+                }
+                html.append("</td>\n\t\t\t</tr>\n");
+            }
+
+            html.append("\t\t</table>\n");
+        }
+
+        html.append("\t</body>\n");
+        html.append("</html>\n");
+    }
+}
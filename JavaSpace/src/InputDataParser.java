@@ -1,27 +1,129 @@
 import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.concurrent.ExecutorService;
 
 
 public class InputDataParser {
-    
-    private static List<String> readFile(String filePath) throws IOException {
-        Path path = FileSystems.getDefault().getPath(filePath);
-        return Files.readAllLines(path);
-    }
-    
-    private static void removeQuotes(List<String> data) {
-        for (ListIterator<String> itr = data.listIterator(); itr.hasNext();) {
-            itr.set(itr.next().replaceAll("\"", ""));
-        }
+
+    /**
+     * Opens a streaming reader of words of the CSV file, each field is a word (see {@link CsvReader}). A gzip or zlib
+     * compressed file is inflated in the background while it is read (see {@link CompressedInput}).
+     */
+    public static CsvReader open(String filePath) throws IOException {
+        return new CsvReader(CompressedInput.open(filePath, null));
+    }
+
+    /**
+     * Same as {@link #open(String)}, members of a gzip file are inflated in the executor in parallel.
+     */
+    public static CsvReader open(String filePath, ExecutorService executor) throws IOException {
+        return new CsvReader(CompressedInput.open(filePath, executor));
     }
-    
+
     public static List<String> getData(String filePath) throws IOException {
-        List<String> data = readFile(filePath);
-        removeQuotes(data);
+        return read(filePath, null, false).get(0);
+    }
+
+    /**
+     * Returns the same words as {@link #getData(String)}, the file is memory-mapped and its chunks are parsed in the
+     * executor (see {@link ParallelCsvParser}).
+     */
+    public static List<String> getData(String filePath, ExecutorService executor) throws Exception {
+        return ParallelCsvParser.parse(filePath, executor);
+    }
+
+    /**
+     * Returns indices of the columns given by index from 0 or by name in the header, which is the first record of the
+     * file if there is one. A null column gets -1.
+     */
+    public static int[] findColumns(String filePath, boolean header, String... columns) throws IOException {
+        List<String> names = null;
+        if (header) {
+            CsvReader reader = open(filePath);
+            try {
+                names = reader.readRecord();
+            } finally {
+                reader.close();
+            }
+        }
+        return findColumns(header ? (names != null ? names : new ArrayList<String>()) : null, columns);
+    }
+
+    /**
+     * Returns indices of the columns given by index from 0 or by name in the header, null - there is no header. A null
+     * column gets -1.
+     */
+    public static int[] findColumns(List<String> header, String... columns) {
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == null) {
+                indices[i] = -1;
+            } else if (columns[i].trim().matches("\\d+")) {
+                indices[i] = Integer.parseInt(columns[i].trim());
+            } else if (header == null) {
+                throw new IllegalArgumentException("column " + columns[i]
+                        + " is given by name, but there is no header");
+            } else {
+                indices[i] = header.indexOf(columns[i]);
+                if (indices[i] < 0) {
+                    throw new IllegalArgumentException("no column " + columns[i] + " in the header " + header);
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Returns values of the given columns (indices from 0) of all records, a list per column, a column which a record
+     * does not have gives an empty string. Other fields are skipped without decoding. Null columns give all fields as
+     * one column. The first record is skipped if it is a header.
+     */
+    public static List<List<String>> getColumns(String filePath, int[] columns, boolean header) throws IOException {
+        return read(filePath, columns, header);
+    }
+
+    /**
+     * Returns the same values as {@link #getColumns(String, int[], boolean)}, the file is memory-mapped and its chunks
+     * are parsed in the executor (see {@link ParallelCsvParser}).
+     */
+    public static List<List<String>> getColumns(String filePath, int[] columns, boolean header,
+            ExecutorService executor) throws Exception {
+        return ParallelCsvParser.parse(filePath, executor, columns, header);
+    }
+
+    // all fields as one column if columns are null, otherwise values of the columns
+    static List<List<String>> read(String filePath, int[] columns, boolean header) throws IOException {
+        CsvReader reader = open(filePath);
+        try {
+            return read(reader, columns, header);
+        } finally {
+            reader.close();
+        }
+    }
+
+    static List<List<String>> read(CsvReader reader, int[] columns, boolean header) throws IOException {
+        if (header) {
+            reader.readRecord(new int[0], new String[0]);
+        }
+        if (columns == null) {
+            List<String> fields = new ArrayList<String>();
+            for (String field = reader.readField(); field != null; field = reader.readField()) {
+                fields.add(field);
+            }
+            return Arrays.asList(fields);
+        }
+        List<List<String>> data = new ArrayList<List<String>>();
+        for (int i = 0; i < columns.length; i++) {
+            data.add(new ArrayList<String>());
+        }
+        String[] values = new String[columns.length];
+        while (reader.readRecord(columns, values)) {
+            for (int i = 0; i < columns.length; i++) {
+                data.get(i).add(values[i]);
+            }
+        }
         return data;
     }
 
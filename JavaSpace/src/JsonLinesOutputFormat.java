@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * JSON Lines: an object per group on its own line, e.g.
+ * 
+ * <pre>
+ * {"group":0,"words":["Бегущий","бегущими"],"payloads":["1","3"]}
+ * </pre>
+ * 
+ * "occurrences" and "spellings" of words are added if counts are written, "payloads" - if words of the group have
+ * them, a word without a payload has null.
+ */
+public class JsonLinesOutputFormat extends OutputFormat {
+
+    private static final String[] ESCAPES = new String['\\' + 1];
+
+    static {
+        for (char c = 0; c < ' '; c++) {
+            ESCAPES[c] = String.format("\\u%04x", (int) c);
+        }
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+    }
+
+    @Override
+    public String getName() {
+        return "jsonl";
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[] { ".jsonl" };
+    }
+
+    @Override
+    public void write(List<Group> groups, OutputWriter out, boolean withCounts) throws IOException {
+        int groupId = 0;
+        for (Group grp : groups) {
+            List<WordWrapper> words = grp.getElements();
+            out.append("{\"group\":");
+            out.append(groupId++);
+            out.append(",\"words\":[");
+            boolean withPayloads = false;
+            for (int i = 0; i < words.size(); i++) {
+                WordWrapper wrd = words.get(i);
+                if (i > 0) {
+                    out.append(",");
+                }
+                appendString(out, wrd.getOriginalWord());
+                withPayloads |= wrd.getPayload() != null;
+            }
+            out.append("]");
+            if (withCounts) {
+                out.append(",\"occurrences\":[");
+                for (int i = 0; i < words.size(); i++) {
+                    if (i > 0) {
+                        out.append(",");
+                    }
+                    out.append(words.get(i).getOccurrences());
+                }
+                out.append("],\"spellings\":[");
+                for (int i = 0; i < words.size(); i++) {
+                    out.append(i > 0 ? ",[" : "[");
+                    List<String> spellings = words.get(i).getSpellings();
+                    for (int j = 0; j < spellings.size(); j++) {
+                        if (j > 0) {
+                            out.append(",");
+                        }
+                        appendString(out, spellings.get(j));
+                    }
+                    out.append("]");
+                }
+                out.append("]");
+            }
+            if (withPayloads) {
+                out.append(",\"payloads\":[");
+                for (int i = 0; i < words.size(); i++) {
+                    if (i > 0) {
+                        out.append(",");
+                    }
+                    appendString(out, words.get(i).getPayload());
+                }
+                out.append("]");
+            }
+            out.append("}\n");
+        }
+    }
+
+    private static void appendString(OutputWriter out, String str) throws IOException {
+        if (str == null) {
+            out.append("null");
+            return;
+        }
+        out.append("\"");
+        out.append(str, ESCAPES);
+        out.append("\"");
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import stemming.GeneralStemmer;
+
+/**
+ * Locality-sensitive hashing of words by MinHash signatures of their character n-grams.
+ * <p>
+ * A word is normalized the same way as before stemming (see {@link GeneralStemmer#normalize(String)}), lower-cased and
+ * padded with a space on each side, and the set of its n-grams is hashed by bands * rows independent hash functions,
+ * taking the minimum for each one. The probability that two words get the same minimum for a function equals the
+ * Jaccard similarity s of their n-gram sets. The signature is split into bands of rows values and words with an equal
+ * band are candidates, so two words become candidates with probability 1 - (1 - s^rows)^bands. More rows make fewer
+ * false candidates, more bands make fewer missed pairs.
+ */
+public class MinHashLsh implements CandidateIndex {
+
+    private static final long SEED = 20160301L;
+
+    private final int ngramSize;
+    private final int bands;
+    private final int rows;
+    // coefficients of hash functions h(x) = (a * x + b) >>> 33 (non-negative ints), a is odd
+    private final long[] mult;
+    private final long[] add;
+    // ids of words by the hash of (band number, values of the band)
+    private final Map<Long, List<Integer>> buckets = new HashMap<Long, List<Integer>>();
+
+    public MinHashLsh(int bands, int rows) {
+        this(3, bands, rows);
+    }
+
+    public MinHashLsh(int ngramSize, int bands, int rows) {
+        if (ngramSize < 1 || bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("ngramSize: " + ngramSize + " | bands: " + bands + " | rows: " + rows);
+        }
+        this.ngramSize = ngramSize;
+        this.bands = bands;
+        this.rows = rows;
+        mult = new long[bands * rows];
+        add = new long[bands * rows];
+        Random random = new Random(SEED);
+        for (int i = 0; i < mult.length; i++) {
+            mult[i] = random.nextLong() | 1;
+            add[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Returns the MinHash signature of the word.
+     */
+    public int[] signature(String word) {
+        String padded = " " + GeneralStemmer.normalize(word).toLowerCase() + " ";
+        int[] signature = new int[mult.length];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+        int lastStart = Math.max(0, padded.length() - ngramSize);
+        for (int start = 0; start <= lastStart; start++) {
+            int ngramHash = 0;
+            for (int pos = start; pos < Math.min(start + ngramSize, padded.length()); pos++) {
+                ngramHash = 31 * ngramHash + padded.charAt(pos);
+            }
+            long x = ngramHash & 0xFFFFFFFFL;
+            for (int i = 0; i < signature.length; i++) {
+                int value = (int) ((mult[i] * x + add[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    @Override
+    public List<Integer> addAndFindCandidates(String str, int id) {
+        int[] signature = signature(str);
+        Set<Integer> candidates = new LinkedHashSet<Integer>();
+        for (int band = 0; band < bands; band++) {
+            Long key = bandKey(signature, band);
+            List<Integer> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Integer>(1);
+                buckets.put(key, bucket);
+            } else {
+                candidates.addAll(bucket);
+            }
+            bucket.add(id);
+        }
+        return new ArrayList<Integer>(candidates);
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[i];
+        }
+        return key;
+    }
+}
@@ -1,41 +1,75 @@
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 public class OutputDataCreator {
 
-    public static void writeData(List<Group> groups, String file) throws FileNotFoundException,
-            UnsupportedEncodingException {
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html>\n");
-        
-        html.append("\t<head>\n");
-        html.append("\t<meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\">\n");
-        html.append("\t\t<title>Задание 3</title>\n");
-        html.append("\t</head>\n");
-        
-        html.append("\t<body>\n");
-
-        for (Group grp : groups) {
-            html.append("\t\t<table>\n");
-
-            for (WordWrapper wrd : grp.getElements()) {
-                html.append("\t\t\t<tr>\n\t\t\t\t<td>");
-                html.append(wrd.getOriginalWord());
-                html.append("</td>\n\t\t\t</tr>\n");
-            }
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static void writeData(List<Group> groups, String file) throws IOException {
+        writeData(groups, file, false);
+    }
+
+    /**
+     * Writes groups into the file in the format of its extension (see {@link OutputFormat#forFile(String)}), html by
+     * default. If counts are written then words have all their spellings and the number of their occurrences in the
+     * input (see WordCounts). Words with payloads have them too.
+     */
+    public static void writeData(List<Group> groups, String file, boolean withCounts) throws IOException {
+        writeData(groups, file, OutputFormat.forFile(file), withCounts);
+    }
 
-            html.append("\t\t</table>\n");
+    /**
+     * Writes groups into the file in the format, it is gzip compressed if its name ends with ".gz" in any case.
+     */
+    public static void writeData(List<Group> groups, String file, OutputFormat format, boolean withCounts)
+            throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            if (OutputFormat.isGzipFile(file)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                writeData(groups, Channels.newChannel(gzip), format, withCounts);
+                gzip.finish();
+            } else {
+                writeData(groups, channel, format, withCounts);
+            }
+        } finally {
+            channel.close();
         }
+    }
 
-        html.append("\t</body>\n");
-        html.append("</html>\n");
+    /**
+     * Writes groups into the stream as html, the stream is flushed but not closed (e.g. System.out).
+     */
+    public static void writeData(List<Group> groups, OutputStream out, boolean withCounts) throws IOException {
+        writeData(groups, out, OutputFormat.HTML, withCounts);
+    }
+
+    /**
+     * Same as {@link #writeData(List, OutputStream, boolean)} in the format.
+     */
+    public static void writeData(List<Group> groups, OutputStream out, OutputFormat format, boolean withCounts)
+            throws IOException {
+        writeData(groups, Channels.newChannel(out), format, withCounts);
+        out.flush();
+    }
 
-        PrintWriter pw = new PrintWriter(file, "UTF-8");
-        pw.write(html.toString());
-        pw.close();
+    /**
+     * Writes groups into the channel in the format, the channel is not closed. Groups are written through one buffer
+     * as they are passed, so memory does not depend on the number of groups.
+     */
+    public static void writeData(List<Group> groups, WritableByteChannel channel, OutputFormat format,
+            boolean withCounts) throws IOException {
+        OutputWriter out = new OutputWriter(channel);
+        format.write(groups, out, withCounts);
+        out.flush();
     }
 
 }
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Format of the file with groups, which {@link OutputDataCreator} writes. A format is chosen by its name or by the
+ * extension of the file, other formats can be registered or given by the name of their class.
+ * <p>
+ * A format writes groups through {@link OutputWriter} as the list gives them, so it should not keep them, e.g. groups
+ * of {@link WordStore} are views made on the fly.
+ */
+public abstract class OutputFormat {
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    public static final OutputFormat HTML = new HtmlOutputFormat();
+    public static final OutputFormat TEXT = new TextOutputFormat();
+    public static final OutputFormat JSON_LINES = new JsonLinesOutputFormat();
+    public static final OutputFormat CSV = new CsvOutputFormat();
+    public static final OutputFormat BINARY = new BinaryOutputFormat();
+
+    private static final List<OutputFormat> FORMATS = new ArrayList<OutputFormat>();
+
+    static {
+        register(HTML);
+        register(TEXT);
+        register(JSON_LINES);
+        register(CSV);
+        register(BINARY);
+    }
+
+    /**
+     * Returns the name the format is chosen by, e.g. in .properties.
+     */
+    public abstract String getName();
+
+    /**
+     * Returns extensions of files of the format, e.g. ".html".
+     */
+    public abstract String[] getExtensions();
+
+    /**
+     * Writes all groups, group ids are their indices in the list. If counts are written then words have the number of
+     * their occurrences in the input and all their spellings (see WordCounts).
+     */
+    public abstract void write(List<Group> groups, OutputWriter out, boolean withCounts) throws IOException;
+
+    /**
+     * Adds the format, it is chosen before the formats which were registered earlier.
+     */
+    public static synchronized void register(OutputFormat format) {
+        FORMATS.add(0, format);
+    }
+
+    /**
+     * Returns the registered format with the name, or a new instance of the format class with the name.
+     */
+    public static synchronized OutputFormat forName(String name) throws ReflectiveOperationException {
+        for (OutputFormat format : FORMATS) {
+            if (format.getName().equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        return Class.forName(name.trim()).asSubclass(OutputFormat.class).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Returns the format with the extension of the file (".gz" is skipped), HTML if there is no such format.
+     */
+    public static synchronized OutputFormat forFile(String file) {
+        String name = file.toLowerCase(Locale.ROOT);
+        if (isGzipFile(file)) {
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+        for (OutputFormat format : FORMATS) {
+            for (String extension : format.getExtensions()) {
+                if (name.endsWith(extension)) {
+                    return format;
+                }
+            }
+        }
+        return HTML;
+    }
+
+    /**
+     * Returns whether the file is written gzip compressed, i.e. its name ends with ".gz" in any case.
+     */
+    static boolean isGzipFile(String file) {
+        return file.toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX);
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered writer of all output formats (see {@link OutputFormat}): chars are encoded into UTF-8 right in the buffer
+ * of the channel, escapes of a format are put in the same pass, and binary numbers and length-prefixed strings are
+ * written through the same buffer. An unpaired surrogate is written as '?' as the UTF-8 encoder of Java does.
+ */
+public class OutputWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // room for the longest char or number
+    private static final int MAX_PUT = 8;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    // bytes which are written to the channel
+    private long written;
+
+    public OutputWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Appends the string as is.
+     */
+    public void append(String str) throws IOException {
+        append(str, 0, str.length());
+    }
+
+    /**
+     * Appends chars of the string from the index to the other one as is.
+     */
+    public void append(String str, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (buf.remaining() < MAX_PUT) {
+                write();
+            }
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | c >> 6));
+                buf.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, str.charAt(++i));
+                buf.put((byte) (0xF0 | code >> 18));
+                buf.put((byte) (0x80 | code >> 12 & 0x3F));
+                buf.put((byte) (0x80 | code >> 6 & 0x3F));
+                buf.put((byte) (0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf.put((byte) '?');
+            } else {
+                buf.put((byte) (0xE0 | c >> 12));
+                buf.put((byte) (0x80 | c >> 6 & 0x3F));
+                buf.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Appends the string, an ASCII char which has an escape (escapes are indexed by chars, null - no escape) is
+     * replaced with it.
+     */
+    public void append(String str, String[] escapes) throws IOException {
+        int start = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                append(str, start, i);
+                append(escapes[c]);
+                start = i + 1;
+            }
+        }
+        append(str, start, str.length());
+    }
+
+    /**
+     * Appends the number in decimal.
+     */
+    public void append(long value) throws IOException {
+        append(Long.toString(value));
+    }
+
+    /**
+     * Writes the big-endian int.
+     */
+    public void writeInt(int value) throws IOException {
+        if (buf.remaining() < MAX_PUT) {
+            write();
+        }
+        buf.putInt(value);
+    }
+
+    /**
+     * Writes the number of UTF-8 bytes of the string as an int and then the bytes, null is written as -1.
+     */
+    public void writeString(String str) throws IOException {
+        if (str == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        writeInt(length);
+        append(str);
+    }
+
+    /**
+     * Returns the number of bytes written so far, the buffered ones included.
+     */
+    public long getPosition() {
+        return written + buf.position();
+    }
+
+    private void write() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            written += channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    public void flush() throws IOException {
+        write();
+    }
+}
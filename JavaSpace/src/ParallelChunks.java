@@ -0,0 +1,46 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a piece of work over the index range [0, size) in an executor, split into chunks of the given size.
+ */
+public class ParallelChunks {
+
+    // a piece of work over indices [from, to)
+    public interface ChunkTask {
+        void run(int from, int to) throws Exception;
+    }
+
+    /**
+     * Runs the task for each chunk in the executor and waits for all of them. The first failure of a task is rethrown
+     * as is.
+     */
+    public static void run(ExecutorService executor, int size, int chunkSize, final ChunkTask task) throws Exception {
+        List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < size; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, size);
+            chunks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    task.run(from, to);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> result : executor.invokeAll(chunks)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Parser of fields of a CSV file by chunks in parallel, the file is memory-mapped and may be larger than 2 GB. Chunks
+ * end on record bounds, which are found by quotes: in the first pass each part of the file counts its quotes and finds
+ * its first line break outside quotes both for the case it starts outside quotes and inside them, then from the
+ * beginning of the file the parity of quotes tells which break of each part is a record bound. In the second pass
+ * each chunk is parsed by {@link CsvReader} right from the mapping on its own, only fields of the asked columns are
+ * decoded, and they are returned in the order of the file.
+ * <p>
+ * Quotes tell where quoted fields are only if quoting is not broken. If a chunk ends inside a quoted field because of
+ * a stray quote, the file is read by one {@link CsvReader}, so the result is always the same as of it.
+ * <p>
+ * A compressed file can not be split before it is inflated, so it is read by one {@link CsvReader} while its gzip
+ * members are inflated in the executor (see {@link CompressedInput}).
+ */
+public class ParallelCsvParser {
+
+    // size of parts of the file in the first pass, chunks are about the same
+    static final int CHUNK_SIZE = 1 << 23;
+    // a chunk is mapped at once
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private static final int WINDOW_SIZE = 1 << 16;
+
+    private static final byte QUOTE = '"';
+
+    // quotes and line breaks of a part of the file
+    private static class Part {
+        boolean oddQuotes;
+        // offsets after the first line break outside quotes if the part starts outside and inside quotes, -1 - none
+        long outsideBreak = -1;
+        long insideBreak = -1;
+    }
+
+    /**
+     * Returns all fields of all records of the UTF-8 file, chunks of it are parsed in the executor.
+     */
+    public static List<String> parse(String filePath, ExecutorService executor) throws Exception {
+        return parse(filePath, executor, null, false, CHUNK_SIZE).get(0);
+    }
+
+    /**
+     * Returns values of the given columns (indices from 0) of all records of the UTF-8 file, a list per column, the
+     * same as {@link InputDataParser#getColumns(String, int[], boolean)} does. Chunks of the file are parsed in the
+     * executor.
+     */
+    public static List<List<String>> parse(String filePath, ExecutorService executor, int[] columns, boolean header)
+            throws Exception {
+        return parse(filePath, executor, columns, header, CHUNK_SIZE);
+    }
+
+    static List<List<String>> parse(String filePath, ExecutorService executor, final int[] columns,
+            final boolean header, final int chunkSize) throws Exception {
+        if (CompressedInput.isCompressed(filePath)) {
+            CsvReader reader = InputDataParser.open(filePath, executor);
+            try {
+                return InputDataParser.read(reader, columns, header);
+            } finally {
+                reader.close();
+            }
+        }
+        final FileChannel channel = FileChannel.open(Paths.get(filePath));
+        try {
+            final long size = channel.size();
+            final Part[] parts = new Part[(int) ((size + chunkSize - 1) / chunkSize)];
+            ParallelChunks.run(executor, parts.length, 1, new ParallelChunks.ChunkTask() {
+                @Override
+                public void run(int from, int to) throws Exception {
+                    for (int i = from; i < to; i++) {
+                        long start = (long) i * chunkSize;
+                        parts[i] = scan(channel, start, Math.min(start + chunkSize, size), size);
+                    }
+                }
+            });
+
+            // the first record bound of each part after the first one
+            List<Long> bounds = new ArrayList<Long>();
+            bounds.add(hasByteOrderMark(channel, size) ? 3L : 0L);
+            boolean inside = false;
+            for (int i = 0; i < parts.length; i++) {
+                long bound = inside ? parts[i].insideBreak : parts[i].outsideBreak;
+                if (i > 0 && bound > bounds.get(bounds.size() - 1) && bound < size) {
+                    bounds.add(bound);
+                }
+                inside ^= parts[i].oddQuotes;
+            }
+            bounds.add(size);
+            for (int i = 1; i < bounds.size(); i++) {
+                if (bounds.get(i) - bounds.get(i - 1) > MAX_CHUNK_SIZE) {
+                    return InputDataParser.read(filePath, columns, header);
+                }
+            }
+
+            final long[] chunkBounds = new long[bounds.size()];
+            for (int i = 0; i < chunkBounds.length; i++) {
+                chunkBounds[i] = bounds.get(i);
+            }
+            final List<List<List<String>>> chunks = new ArrayList<List<List<String>>>(Collections.nCopies(
+                    chunkBounds.length - 1, (List<List<String>>) null));
+            final boolean[] broken = new boolean[chunks.size()];
+            ParallelChunks.run(executor, chunks.size(), 1, new ParallelChunks.ChunkTask() {
+                @Override
+                public void run(int from, int to) throws Exception {
+                    for (int i = from; i < to; i++) {
+                        CsvReader reader = new CsvReader(channel.map(FileChannel.MapMode.READ_ONLY, chunkBounds[i],
+                                chunkBounds[i + 1] - chunkBounds[i]));
+                        chunks.set(i, InputDataParser.read(reader, columns, header && i == 0));
+                        // only the last chunk may end inside quotes
+                        broken[i] = reader.hasUnclosedQuote() && i < broken.length - 1;
+                    }
+                }
+            });
+
+            for (boolean chunkBroken : broken) {
+                if (chunkBroken) {
+                    return InputDataParser.read(filePath, columns, header);
+                }
+            }
+            List<List<String>> data = new ArrayList<List<String>>();
+            for (int c = 0; c < (columns != null ? columns.length : 1); c++) {
+                int valuesCount = 0;
+                for (List<List<String>> chunk : chunks) {
+                    valuesCount += chunk.get(c).size();
+                }
+                List<String> values = new ArrayList<String>(valuesCount);
+                for (List<List<String>> chunk : chunks) {
+                    values.addAll(chunk.get(c));
+                }
+                data.add(values);
+            }
+            return data;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static Part scan(FileChannel channel, long from, long to, long size) throws IOException {
+        // one more byte for LF after CR at the end
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(to + 1, size) - from);
+        int length = (int) (to - from);
+        Part part = new Part();
+        boolean odd = false;
+        // bytes are copied by windows, it is faster than getting them one by one
+        byte[] window = new byte[Math.min(length, WINDOW_SIZE)];
+        for (int start = 0; start < length; start += window.length) {
+            int count = Math.min(window.length, length - start);
+            bytes.position(start);
+            bytes.get(window, 0, count);
+            for (int j = 0; j < count; j++) {
+                byte b = window[j];
+                if (b == QUOTE) {
+                    odd = !odd;
+                } else if ((b == '\n' || b == '\r') && (odd ? part.insideBreak : part.outsideBreak) < 0) {
+                    int i = start + j;
+                    long end = from + i + 1;
+                    if (b == '\r' && i + 1 < bytes.limit() && bytes.get(i + 1) == '\n') {
+                        end++;
+                    }
+                    if (odd) {
+                        part.insideBreak = end;
+                    } else {
+                        part.outsideBreak = end;
+                    }
+                }
+            }
+        }
+        part.oddQuotes = odd;
+        return part;
+    }
+
+    private static boolean hasByteOrderMark(FileChannel channel, long size) throws IOException {
+        if (size < 3) {
+            return false;
+        }
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+        return bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB && bytes.get(2) == (byte) 0xBF;
+    }
+}
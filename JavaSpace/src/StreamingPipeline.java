@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import stemming.GeneralStemmer;
+
+/**
+ * Builds a {@link WordStore} from a CSV input in three stages which run at the same time: one thread reads batches of
+ * words (and payloads), several threads stem them and the calling thread unites them into groups by
+ * {@link WordStore.Builder} in the input order, so the groups are the same as of {@link WordStore#build(List)}.
+ * <p>
+ * Batches go between stages through queues, and the reader may have only so many batches in flight as the memory
+ * budget allows: it waits until the indexer takes some of them, so a slow stage holds back the faster ones instead of
+ * letting batches pile up. The budget bounds only words in flight, words added to the store stay in memory.
+ */
+public class StreamingPipeline {
+
+    static final int BATCH_SIZE = 1 << 10;
+    // rough size of a word in a batch with its strings, payload and stemmed forms
+    private static final int WORD_BYTES = 256;
+    // how often the indexer checks whether other stages failed
+    private static final long POLL_MILLIS = 100;
+
+    // words of a part of the input, the batch with no words marks the end of the input
+    private static class Batch {
+        final long number;
+        final String[] words;
+        final String[] payloads;
+        final List<?>[] stems;
+        int size;
+
+        Batch(long number, boolean withPayloads) {
+            this.number = number;
+            words = new String[BATCH_SIZE];
+            payloads = withPayloads ? new String[BATCH_SIZE] : null;
+            stems = new List<?>[BATCH_SIZE];
+        }
+    }
+
+    /**
+     * Counters of one stage, which may run in several threads.
+     */
+    public static class Stage {
+        private final String name;
+        private final AtomicLong words = new AtomicLong();
+        // time of work and of waiting for other stages in all threads
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public long getWords() {
+            return words.get();
+        }
+
+        public long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+        }
+
+        public long getWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+        }
+
+        /**
+         * Returns words per second of work of one thread.
+         */
+        public long getThroughput() {
+            return busyNanos.get() > 0 ? words.get() * 1000000000L / busyNanos.get() : 0;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + getWords() + " words, " + getThroughput() + " words/s, busy " + getBusyMillis()
+                    + " ms, waiting " + getWaitMillis() + " ms";
+        }
+    }
+
+    private final int threadsCount;
+    private final int batchesInFlight;
+    private final Stage reading = new Stage("reading");
+    private final Stage stemming = new Stage("stemming");
+    private final Stage indexing = new Stage("indexing");
+
+    /**
+     * @param threadsCount number of stemming threads
+     * @param memoryBudget max bytes of words in flight between stages
+     */
+    public StreamingPipeline(int threadsCount, long memoryBudget) {
+        this.threadsCount = threadsCount;
+        batchesInFlight = (int) Math.min(Integer.MAX_VALUE / 2,
+                Math.max(2, memoryBudget / ((long) BATCH_SIZE * WORD_BYTES)));
+    }
+
+    /**
+     * Reads words of the given column (index from 0 or name in the header) and payloads of the other one (null - no
+     * payloads) and builds the store of them, all fields are words if no column is given. The first record is taken
+     * as the header if there is one. The reader is not closed.
+     */
+    public WordStore run(final CsvReader reader, boolean header, String wordColumn, String payloadColumn)
+            throws Exception {
+        int[] columns = null;
+        if (header) {
+            List<String> names = reader.readRecord();
+            if (wordColumn != null || payloadColumn != null) {
+                columns = InputDataParser.findColumns(names != null ? names : Arrays.<String>asList(),
+                        wordColumn != null ? wordColumn : "0", payloadColumn);
+            }
+        } else if (wordColumn != null || payloadColumn != null) {
+            columns = InputDataParser.findColumns((List<String>) null, wordColumn != null ? wordColumn : "0",
+                    payloadColumn);
+        }
+        if (columns != null && columns[1] < 0) {
+            columns = Arrays.copyOf(columns, 1);
+        }
+        final int[] readColumns = columns;
+
+        final Semaphore permits = new Semaphore(batchesInFlight);
+        final BlockingQueue<Batch> read = new ArrayBlockingQueue<Batch>(batchesInFlight + threadsCount);
+        final BlockingQueue<Batch> stemmed = new ArrayBlockingQueue<Batch>(batchesInFlight + threadsCount);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount + 1);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        readAll(reader, readColumns, permits, read);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            for (int i = 0; i < threadsCount; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            stemAll(read, stemmed);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+            return indexAll(stemmed, permits, failure);
+        } finally {
+            // stops the other stages if indexing failed
+            executor.shutdownNow();
+        }
+    }
+
+    private void readAll(CsvReader reader, int[] columns, Semaphore permits, BlockingQueue<Batch> read)
+            throws IOException, InterruptedException {
+        String[] values = columns != null ? new String[columns.length] : null;
+        long number = 0;
+        boolean end = false;
+        while (!end) {
+            long start = System.nanoTime();
+            permits.acquire();
+            long acquired = System.nanoTime();
+            reading.waitNanos.addAndGet(acquired - start);
+
+            Batch batch = new Batch(number++, values != null && values.length > 1);
+            while (batch.size < BATCH_SIZE) {
+                if (values == null) {
+                    String field = reader.readField();
+                    if (field == null) {
+                        end = true;
+                        break;
+                    }
+                    batch.words[batch.size++] = field;
+                } else {
+                    if (!reader.readRecord(columns, values)) {
+                        end = true;
+                        break;
+                    }
+                    batch.words[batch.size] = values[0];
+                    if (batch.payloads != null) {
+                        batch.payloads[batch.size] = values[1];
+                    }
+                    batch.size++;
+                }
+            }
+            reading.words.addAndGet(batch.size);
+            reading.busyNanos.addAndGet(System.nanoTime() - acquired);
+            if (batch.size > 0) {
+                read.put(batch);
+            } else {
+                permits.release();
+            }
+        }
+        // each stemming thread passes its end mark to the indexer
+        for (int i = 0; i < threadsCount; i++) {
+            read.put(new Batch(-1, false));
+        }
+    }
+
+    private void stemAll(BlockingQueue<Batch> read, BlockingQueue<Batch> stemmed) throws Exception {
+        while (true) {
+            long start = System.nanoTime();
+            Batch batch = read.take();
+            long taken = System.nanoTime();
+            stemming.waitNanos.addAndGet(taken - start);
+            if (batch.size == 0) {
+                stemmed.put(batch);
+                return;
+            }
+            for (int i = 0; i < batch.size; i++) {
+                batch.stems[i] = GeneralStemmer.getStemmedStrings(batch.words[i]);
+            }
+            stemming.words.addAndGet(batch.size);
+            stemming.busyNanos.addAndGet(System.nanoTime() - taken);
+            stemmed.put(batch);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private WordStore indexAll(BlockingQueue<Batch> stemmed, Semaphore permits, AtomicReference<Exception> failure)
+            throws Exception {
+        WordStore.Builder builder = new WordStore.Builder();
+        // batches which came before the ones ahead of them
+        Map<Long, Batch> early = new HashMap<Long, Batch>();
+        long next = 0;
+        int ends = 0;
+        while (ends < threadsCount) {
+            long start = System.nanoTime();
+            Batch batch = stemmed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            long taken = System.nanoTime();
+            indexing.waitNanos.addAndGet(taken - start);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            if (batch == null) {
+                continue;
+            }
+            if (batch.size == 0) {
+                ends++;
+                continue;
+            }
+            early.put(batch.number, batch);
+            for (batch = early.remove(next); batch != null; batch = early.remove(next)) {
+                for (int i = 0; i < batch.size; i++) {
+                    builder.add(batch.words[i], batch.payloads != null ? batch.payloads[i] : null,
+                            (List<String>) batch.stems[i]);
+                }
+                indexing.words.addAndGet(batch.size);
+                permits.release();
+                next++;
+            }
+            indexing.busyNanos.addAndGet(System.nanoTime() - taken);
+        }
+        long start = System.nanoTime();
+        WordStore store = builder.build();
+        indexing.busyNanos.addAndGet(System.nanoTime() - start);
+        return store;
+    }
+
+    public Stage[] getStages() {
+        return new Stage[] { reading, stemming, indexing };
+    }
+
+    /**
+     * Prints counters of all stages, one line per stage.
+     */
+    public void printStats(PrintStream out) {
+        for (Stage stage : getStages()) {
+            out.println(stage);
+        }
+    }
+}
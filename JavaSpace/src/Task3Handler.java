@@ -1,17 +1,60 @@
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
+import stemming.GeneralStemmer;
+import stemming.RuleStemmer;
+import stemming.StemCache;
+import stemming.StemStore;
+
 
 public class Task3Handler {
     
     private static final String INPUT_FILE;
     private static final String OUTPUT_FILE;
+    // name of the output format (see OutputFormat) or of its class, the format of the extension of OUTPUT_FILE if it
+    // is not set
+    private static final String OUTPUT_FORMAT;
+    // binary file for the group index (see GroupIndexFile), it is not written if the path is not set
+    private static final String INDEX_FILE;
+    // number of threads for stemming and grouping: 1 - everything is done in the current thread,
+    // 0 - one thread per available processor
+    private static final int THREADS_COUNT;
+    // groups with words which difference measure is less than this value are united, 0 - no such uniting
+    private static final double FUZZY_MAX_DIFF;
+    // if bands count is greater than 0 then candidates for fuzzy uniting are found by MinHash LSH, otherwise by BK-tree
+    private static final int LSH_BANDS;
+    private static final int LSH_ROWS;
+    // identical words are stemmed and grouped once and written with the number of their occurrences
+    private static final boolean COLLAPSE_DUPLICATES;
+    // max number of cached stemmed forms shared by all stemming threads, 0 - no cache
+    private static final int STEM_CACHE_SIZE;
+    // files of stemming rules for Cyrillic and Latin words (see RuleStemmer), Porter stemmers are used if not set
+    private static final String RU_STEMMING_RULES;
+    private static final String EN_STEMMING_RULES;
+    // stemmed forms of Latin words get Cyrillic transliterations, so both spellings of a word get into one group
+    private static final boolean TRANSLITERATION;
+    // path of the files of stemmed forms kept between runs (see StemStore) without suffixes, null - no store
+    private static final String STEM_STORE_PATH;
+    // columns of words and of their payloads (e.g. IDs), which are written next to them, given by index from 0 or by
+    // name in the header, all fields are words if they are not set
+    private static final String WORD_COLUMN;
+    private static final String PAYLOAD_COLUMN;
+    // the first record of the input is a header of column names
+    private static final boolean INPUT_HEADER;
+    // reading, stemming and grouping run at the same time (see StreamingPipeline) with at most so many megabytes of
+    // words in flight between them
+    private static final boolean PIPELINE;
+    private static final int PIPELINE_MEMORY_MB;
+    // input and output path which stands for stdin and stdout
+    private static final String STANDARD_STREAM = "-";
     
     static {
         Properties properties = new Properties();
@@ -26,24 +69,204 @@ public class Task3Handler {
         }
         INPUT_FILE = properties.getProperty("INPUT_FILE_PATH");
         OUTPUT_FILE = properties.getProperty("OUTPUT_FILE_PATH");
+        OUTPUT_FORMAT = properties.getProperty("OUTPUT_FORMAT");
+        INDEX_FILE = properties.getProperty("INDEX_FILE_PATH");
+        int threadsCount = Integer.parseInt(properties.getProperty("THREADS_COUNT", "1").trim());
+        THREADS_COUNT = threadsCount > 0 ? threadsCount : Runtime.getRuntime().availableProcessors();
+        FUZZY_MAX_DIFF = Double.parseDouble(properties.getProperty("FUZZY_MAX_DIFF", "0").trim());
+        LSH_BANDS = Integer.parseInt(properties.getProperty("LSH_BANDS", "0").trim());
+        LSH_ROWS = Integer.parseInt(properties.getProperty("LSH_ROWS", "4").trim());
+        COLLAPSE_DUPLICATES = Boolean.parseBoolean(properties.getProperty("COLLAPSE_DUPLICATES", "false").trim());
+        STEM_CACHE_SIZE = Integer.parseInt(properties.getProperty("STEM_CACHE_SIZE", "0").trim());
+        RU_STEMMING_RULES = properties.getProperty("RU_STEMMING_RULES");
+        EN_STEMMING_RULES = properties.getProperty("EN_STEMMING_RULES");
+        TRANSLITERATION = Boolean.parseBoolean(properties.getProperty("TRANSLITERATION", "false").trim());
+        STEM_STORE_PATH = properties.getProperty("STEM_STORE_PATH");
+        WORD_COLUMN = properties.getProperty("WORD_COLUMN");
+        PAYLOAD_COLUMN = properties.getProperty("PAYLOAD_COLUMN");
+        INPUT_HEADER = Boolean.parseBoolean(properties.getProperty("INPUT_HEADER", "false").trim());
+        PIPELINE = Boolean.parseBoolean(properties.getProperty("PIPELINE", "false").trim());
+        PIPELINE_MEMORY_MB = Integer.parseInt(properties.getProperty("PIPELINE_MEMORY_MB", "64").trim());
         
     }
     
     public static void execute() throws Exception {
-        // read all words without quotes from the given file
-        List<String> data = InputDataParser.getData(INPUT_FILE);
+        if (COLLAPSE_DUPLICATES && PAYLOAD_COLUMN != null) {
+            throw new IllegalArgumentException("payloads of collapsed words would be lost, so PAYLOAD_COLUMN can not be "
+                    + "used with COLLAPSE_DUPLICATES");
+        }
+        if (PIPELINE && (COLLAPSE_DUPLICATES || FUZZY_MAX_DIFF > 0)) {
+            throw new IllegalArgumentException("PIPELINE can be used neither with COLLAPSE_DUPLICATES nor with "
+                    + "FUZZY_MAX_DIFF");
+        }
+        if (!PIPELINE && STANDARD_STREAM.equals(INPUT_FILE)) {
+            throw new IllegalArgumentException("the input can be read from stdin only with PIPELINE");
+        }
+        setUpStemming();
+        
+        // stemmed forms of the same version made by earlier runs
+        StemStore store = STEM_STORE_PATH != null ? StemStore.open(STEM_STORE_PATH, GeneralStemmer.getVersion()) : null;
+        GeneralStemmer.setStore(store);
+        try {
+            if (PIPELINE) {
+                executePipeline();
+                return;
+            }
+            
+            // columns of words and payloads, other fields are skipped
+            int[] columns = null;
+            if (WORD_COLUMN != null || PAYLOAD_COLUMN != null) {
+                columns = InputDataParser.findColumns(INPUT_FILE, INPUT_HEADER,
+                        WORD_COLUMN != null ? WORD_COLUMN : "0", PAYLOAD_COLUMN);
+                if (columns[1] < 0) {
+                    columns = Arrays.copyOf(columns, 1);
+                }
+            }
+            
+            List<String> data = null;
+            List<String> payloads = null;
+            WordCounts counts = null;
+            if (COLLAPSE_DUPLICATES) {
+                // collapsing identical words into one entry with the number of occurrences as they are read, so
+                // only distinct words are kept in memory
+                CsvReader reader = InputDataParser.open(INPUT_FILE);
+                try {
+                    if (INPUT_HEADER) {
+                        reader.readRecord();
+                    }
+                    counts = WordCounts.collapse(columns != null ? reader.column(columns[0]) : reader);
+                } finally {
+                    reader.close();
+                }
+            } else {
+                List<List<String>> values;
+                if (THREADS_COUNT == 1) {
+                    // read all words of the given file
+                    values = InputDataParser.getColumns(INPUT_FILE, columns, INPUT_HEADER);
+                } else {
+                    // the same but chunks of the file are parsed in several threads
+                    ForkJoinPool pool = new ForkJoinPool(THREADS_COUNT);
+                    try {
+                        values = InputDataParser.getColumns(INPUT_FILE, columns, INPUT_HEADER, pool);
+                    } finally {
+                        pool.shutdown();
+                    }
+                }
+                data = values.get(0);
+                payloads = values.size() > 1 ? values.get(1) : null;
+            }
+        
+            List<Group> groups;
+            if (THREADS_COUNT == 1 && FUZZY_MAX_DIFF <= 0) {
+                // stemming and uniting words right into compact arrays, groups are only views of them
+                WordStore words = counts != null ? WordStore.build(counts)
+                        : payloads != null ? WordStore.build(data, payloads) : WordStore.build(data);
+                groups = words.getGroups();
+            } else {
+                // creating word wrapper and group for each word
+                groups = groupWordSet(counts != null ? new WordSet(counts)
+                        : payloads != null ? new WordSet(data, payloads) : new WordSet(data));
+            }
         
-        // creating word wrapper and group for each word
-        WordSet ws = new WordSet(data);
+            writeGroups(groups);
+        } finally {
+            GeneralStemmer.setStore(null);
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+    
+    private static void executePipeline() throws Exception {
+        // words are stemmed and united into groups while the input is still being read
+        CsvReader reader = STANDARD_STREAM.equals(INPUT_FILE) ? new CsvReader(CompressedInput.open(System.in))
+                : InputDataParser.open(INPUT_FILE);
+        StreamingPipeline pipeline = new StreamingPipeline(THREADS_COUNT, PIPELINE_MEMORY_MB * (1L << 20));
+        WordStore words;
+        try {
+            words = pipeline.run(reader, INPUT_HEADER, WORD_COLUMN, PAYLOAD_COLUMN);
+        } finally {
+            reader.close();
+        }
+        pipeline.printStats(System.err);
         
-        // stemming words in each group to find there root representation 
-        ws.stemAll();
+        writeGroups(words.getGroups());
+    }
+    
+    private static void writeGroups(List<Group> groups) throws Exception {
+        // printing result in a file or to stdout, html unless another format is asked for
+        OutputFormat format = OUTPUT_FORMAT != null ? OutputFormat.forName(OUTPUT_FORMAT)
+                : OutputFormat.forFile(OUTPUT_FILE);
+        if (STANDARD_STREAM.equals(OUTPUT_FILE)) {
+            OutputDataCreator.writeData(groups, System.out, format, COLLAPSE_DUPLICATES);
+        } else {
+            OutputDataCreator.writeData(groups, OUTPUT_FILE, format, COLLAPSE_DUPLICATES);
+        }
         
-        // uniting groups basing on equality of roots at least for one word pair in groups
-        ws.uniteGroups();
+        // saving groups for lookups without regrouping
+        if (INDEX_FILE != null) {
+            GroupIndexFile.write(groups, INDEX_FILE);
+        }
+    }
+    
+    private static List<Group> groupWordSet(WordSet ws) throws Exception {
+        if (THREADS_COUNT == 1) {
+            // stemming words in each group to find there root representation 
+            ws.stemAll();
+            
+            // uniting groups basing on equality of roots at least for one word pair in groups
+            ws.uniteGroups();
+        } else {
+            // the same two steps but spread over several threads
+            ForkJoinPool pool = new ForkJoinPool(THREADS_COUNT);
+            try {
+                ws.stemAll(pool);
+                ws.uniteGroups(pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
         
-        // printing result in a html file
-        OutputDataCreator.writeData(ws.getGroups(), OUTPUT_FILE);
+        // uniting groups which have words with small difference measure (e.g. with typos)
+        if (FUZZY_MAX_DIFF > 0 && LSH_BANDS > 0) {
+            ws.uniteSimilarGroups(FUZZY_MAX_DIFF, new MinHashLsh(LSH_BANDS, LSH_ROWS));
+        } else if (FUZZY_MAX_DIFF > 0) {
+            ws.uniteSimilarGroups(FUZZY_MAX_DIFF);
+        }
+        return ws.getGroups();
+    }
+    
+    // stemmers, the cache and transliteration of .properties, words must be stemmed alike for grouping and lookups
+    private static void setUpStemming() throws IOException {
+        if (STEM_CACHE_SIZE > 0) {
+            GeneralStemmer.setCache(new StemCache(STEM_CACHE_SIZE));
+        }
+        if (RU_STEMMING_RULES != null || EN_STEMMING_RULES != null) {
+            GeneralStemmer.setStemmers(
+                    RU_STEMMING_RULES != null ? RuleStemmer.load(RU_STEMMING_RULES) : GeneralStemmer.RU_PORTER_STEMMER,
+                    EN_STEMMING_RULES != null ? RuleStemmer.load(EN_STEMMING_RULES) : GeneralStemmer.EN_PORTER_STEMMER);
+        }
+        GeneralStemmer.setTransliteration(TRANSLITERATION);
+    }
+    
+    /**
+     * Prints the group of each word taken from the index file written by {@link #execute()}. Words which are not in
+     * the index are looked up by their stemmed forms.
+     */
+    public static void lookup(String[] words) throws Exception {
+        if (INDEX_FILE == null) {
+            throw new IllegalArgumentException("INDEX_FILE_PATH is not set");
+        }
+        setUpStemming();
+        GroupIndexFile index = GroupIndexFile.open(INDEX_FILE);
+        for (String word : words) {
+            int groupId = index.findGroupByStems(word);
+            if (groupId < 0) {
+                System.out.println(word + ": -");
+            } else {
+                System.out.println(word + ": " + groupId + " " + index.getGroupWords(groupId));
+            }
+        }
     }
 
 }
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Plain text: a line per word and an empty line after each group. A line has the word (all its spellings separated by
+ * ", " if counts are written), then the number of occurrences and the payload if there are ones, separated by tabs.
+ * Backslashes, tabs and line breaks in words are escaped with backslashes.
+ */
+public class TextOutputFormat extends OutputFormat {
+
+    private static final String[] ESCAPES = new String['\\' + 1];
+
+    static {
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+    }
+
+    @Override
+    public String getName() {
+        return "text";
+    }
+
+    @Override
+    public String[] getExtensions() {
+        return new String[] { ".txt" };
+    }
+
+    @Override
+    public void write(List<Group> groups, OutputWriter out, boolean withCounts) throws IOException {
+        for (Group grp : groups) {
+            for (WordWrapper wrd : grp.getElements()) {
+                if (withCounts) {
+                    List<String> spellings = wrd.getSpellings();
+                    for (int i = 0; i < spellings.size(); i++) {
+                        if (i > 0) {
+                            out.append(", ");
+                        }
+                        out.append(spellings.get(i), ESCAPES);
+                    }
+                    out.append("\t");
+                    out.append(wrd.getOccurrences());
+                } else {
+                    out.append(wrd.getOriginalWord(), ESCAPES);
+                }
+                if (wrd.getPayload() != null) {
+                    out.append("\t");
+                    out.append(wrd.getPayload(), ESCAPES);
+                }
+                out.append("\n");
+            }
+            out.append("\n");
+        }
+    }
+}
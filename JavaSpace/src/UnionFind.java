@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * Disjoint-set structure over the integer range [0, size). It is used for uniting groups of words: every word gets its
+ * own set at the beginning and sets are joined whenever two words share some stemmed form.
+ * <p>
+ * Union by rank together with path compression makes each operation practically constant. This implementation is not
+ * thread safe, see {@link ConcurrentUnionFind} for the one which can be shared between threads.
+ */
+public class UnionFind implements DisjointSet {
+
+    // parent of each element, root elements are parents of themselves
+    private int[] parent;
+    // upper bound of the height of the tree for each root
+    private byte[] rank;
+    private int size;
+
+    public UnionFind(int size) {
+        parent = new int[size];
+        rank = new byte[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an element in its own set and returns it, it is the current size.
+     */
+    public int add() {
+        if (size == parent.length) {
+            parent = Arrays.copyOf(parent, Math.max(16, size * 2));
+            rank = Arrays.copyOf(rank, parent.length);
+        }
+        parent[size] = size;
+        return size++;
+    }
+
+    @Override
+    public int find(int element) {
+        int root = element;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // path compression: hang all passed elements directly on the root
+        while (parent[element] != root) {
+            int next = parent[element];
+            parent[element] = root;
+            element = next;
+        }
+        return root;
+    }
+
+    @Override
+    public boolean union(int first, int second) {
+        int frstRoot = find(first);
+        int scndRoot = find(second);
+        if (frstRoot == scndRoot) {
+            return false;
+        }
+        if (rank[frstRoot] < rank[scndRoot]) {
+            parent[frstRoot] = scndRoot;
+        } else if (rank[frstRoot] > rank[scndRoot]) {
+            parent[scndRoot] = frstRoot;
+        } else {
+            parent[scndRoot] = frstRoot;
+            rank[frstRoot]++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import stemming.GeneralStemmer;
+
+/**
+ * Input words with exact duplicates collapsed. Words are identical if they are equal after normalization (see
+ * {@link GeneralStemmer#normalize(String)}), so e.g. "club" and "Club" are one entry. For each entry the number of its
+ * occurrences and all its distinct spellings are kept, and entries are in the order of their first occurrence, so
+ * stemming and grouping of {@link #getWords()} give the same groups as of all input words.
+ */
+public class WordCounts {
+
+    // the first spelling of each entry
+    private final String[] words;
+    private final int[] counts;
+    // all distinct spellings of each entry in the order of occurrence, null if there is only one
+    private final String[][] spellings;
+
+    private WordCounts(String[] words, int[] counts, String[][] spellings) {
+        this.words = words;
+        this.counts = counts;
+        this.spellings = spellings;
+    }
+
+    public static WordCounts collapse(List<String> data) {
+        return collapse(data.iterator());
+    }
+
+    /**
+     * Collapses words as they come, e.g. from a {@link CsvReader}, so only distinct ones are kept in memory.
+     */
+    public static WordCounts collapse(Iterator<String> data) {
+        Map<String, Integer> entryByForm = new HashMap<String, Integer>();
+        List<String> words = new ArrayList<String>();
+        int[] counts = new int[16];
+        List<List<String>> spellings = new ArrayList<List<String>>();
+        while (data.hasNext()) {
+            String word = data.next();
+            String form = word.isEmpty() ? word : GeneralStemmer.normalize(word);
+            Integer entry = entryByForm.get(form);
+            if (entry == null) {
+                entry = words.size();
+                entryByForm.put(form, entry);
+                words.add(word);
+                spellings.add(null);
+                if (counts.length == entry) {
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+            } else if (!words.get(entry).equals(word)) {
+                List<String> entrySpellings = spellings.get(entry);
+                if (entrySpellings == null) {
+                    entrySpellings = new ArrayList<String>(2);
+                    entrySpellings.add(words.get(entry));
+                    spellings.set(entry, entrySpellings);
+                }
+                if (!entrySpellings.contains(word)) {
+                    entrySpellings.add(word);
+                }
+            }
+            counts[entry]++;
+        }
+
+        String[][] spellingsArray = new String[words.size()][];
+        for (int i = 0; i < spellingsArray.length; i++) {
+            if (spellings.get(i) != null) {
+                spellingsArray[i] = spellings.get(i).toArray(new String[spellings.get(i).size()]);
+            }
+        }
+        return new WordCounts(words.toArray(new String[words.size()]), Arrays.copyOf(counts, words.size()),
+                spellingsArray);
+    }
+
+    /**
+     * Returns the first spelling of each entry.
+     */
+    public List<String> getWords() {
+        return Collections.unmodifiableList(Arrays.asList(words));
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    public int getCount(int entry) {
+        return counts[entry];
+    }
+
+    public List<String> getSpellings(int entry) {
+        if (spellings[entry] == null) {
+            return Collections.singletonList(words[entry]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(spellings[entry]));
+    }
+}
@@ -1,98 +1,309 @@
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.swing.text.Position;
-
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * Calculates difference measure between two words. It is based on Levenshtein distance, but every change costs
+ * according to its position in the word (see {@link #positionCost(int, int)}).
+ * <p>
+ * The distance matrix is filled row by row and only two rows are kept. Each cell holds the distance and the sums of
+ * position costs of changes along the chosen path for each word, which is all the measure needs. An instance holds
+ * these rows and reuses them between calls, so it is not thread safe; the static methods use one instance per thread.
+ */
 public class WordDifferenceCalculator {
     
-    // lists of positions on which changes occur (memorizing only deletions and substitutions positions for each word)
-    List<Integer> firstWordPositionChanges = new ArrayList<Integer>();
-    List<Integer> secondWordPositionChanges = new ArrayList<Integer>();
-    // Levenshtein distance value
-    int distVal;
-    
-    public static Double calcDiff(String first, String second) {
-        //Calculation of Levenshtein distance matrix
-        WordDifferenceCalculator[][] distanceMatrix =  
-                new WordDifferenceCalculator[first.length() + 1][second.length() + 1];
-        calcLevenshteinDistance(first, second, first.length(), second.length(), distanceMatrix);
-        
-        //basing on Levenshtein distance calculate difference measure between words
-        return calcDiff(distanceMatrix[first.length()][second.length()], first.length(), second.length());
+    private static final ThreadLocal<WordDifferenceCalculator> PER_THREAD = new ThreadLocal<WordDifferenceCalculator>() {
+        @Override
+        protected WordDifferenceCalculator initialValue() {
+            return new WordDifferenceCalculator();
+        }
+    };
+    
+    // number of candidates (or queries for a matrix) handled by one task in parallel mode
+    private static final int CHUNK_SIZE = 1024;
+    
+    // characters of the first word and costs of changes on each its position, indexed from 1
+    private char[] frstChars = new char[0];
+    private int[] frstCosts = new int[1];
+    private int frstLen;
+    
+    // previous and current rows of the distance matrix: Levenshtein distance values and sums of costs of changes
+    // positions in the first and the second word on the path to each cell
+    private int[] prevDist = new int[0];
+    private int[] prevFrstCost = new int[0];
+    private int[] prevScndCost = new int[0];
+    private int[] crntDist = new int[0];
+    private int[] crntFrstCost = new int[0];
+    private int[] crntScndCost = new int[0];
+    
+    public static double calcDiff(String first, String second) {
+        return PER_THREAD.get().diff(first, second);
     }
     
-    private static void calcLevenshteinDistance(String first, String second, 
-            int indxFrst, int indxScnd, WordDifferenceCalculator[][] distanceMatrix) {
-        //if position of interest of distance matrix already was calculated then just return.
-        if (distanceMatrix[indxFrst][indxScnd] != null) {
-            return;
-        }
-        
-        //initializing distance matrix with start values. Number of row(column) is a the number of character in string.
-        // e.g. 0 is position before string (empty), 1 - is first character position, 
-        // length() - is the last character in the word
-        if (indxFrst == 0) {
-            WordDifferenceCalculator wd = new WordDifferenceCalculator();
-            wd.distVal = indxScnd;
-            for(int i = 1; i <= indxScnd; i++) {
-                wd.secondWordPositionChanges.add(i);
+    /**
+     * Same as {@link #calcDiff(String, String)} if the result is less than maxDiff. Otherwise the calculation can stop
+     * as soon as the result can not be less than maxDiff, and then some value not less than maxDiff is returned.
+     */
+    public static double calcDiff(String first, String second, double maxDiff) {
+        return PER_THREAD.get().diff(first, second, maxDiff);
+    }
+    
+    /**
+     * Returns plain Levenshtein distance between words (the number of insertions, deletions and substitutions).
+     */
+    public static int calcLevenshteinDistance(String first, String second) {
+        return PER_THREAD.get().distance(first, second);
+    }
+    
+    public double diff(String first, String second) {
+        return diff(first, second, Double.POSITIVE_INFINITY);
+    }
+    
+    public double diff(String first, String second, double maxDiff) {
+        setFirst(first);
+        return diffWithFirst(second, maxDiff);
+    }
+    
+    /**
+     * Calculates difference measures between the query and each candidate, i.e. calcDiff(query, candidates[i]).
+     * Values less than maxDiff are exact, other values are only known to be not less than maxDiff: candidates which
+     * lengths are too far from the query one are not compared at all (their value is infinity), and comparison of
+     * others stops early. The query is prepared only once.
+     */
+    public double[] diff(String query, String[] candidates, double maxDiff) {
+        double[] result = new double[candidates.length];
+        diff(query, candidates, maxDiff, 0, candidates.length, result);
+        return result;
+    }
+    
+    /**
+     * Same as {@link #diff(String, String[], double)} but candidates are split into chunks which are compared in the
+     * executor, each thread with its own calculator.
+     */
+    public static double[] calcDiff(final String query, final String[] candidates, final double maxDiff,
+            ExecutorService executor) throws Exception {
+        final double[] result = new double[candidates.length];
+        ParallelChunks.run(executor, candidates.length, CHUNK_SIZE, new ParallelChunks.ChunkTask() {
+            @Override
+            public void run(int from, int to) {
+                PER_THREAD.get().diff(query, candidates, maxDiff, from, to, result);
             }
-            distanceMatrix[indxFrst][indxScnd] = wd;
-            return;
-        } else if (indxScnd == 0) {
-            WordDifferenceCalculator wd = new WordDifferenceCalculator();
-            wd.distVal = indxFrst;
-            for(int i = 1; i <= indxFrst; i++) {
-                wd.firstWordPositionChanges.add(i);
+        });
+        return result;
+    }
+    
+    /**
+     * Calculates the matrix of difference measures where [i][j] is calcDiff(queries[i], candidates[j]), with the
+     * same meaning of maxDiff as in {@link #diff(String, String[], double)}. Queries are split between threads of the
+     * executor.
+     */
+    public static double[][] calcDiff(final String[] queries, final String[] candidates, final double maxDiff,
+            ExecutorService executor) throws Exception {
+        final double[][] result = new double[queries.length][];
+        int queriesInChunk = Math.max(1, CHUNK_SIZE / Math.max(1, candidates.length));
+        ParallelChunks.run(executor, queries.length, queriesInChunk, new ParallelChunks.ChunkTask() {
+            @Override
+            public void run(int from, int to) {
+                WordDifferenceCalculator calculator = PER_THREAD.get();
+                for (int i = from; i < to; i++) {
+                    result[i] = calculator.diff(queries[i], candidates, maxDiff);
+                }
             }
-            distanceMatrix[indxFrst][indxScnd] = wd;
-            return;
+        });
+        return result;
+    }
+    
+    /**
+     * Returns indices of at most k candidates which are the closest to the query and which difference measure is less
+     * than maxDiff. They are sorted by the measure, candidates with equal measure are sorted by their index.
+     */
+    public static int[] findClosest(String query, String[] candidates, int k, double maxDiff,
+            ExecutorService executor) throws Exception {
+        final double[] diffs = calcDiff(query, candidates, maxDiff, executor);
+        // the worst of the best candidates found so far is on the top
+        PriorityQueue<Integer> closest = new PriorityQueue<Integer>(Math.max(1, k), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int byDiff = Double.compare(diffs[o2], diffs[o1]);
+                return byDiff != 0 ? byDiff : o2 - o1;
+            }
+        });
+        for (int i = 0; i < diffs.length && k > 0; i++) {
+            if (diffs[i] >= maxDiff) {
+                continue;
+            }
+            if (closest.size() < k) {
+                closest.add(i);
+            } else if (closest.comparator().compare(i, closest.peek()) > 0) {
+                closest.poll();
+                closest.add(i);
+            }
+        }
+        int[] result = new int[closest.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = closest.poll();
         }
+        return result;
+    }
+    
+    private void diff(String query, String[] candidates, double maxDiff, int from, int to, double[] result) {
+        setFirst(query);
+        int maxLenDiff = maxDiff < 1 ? maxDistanceForDiff(frstLen, maxDiff) : Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            if (Math.abs(candidates[i].length() - frstLen) > maxLenDiff) {
+                result[i] = Double.POSITIVE_INFINITY;
+            } else {
+                result[i] = diffWithFirst(candidates[i], maxDiff);
+            }
+        }
+    }
+    
+    private void setFirst(String first) {
+        frstLen = first.length();
+        if (frstChars.length < frstLen) {
+            frstChars = new char[frstLen];
+            frstCosts = new int[frstLen + 1];
+        }
+        first.getChars(0, frstLen, frstChars, 0);
+        for (int i = 1; i <= frstLen; i++) {
+            frstCosts[i] = positionCost(i, frstLen);
+        }
+    }
+    
+    private double diffWithFirst(String second, double maxDiff) {
+        int scndLen = second.length();
+        ensureCapacity(scndLen + 1);
         
-        //fill the values for distance matrix with indices numbers less than current indices 
-        calcLevenshteinDistance(first, second, indxFrst - 1, indxScnd, distanceMatrix);
-        calcLevenshteinDistance(first, second, indxFrst, indxScnd - 1, distanceMatrix);
-        calcLevenshteinDistance(first, second, indxFrst - 1, indxScnd - 1, distanceMatrix);
+        // first row: the first word is empty, so every character of the second one is changed
+        prevDist[0] = 0;
+        prevFrstCost[0] = 0;
+        prevScndCost[0] = 0;
+        for (int j = 1; j <= scndLen; j++) {
+            prevDist[j] = j;
+            prevFrstCost[j] = 0;
+            prevScndCost[j] = prevScndCost[j - 1] + positionCost(j, scndLen);
+        }
         
-        // choose the smallest distance and fill current distance position
-        WordDifferenceCalculator wd = new WordDifferenceCalculator();
-        distanceMatrix[indxFrst][indxScnd] = wd;
+        for (int i = 1; i <= frstLen; i++) {
+            int frstPosCost = frstCosts[i];
+            crntDist[0] = i;
+            crntFrstCost[0] = prevFrstCost[0] + frstPosCost;
+            crntScndCost[0] = 0;
+            double rowMinDiff = (double) crntFrstCost[0] / frstLen;
+            
+            char frstChar = frstChars[i - 1];
+            for (int j = 1; j <= scndLen; j++) {
+                // choose the smallest distance, ties are resolved as deletion from the second word, then as
+                // substitution
+                int leftDel = prevDist[j];
+                int rightDel = crntDist[j - 1];
+                int substitution = prevDist[j - 1];
+                if (leftDel < rightDel && leftDel < substitution) {
+                    crntDist[j] = leftDel + 1;
+                    crntFrstCost[j] = prevFrstCost[j] + frstPosCost;
+                    crntScndCost[j] = prevScndCost[j];
+                } else if (rightDel < substitution) {
+                    crntDist[j] = rightDel + 1;
+                    crntFrstCost[j] = crntFrstCost[j - 1];
+                    crntScndCost[j] = crntScndCost[j - 1] + positionCost(j, scndLen);
+                } else if (frstChar != second.charAt(j - 1)) {
+                    crntDist[j] = substitution + 1;
+                    crntFrstCost[j] = prevFrstCost[j - 1] + frstPosCost;
+                    crntScndCost[j] = prevScndCost[j - 1] + positionCost(j, scndLen);
+                } else {
+                    crntDist[j] = substitution;
+                    crntFrstCost[j] = prevFrstCost[j - 1];
+                    crntScndCost[j] = prevScndCost[j - 1];
+                }
+                rowMinDiff = Math.min(rowMinDiff, (double) crntFrstCost[j] / frstLen + (double) crntScndCost[j]
+                        / scndLen);
+            }
+            
+            // the resulting path goes through some cell of each row and costs never decrease along it
+            if (rowMinDiff >= maxDiff) {
+                return rowMinDiff;
+            }
+            swapRows();
+        }
         
-        WordDifferenceCalculator leftDelDist = distanceMatrix[indxFrst - 1][indxScnd];
-        WordDifferenceCalculator rightDelDist = distanceMatrix[indxFrst][indxScnd - 1];
-        WordDifferenceCalculator substitutionDist = distanceMatrix[indxFrst - 1][indxScnd - 1];
-        if (leftDelDist.distVal < rightDelDist.distVal &&
-                leftDelDist.distVal < substitutionDist.distVal) {
-            wd.distVal = leftDelDist.distVal + 1;
-            wd.firstWordPositionChanges.addAll(leftDelDist.firstWordPositionChanges);
-            wd.secondWordPositionChanges.addAll(leftDelDist.secondWordPositionChanges);
-            wd.firstWordPositionChanges.add(indxFrst);
-            return;
-        } else if (rightDelDist.distVal < substitutionDist.distVal) {
-            wd.distVal = rightDelDist.distVal + 1;
-            wd.firstWordPositionChanges.addAll(rightDelDist.firstWordPositionChanges);
-            wd.secondWordPositionChanges.addAll(rightDelDist.secondWordPositionChanges);
-            wd.secondWordPositionChanges.add(indxScnd);
-            return;
-        } else {
-            wd.distVal = substitutionDist.distVal;
-            wd.firstWordPositionChanges.addAll(substitutionDist.firstWordPositionChanges);
-            wd.secondWordPositionChanges.addAll(substitutionDist.secondWordPositionChanges);
-            if (first.charAt(indxFrst - 1) != second.charAt(indxScnd - 1)) {
-                wd.distVal++;
-                wd.firstWordPositionChanges.add(indxFrst);
-                wd.secondWordPositionChanges.add(indxScnd);
+        //basing on costs of changes calculate difference measure between words
+        return (double) prevFrstCost[scndLen] / frstLen + (double) prevScndCost[scndLen] / scndLen;
+    }
+    
+    public int distance(String first, String second) {
+        int scndLen = second.length();
+        ensureCapacity(scndLen + 1);
+        for (int j = 0; j <= scndLen; j++) {
+            prevDist[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            crntDist[0] = i;
+            char frstChar = first.charAt(i - 1);
+            for (int j = 1; j <= scndLen; j++) {
+                int substitution = prevDist[j - 1] + (frstChar == second.charAt(j - 1) ? 0 : 1);
+                crntDist[j] = Math.min(Math.min(prevDist[j], crntDist[j - 1]) + 1, substitution);
+            }
+            int[] tmp = prevDist;
+            prevDist = crntDist;
+            crntDist = tmp;
+        }
+        return prevDist[scndLen];
+    }
+    
+    /**
+     * Returns the greatest Levenshtein distance which two words can have if {@link #calcDiff(String, String)} of them
+     * is less than maxDiff and one of them has the specified length. Words with bigger distance can be skipped without
+     * calculation of the difference measure.
+     * <p>
+     * Each change adds at least 1/length of its word to the measure, so the measure is at least
+     * distance / max(length1, length2), which limits the distance by maxDiff * length / (1 - maxDiff). Inside this
+     * limit the bound is made tighter: positions of changes in a word are distinct, so k changes of a word cost at
+     * least 1 + 1 + 2 + 2 + 3 + ... (k summands), and it is checked whether any split of the distance between two words
+     * of possible lengths can be cheaper than maxDiff.
+     * 
+     * @param maxDiff
+     *            must be less than 1, otherwise words of any distance can be close enough
+     * @return -1 if no word can be close enough
+     */
+    public static int maxDistanceForDiff(int length, double maxDiff) {
+        if (maxDiff >= 1) {
+            throw new IllegalArgumentException("maxDiff: " + maxDiff);
+        }
+        int maxDist = -1;
+        int coarseLimit = (int) Math.floor(maxDiff * length / (1 - maxDiff));
+        for (int dist = 0; dist <= coarseLimit; dist++) {
+            if (minDiff(length, dist) < maxDiff) {
+                maxDist = dist;
             }
-            return;
         }
+        return maxDist;
     }
     
-    private static Double calcDiff(WordDifferenceCalculator levenshteinDist, int frstWrdLen, int scndWrdLen) {
-        //for each word calculate its difference measure
-        Double firstWrdDiff = calcDiff(levenshteinDist.firstWordPositionChanges, frstWrdLen);
-        Double secondWrdDiff = calcDiff(levenshteinDist.secondWordPositionChanges, scndWrdLen);
-        return firstWrdDiff + secondWrdDiff;
+    /*
+     * the smallest difference measure which a word of the given length can have with any word on the given
+     * Levenshtein distance from it.
+     */
+    private static double minDiff(int length, int dist) {
+        double result = Double.MAX_VALUE;
+        for (int othrLen = Math.max(1, length - dist); othrLen <= length + dist; othrLen++) {
+            // at least this number of deletions or insertions is needed for each word
+            int minChanges = Math.max(0, length - othrLen);
+            int othrMinChanges = Math.max(0, othrLen - length);
+            for (int changes = minChanges; changes <= Math.min(dist, length); changes++) {
+                int othrChanges = dist - changes;
+                if (othrChanges < othrMinChanges || othrChanges > othrLen) {
+                    continue;
+                }
+                result = Math.min(result, (double) minPositionsCost(changes) / length
+                        + (double) minPositionsCost(othrChanges) / othrLen);
+            }
+        }
+        return result;
+    }
+    
+    // sum of costs of the cheapest distinct positions: 1 + 1 + 2 + 2 + 3 + ... with the given number of summands
+    private static int minPositionsCost(int changes) {
+        return (changes + 1) * (changes + 1) / 4;
     }
     
     /*
@@ -106,18 +317,34 @@ public class WordDifferenceCalculator {
      * how far this change is from the middle of the word. And position value in new coordinates (where origin is
      * middle of the word) is the same for all words (with any length). 
      */
-    private static Double calcDiff(List<Integer> postionsOfChanges, int wordLength) {
-        int middlePos = wordLength / 2;
-        Double result = new Double(0);
-        for (int pos : postionsOfChanges) {
-            if (pos <= middlePos) {
-                result += pos;
-            } else {
-                result += wordLength + 1 - pos;
-            }
+    private static int positionCost(int position, int wordLength) {
+        if (position <= wordLength / 2) {
+            return position;
+        }
+        return wordLength + 1 - position;
+    }
+    
+    private void swapRows() {
+        int[] tmp = prevDist;
+        prevDist = crntDist;
+        crntDist = tmp;
+        tmp = prevFrstCost;
+        prevFrstCost = crntFrstCost;
+        crntFrstCost = tmp;
+        tmp = prevScndCost;
+        prevScndCost = crntScndCost;
+        crntScndCost = tmp;
+    }
+    
+    private void ensureCapacity(int rowLength) {
+        if (prevDist.length < rowLength) {
+            prevDist = new int[rowLength];
+            prevFrstCost = new int[rowLength];
+            prevScndCost = new int[rowLength];
+            crntDist = new int[rowLength];
+            crntFrstCost = new int[rowLength];
+            crntScndCost = new int[rowLength];
         }
-        result /= wordLength;
-        return result;
     }
 
 }
@@ -1,16 +1,47 @@
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 
 public class WordSet {
+    // number of words handled by one task in parallel mode
+    private static final int CHUNK_SIZE = 512;
+
     // wrappers of all words
-    private List<WordWrapper> words = new LinkedList<WordWrapper>();
+    private List<WordWrapper> words = new ArrayList<WordWrapper>();
 
     // groups to which belongs those words (one wordWrapper can belong only to one group)
     private List<Group> groups = new ArrayList<Group>();
     
+    // true when groups reflect stemmed forms of all words, i.e. uniteGroups was called after the last stemming
+    private boolean united = false;
+    
+    // words removed by removeWords which are still in the words list, they are dropped from it lazily
+    private Set<WordWrapper> removedWords = new HashSet<WordWrapper>();
+    
+    // true if some groups in the groups list are marked for deletion, they are dropped from it lazily
+    private boolean hasMarkedGroups = false;
+    
+    /*
+     * Indices for incremental changes. They are built on the first call of addWords or removeWords and are
+     * maintained by them afterwards, full stemming and uniting just drop them.
+     */
+    // all words which have the stemmed form
+    private Map<String, List<WordWrapper>> wordsByStem;
+    // group of each word
+    private Map<WordWrapper, Group> groupByWord;
+    // all wrappers of each original word (one word can appear in the input several times)
+    private Map<String, List<WordWrapper>> wordsByOriginal;
+    
     public WordSet(List<String> words) {
         //making word wrapper and group for each word
         for(String word : words) {
@@ -21,35 +52,412 @@ public class WordSet {
         }
     }
     
+    /**
+     * Makes word wrapper and group for each word, wrappers keep payloads of words, e.g. IDs from another column of the
+     * input.
+     */
+    public WordSet(List<String> words, List<String> payloads) {
+        this(words);
+        for (int i = 0; i < payloads.size(); i++) {
+            this.words.get(i).setPayload(payloads.get(i));
+        }
+    }
+    
+    /**
+     * Makes word wrapper and group for each entry of collapsed words, wrappers keep the number of occurrences and
+     * spellings of their entries.
+     */
+    public WordSet(WordCounts counts) {
+        this(counts.getWords());
+        for (int i = 0; i < counts.size(); i++) {
+            words.get(i).setOccurrences(counts.getCount(i), counts.getSpellings(i));
+        }
+    }
+    
     public List<Group> getGroups() {
+        if (hasMarkedGroups) {
+            for (Iterator<Group> itr = groups.iterator(); itr.hasNext();) {
+                if (itr.next().isMarkedForDeletion()) {
+                    itr.remove();
+                }
+            }
+            hasMarkedGroups = false;
+        }
         return groups;
     }
     
     public void stemAll() throws Exception {
+        dropIncrementalState();
         for (WordWrapper wrd : words) {
             wrd.findStemmedForms();
         }
     }
     
+    /**
+     * Same as {@link #stemAll()} but words are split into chunks which are stemmed by the given executor.
+     */
+    public void stemAll(ExecutorService executor) throws Exception {
+        dropIncrementalState();
+        ParallelChunks.run(executor, words.size(), CHUNK_SIZE, new ParallelChunks.ChunkTask() {
+            @Override
+            public void run(int from, int to) throws Exception {
+                for (int i = from; i < to; i++) {
+                    words.get(i).findStemmedForms();
+                }
+            }
+        });
+    }
+    
+    /*
+     * Two words belong to the same group if they have at least one common stemmed form, and groups are closed under
+     * this relation. Instead of comparing groups pairwise, every stemmed form is indexed by the first word which
+     * produced it, and each next word with the same stemmed form is joined with that word in a disjoint-set. So the
+     * whole work is linear in the number of (word, stem) pairs.
+     * 
+     * Resulting groups keep the order of their first words in the input, and words inside a group keep the input order
+     * too.
+     */
     public void uniteGroups() {
-        boolean wasSomeGroupUnitedInLastCycle = true;
-        while (wasSomeGroupUnitedInLastCycle) {
-            wasSomeGroupUnitedInLastCycle = false;
-            for (ListIterator<Group> frstIter = groups.listIterator(); frstIter.hasNext();) {
-                Group frstGrp = frstIter.next();
-                if (frstGrp.isMarkedForDeletion()) {
-                    frstIter.remove();
-                    continue;
-                }
-                for (ListIterator<Group> scndIter = groups.listIterator(frstIter.nextIndex()); scndIter.hasNext();) {
-                    Group scndGrp = scndIter.next();
-                    if (frstGrp.hasIntersactionByRootPartsOfWords(scndGrp)) {
-                        frstGrp.getElements().addAll(scndGrp.getElements());
-                        scndGrp.setMarkedForDeletion(true);
-                        wasSomeGroupUnitedInLastCycle = true;
+        dropIncrementalState();
+        UnionFind wordSets = new UnionFind(words.size());
+        Map<String, Integer> firstWordByStem = new HashMap<String, Integer>();
+        for (int i = 0; i < words.size(); i++) {
+            for (String stem : words.get(i).getStemmedForms()) {
+                Integer firstWord = firstWordByStem.get(stem);
+                if (firstWord == null) {
+                    firstWordByStem.put(stem, i);
+                } else {
+                    wordSets.union(firstWord, i);
+                }
+            }
+        }
+        collectGroups(wordSets);
+    }
+
+    /**
+     * Same as {@link #uniteGroups()} but indexing of stemmed forms and joining of words is done by the given executor.
+     * Which word gets into the index first depends on threads timing, but the sets of joined words do not, so the
+     * resulting groups are exactly the same as in sequential mode.
+     */
+    public void uniteGroups(ExecutorService executor) throws Exception {
+        dropIncrementalState();
+        final ConcurrentUnionFind wordSets = new ConcurrentUnionFind(words.size());
+        final ConcurrentMap<String, Integer> someWordByStem = new ConcurrentHashMap<String, Integer>();
+        ParallelChunks.run(executor, words.size(), CHUNK_SIZE, new ParallelChunks.ChunkTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (String stem : words.get(i).getStemmedForms()) {
+                        Integer someWord = someWordByStem.putIfAbsent(stem, i);
+                        if (someWord != null) {
+                            wordSets.union(someWord, i);
+                        }
                     }
                 }
             }
+        });
+        collectGroups(wordSets);
+    }
+
+    /**
+     * Additionally unites groups which have words with {@link WordDifferenceCalculator#calcDiff(String, String)} less
+     * than maxDiff, so typos and variants which are not caught by stemming get into one group. Words are compared in
+     * lower case. Must be called after {@link #uniteGroups()}.
+     * <p>
+     * Candidates for each word are taken from a {@link BkTree} of previous words within the Levenshtein distance which
+     * that difference can have at most (see {@link WordDifferenceCalculator#maxDistanceForDiff(int, double)}), so only
+     * a small part of all pairs is compared by calcDiff.
+     * 
+     * @param maxDiff
+     *            must be in (0, 1)
+     */
+    public void uniteSimilarGroups(final double maxDiff) {
+        uniteSimilarGroups(maxDiff, new CandidateIndex() {
+            private BkTree spellings = new BkTree();
+
+            @Override
+            public List<Integer> addAndFindCandidates(String str, int id) {
+                int radius = WordDifferenceCalculator.maxDistanceForDiff(str.length(), maxDiff);
+                List<Integer> candidates = spellings.find(str, radius);
+                spellings.add(str, id);
+                return candidates;
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #uniteSimilarGroups(double)} but candidates for comparison are taken from the given index, e.g.
+     * from {@link MinHashLsh} for vocabularies where even the tree is too slow. The index must be empty, it gets each
+     * distinct lower case spelling with the index of its first word.
+     */
+    public void uniteSimilarGroups(double maxDiff, CandidateIndex spellings) {
+        if (!united) {
+            throw new IllegalStateException("words must be stemmed and united before uniting similar groups");
+        }
+        List<Group> currentGroups = getGroups();
+        dropIncrementalState();
+
+        Map<WordWrapper, Integer> indexByWord = new HashMap<WordWrapper, Integer>();
+        for (int i = 0; i < words.size(); i++) {
+            indexByWord.put(words.get(i), i);
+        }
+        UnionFind wordSets = new UnionFind(words.size());
+        for (Group grp : currentGroups) {
+            int first = indexByWord.get(grp.getElements().get(0));
+            for (WordWrapper wrd : grp.getElements()) {
+                wordSets.union(first, indexByWord.get(wrd));
+            }
+        }
+
+        // each distinct spelling is compared only with candidates among spellings which were added before it
+        Map<String, Integer> firstWordBySpelling = new HashMap<String, Integer>();
+        String[] spellingByWord = new String[words.size()];
+        for (int i = 0; i < words.size(); i++) {
+            String spelling = words.get(i).getOriginalWord().toLowerCase();
+            Integer firstWord = firstWordBySpelling.get(spelling);
+            if (firstWord != null) {
+                wordSets.union(firstWord, i);
+                continue;
+            }
+            firstWordBySpelling.put(spelling, i);
+            spellingByWord[i] = spelling;
+
+            for (int candidate : spellings.addAndFindCandidates(spelling, i)) {
+                if (wordSets.find(candidate) != wordSets.find(i) && WordDifferenceCalculator.calcDiff(
+                        spellingByWord[candidate], spelling, maxDiff) < maxDiff) {
+                    wordSets.union(candidate, i);
+                }
+            }
+        }
+        collectGroups(wordSets);
+    }
+
+    /*
+     * Rebuilds the list of groups from the disjoint-set of word indices. The first word of each set makes a new group
+     * and all other words of the set are added to it in their order.
+     */
+    private void collectGroups(DisjointSet wordSets) {
+        Group[] groupByRoot = new Group[words.size()];
+        List<Group> unitedGroups = new ArrayList<Group>();
+        for (int i = 0; i < words.size(); i++) {
+            int root = wordSets.find(i);
+            if (groupByRoot[root] == null) {
+                groupByRoot[root] = new Group(words.get(i));
+                unitedGroups.add(groupByRoot[root]);
+            } else {
+                groupByRoot[root].getElements().add(words.get(i));
+            }
+        }
+        groups = unitedGroups;
+        hasMarkedGroups = false;
+        united = true;
+    }
+
+    /**
+     * Stems the given words and puts them into the groups. Only groups which intersect with new words are touched: if
+     * a new word joins several groups, the smaller ones are emptied into the biggest one and marked for deletion. So
+     * the time is proportional to the number of new words and to the size of groups which were merged, but not to the
+     * size of the whole set.
+     * <p>
+     * Must be called after {@link #uniteGroups()}.
+     * 
+     * @return groups which were created or changed, in the order of their first change
+     */
+    public List<Group> addWords(List<String> newWords) throws Exception {
+        buildIncrementalState();
+        Set<Group> affected = new LinkedHashSet<Group>();
+        for (String word : newWords) {
+            WordWrapper wrd = new WordWrapper(word);
+            wrd.findStemmedForms();
+            words.add(wrd);
+            addToIndex(wordsByOriginal, word, wrd);
+
+            Group wrdGroup = new Group(wrd);
+            groups.add(wrdGroup);
+            groupByWord.put(wrd, wrdGroup);
+            for (String stem : wrd.getStemmedForms()) {
+                List<WordWrapper> sameStemWords = wordsByStem.get(stem);
+                // all words with the same stemmed form are already in one group, so the first of them is enough
+                if (sameStemWords != null) {
+                    wrdGroup = mergeGroups(groupByWord.get(sameStemWords.get(0)), wrdGroup);
+                }
+                addToIndex(wordsByStem, stem, wrd);
+            }
+            affected.add(wrdGroup);
+        }
+        return liveGroups(affected);
+    }
+
+    /**
+     * Removes all occurrences of the given words. A group which lost some words is checked again using the stemmed
+     * forms of its remaining words only, and if they are not connected any more, it is split: the part with the first
+     * remaining word stays in the group and other parts become new groups. Groups left without words are marked for
+     * deletion.
+     * <p>
+     * Must be called after {@link #uniteGroups()}.
+     * 
+     * @return groups which were changed or split off, emptied groups are not included
+     */
+    public List<Group> removeWords(List<String> oldWords) {
+        buildIncrementalState();
+        Set<Group> touched = new LinkedHashSet<Group>();
+        for (String word : oldWords) {
+            List<WordWrapper> wrappers = wordsByOriginal.remove(word);
+            if (wrappers == null) {
+                continue;
+            }
+            for (WordWrapper wrd : wrappers) {
+                removedWords.add(wrd);
+                for (String stem : wrd.getStemmedForms()) {
+                    List<WordWrapper> sameStemWords = wordsByStem.get(stem);
+                    sameStemWords.remove(wrd);
+                    if (sameStemWords.isEmpty()) {
+                        wordsByStem.remove(stem);
+                    }
+                }
+                Group wrdGroup = groupByWord.remove(wrd);
+                wrdGroup.getElements().remove(wrd);
+                touched.add(wrdGroup);
+            }
+        }
+
+        Set<Group> affected = new LinkedHashSet<Group>();
+        for (Group grp : touched) {
+            if (grp.getElements().isEmpty()) {
+                grp.setMarkedForDeletion(true);
+                hasMarkedGroups = true;
+            } else {
+                affected.addAll(splitGroup(grp));
+            }
+        }
+        return liveGroups(affected);
+    }
+
+    /*
+     * Empties the smaller group into the bigger one (the first one if they are of the same size) and returns the
+     * group which survived.
+     */
+    private Group mergeGroups(Group first, Group second) {
+        if (first == second) {
+            return first;
+        }
+        Group bigger = first;
+        Group smaller = second;
+        if (first.getElements().size() < second.getElements().size()) {
+            bigger = second;
+            smaller = first;
+        }
+        bigger.getElements().addAll(smaller.getElements());
+        for (WordWrapper wrd : smaller.getElements()) {
+            groupByWord.put(wrd, bigger);
+        }
+        smaller.getElements().clear();
+        smaller.setMarkedForDeletion(true);
+        hasMarkedGroups = true;
+        return bigger;
+    }
+
+    /*
+     * Unites words of the group again and moves every connected part, except the one with the first word, to a new
+     * group. Returns the given group and all new ones.
+     */
+    private List<Group> splitGroup(Group grp) {
+        List<WordWrapper> elements = new ArrayList<WordWrapper>(grp.getElements());
+        UnionFind wordSets = new UnionFind(elements.size());
+        Map<String, Integer> firstWordByStem = new HashMap<String, Integer>();
+        for (int i = 0; i < elements.size(); i++) {
+            for (String stem : elements.get(i).getStemmedForms()) {
+                Integer firstWord = firstWordByStem.get(stem);
+                if (firstWord == null) {
+                    firstWordByStem.put(stem, i);
+                } else {
+                    wordSets.union(firstWord, i);
+                }
+            }
+        }
+
+        List<Group> parts = new ArrayList<Group>();
+        parts.add(grp);
+        grp.getElements().clear();
+        int firstRoot = wordSets.find(0);
+        Map<Integer, Group> groupByRoot = new HashMap<Integer, Group>();
+        for (int i = 0; i < elements.size(); i++) {
+            int root = wordSets.find(i);
+            WordWrapper wrd = elements.get(i);
+            if (root == firstRoot) {
+                grp.getElements().add(wrd);
+                continue;
+            }
+            Group part = groupByRoot.get(root);
+            if (part == null) {
+                part = new Group(wrd);
+                groupByRoot.put(root, part);
+                groups.add(part);
+                parts.add(part);
+            } else {
+                part.getElements().add(wrd);
+            }
+            groupByWord.put(wrd, part);
+        }
+        return parts;
+    }
+
+    private List<Group> liveGroups(Set<Group> candidates) {
+        List<Group> result = new ArrayList<Group>();
+        for (Group grp : candidates) {
+            if (!grp.isMarkedForDeletion()) {
+                result.add(grp);
+            }
+        }
+        return result;
+    }
+
+    private static void addToIndex(Map<String, List<WordWrapper>> index, String key, WordWrapper wrd) {
+        List<WordWrapper> keyWords = index.get(key);
+        if (keyWords == null) {
+            keyWords = new LinkedList<WordWrapper>();
+            index.put(key, keyWords);
+        }
+        keyWords.add(wrd);
+    }
+
+    private void buildIncrementalState() {
+        if (!united) {
+            throw new IllegalStateException("words must be stemmed and united before incremental changes");
+        }
+        if (groupByWord != null) {
+            return;
+        }
+        wordsByStem = new HashMap<String, List<WordWrapper>>();
+        groupByWord = new HashMap<WordWrapper, Group>();
+        wordsByOriginal = new HashMap<String, List<WordWrapper>>();
+        for (Group grp : getGroups()) {
+            for (WordWrapper wrd : grp.getElements()) {
+                groupByWord.put(wrd, grp);
+                addToIndex(wordsByOriginal, wrd.getOriginalWord(), wrd);
+                for (String stem : wrd.getStemmedForms()) {
+                    addToIndex(wordsByStem, stem, wrd);
+                }
+            }
+        }
+    }
+
+    /*
+     * Forgets indices of incremental changes and physically drops removed words, which is needed before any pass
+     * over all words.
+     */
+    private void dropIncrementalState() {
+        wordsByStem = null;
+        groupByWord = null;
+        wordsByOriginal = null;
+        united = false;
+        if (!removedWords.isEmpty()) {
+            for (Iterator<WordWrapper> itr = words.iterator(); itr.hasNext();) {
+                if (removedWords.contains(itr.next())) {
+                    itr.remove();
+                }
+            }
+            removedWords.clear();
         }
     }
 }
@@ -0,0 +1,275 @@
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import stemming.GeneralStemmer;
+
+/**
+ * Compact read-only storage of words, their stemmed forms and groups, which is an alternative to {@link WordSet} for
+ * big vocabularies.
+ * <p>
+ * Instead of objects per word, everything is kept in a few arrays: stemmed forms are stored once and referred to by
+ * int ids, stems of words and words of groups are kept in CSR form (one array of ids, where ids of word i (group i)
+ * lie in [offsets[i], offsets[i + 1]) ). So a word costs about five ints besides its string. {@link WordWrapper} and
+ * {@link Group} objects are made only as short-lived views when they are asked for.
+ */
+public class WordStore {
+
+    // original words
+    private final String[] words;
+    // distinct stemmed forms of all words
+    private final String[] stems;
+    // ids of stemmed forms of each word
+    private final int[] stemOffsets;
+    private final int[] stemIds;
+    // ids of words of each group, groups are in the order of their first words and words are in the input order
+    private final int[] groupOffsets;
+    private final int[] groupWords;
+    // occurrences and spellings of words if identical words were collapsed, otherwise null
+    private WordCounts counts;
+    // payloads of words (see WordWrapper#getPayload()), null - no payloads
+    private String[] payloads;
+
+    private WordStore(String[] words, String[] stems, int[] stemOffsets, int[] stemIds, int[] groupOffsets,
+            int[] groupWords) {
+        this.words = words;
+        this.stems = stems;
+        this.stemOffsets = stemOffsets;
+        this.stemIds = stemIds;
+        this.groupOffsets = groupOffsets;
+        this.groupWords = groupWords;
+    }
+
+    /**
+     * Stems all words and unites them into groups in the same way as {@link WordSet#stemAll()} and
+     * {@link WordSet#uniteGroups()} do, so the groups are exactly the same.
+     */
+    public static WordStore build(List<String> data) throws Exception {
+        Builder builder = new Builder();
+        for (String word : data) {
+            builder.add(word, null, GeneralStemmer.getStemmedStrings(word));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builder of a store from words which come one by one with their stemmed forms, e.g. while the input is still
+     * being read and stemmed. Groups are united as words come: the first word of each stemmed form is joined with all
+     * next words which have it.
+     */
+    public static class Builder {
+        private String[] words = new String[16];
+        // payloads of words, null until the first one is added
+        private String[] payloads;
+        private int wordsCount;
+        // each distinct stemmed form gets its id when it is met the first time
+        private Map<String, Integer> stemIdByStem = new HashMap<String, Integer>();
+        private String[] stems = new String[16];
+        private int[] stemOffsets = new int[17];
+        private int[] stemIds = new int[16];
+        private int stemIdsCount;
+        private int[] firstWordByStem = new int[16];
+        private final UnionFind wordSets = new UnionFind(0);
+
+        /**
+         * Adds the word with its payload (may be null) and stemmed forms.
+         */
+        public void add(String word, String payload, List<String> stemmedForms) {
+            int wordId = wordSets.add();
+            if (words.length == wordId) {
+                words = Arrays.copyOf(words, words.length * 2);
+                stemOffsets = Arrays.copyOf(stemOffsets, words.length + 1);
+            }
+            words[wordId] = word;
+            if (payload != null) {
+                if (payloads == null) {
+                    payloads = new String[words.length];
+                } else if (payloads.length < words.length) {
+                    payloads = Arrays.copyOf(payloads, words.length);
+                }
+                payloads[wordId] = payload;
+            }
+            wordsCount++;
+
+            for (String stem : stemmedForms) {
+                Integer stemId = stemIdByStem.get(stem);
+                if (stemId == null) {
+                    stemId = stemIdByStem.size();
+                    stemIdByStem.put(stem, stemId);
+                    if (stems.length == stemId) {
+                        stems = Arrays.copyOf(stems, stems.length * 2);
+                        firstWordByStem = Arrays.copyOf(firstWordByStem, stems.length);
+                    }
+                    stems[stemId] = stem;
+                    firstWordByStem[stemId] = wordId;
+                } else if (contains(stemIds, stemOffsets[wordId], stemIdsCount, stemId)) {
+                    continue;
+                } else {
+                    wordSets.union(firstWordByStem[stemId], wordId);
+                }
+                if (stemIds.length == stemIdsCount) {
+                    stemIds = Arrays.copyOf(stemIds, stemIds.length * 2);
+                }
+                stemIds[stemIdsCount++] = stemId;
+            }
+            stemOffsets[wordId + 1] = stemIdsCount;
+        }
+
+        public int size() {
+            return wordsCount;
+        }
+
+        /**
+         * Lays out groups of all added words, the builder can not be used after that.
+         */
+        public WordStore build() {
+            String[] words = Arrays.copyOf(this.words, wordsCount);
+            String[] stems = Arrays.copyOf(this.stems, stemIdByStem.size());
+            stemIdByStem = null;
+
+            // group ids are given in the order of first words, then words are laid out by counting sort
+            int[] groupByRoot = new int[words.length];
+            Arrays.fill(groupByRoot, -1);
+            int[] groupOfWord = new int[words.length];
+            int groupsCount = 0;
+            for (int i = 0; i < words.length; i++) {
+                int root = wordSets.find(i);
+                if (groupByRoot[root] < 0) {
+                    groupByRoot[root] = groupsCount++;
+                }
+                groupOfWord[i] = groupByRoot[root];
+            }
+            int[] groupOffsets = new int[groupsCount + 1];
+            for (int i = 0; i < words.length; i++) {
+                groupOffsets[groupOfWord[i] + 1]++;
+            }
+            for (int g = 0; g < groupsCount; g++) {
+                groupOffsets[g + 1] += groupOffsets[g];
+            }
+            int[] groupWords = new int[words.length];
+            int[] filled = Arrays.copyOf(groupOffsets, groupsCount);
+            for (int i = 0; i < words.length; i++) {
+                groupWords[filled[groupOfWord[i]]++] = i;
+            }
+            WordStore store = new WordStore(words, stems, Arrays.copyOf(stemOffsets, words.length + 1),
+                    Arrays.copyOf(stemIds, stemIdsCount), groupOffsets, groupWords);
+            if (payloads != null) {
+                store.payloads = Arrays.copyOf(payloads, words.length);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Same as {@link #build(List)}, views of words keep their payloads, e.g. IDs from another column of the input.
+     */
+    public static WordStore build(List<String> data, List<String> payloads) throws Exception {
+        WordStore store = build(data);
+        store.payloads = payloads.toArray(new String[payloads.size()]);
+        return store;
+    }
+
+    /**
+     * Same as {@link #build(List)} for entries of collapsed words, views of words keep the number of occurrences and
+     * spellings of their entries.
+     */
+    public static WordStore build(WordCounts counts) throws Exception {
+        WordStore store = build(counts.getWords());
+        store.counts = counts;
+        return store;
+    }
+
+    public int getWordsCount() {
+        return words.length;
+    }
+
+    public int getGroupsCount() {
+        return groupOffsets.length - 1;
+    }
+
+    public String getOriginalWord(int wordId) {
+        return words[wordId];
+    }
+
+    /**
+     * Returns a view of the word. The view is not stored anywhere, so it is cheap to drop it right after use.
+     */
+    public WordWrapper getWord(final int wordId) {
+        WordWrapper wrd = new WordWrapper(words[wordId], new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new AbstractList<String>() {
+                    @Override
+                    public String get(int index) {
+                        return stems[stemIds[stemOffsets[wordId] + index]];
+                    }
+
+                    @Override
+                    public int size() {
+                        return stemOffsets[wordId + 1] - stemOffsets[wordId];
+                    }
+                }.iterator();
+            }
+
+            @Override
+            public int size() {
+                return stemOffsets[wordId + 1] - stemOffsets[wordId];
+            }
+        });
+        if (counts != null) {
+            wrd.setOccurrences(counts.getCount(wordId), counts.getSpellings(wordId));
+        }
+        if (payloads != null) {
+            wrd.setPayload(payloads[wordId]);
+        }
+        return wrd;
+    }
+
+    /**
+     * Returns a read-only view of the group.
+     */
+    public Group getGroup(final int groupId) {
+        return Group.view(new AbstractList<WordWrapper>() {
+            @Override
+            public WordWrapper get(int index) {
+                return getWord(groupWords[groupOffsets[groupId] + index]);
+            }
+
+            @Override
+            public int size() {
+                return groupOffsets[groupId + 1] - groupOffsets[groupId];
+            }
+        });
+    }
+
+    /**
+     * Returns a read-only view of all groups, which can be given e.g. to {@link OutputDataCreator}.
+     */
+    public List<Group> getGroups() {
+        return new AbstractList<Group>() {
+            @Override
+            public Group get(int index) {
+                return getGroup(index);
+            }
+
+            @Override
+            public int size() {
+                return getGroupsCount();
+            }
+        };
+    }
+
+    private static boolean contains(int[] values, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,4 +1,6 @@
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import stemming.GeneralStemmer;
@@ -7,10 +9,25 @@ import stemming.GeneralStemmer;
 public class WordWrapper {
     private String originalWord;
     // words which we treat as surely equal to this word (equal means it would belong to the same group if it exists) 
-    private Set<String> stemmedForms = new HashSet<String>();
+    private Set<String> stemmedForms;
+    // number of occurrences of the word in the input and all its spellings, if identical words were collapsed
+    // (see WordCounts), otherwise the word is one occurrence of one spelling
+    private int occurrences = 1;
+    private List<String> spellings;
+    // value carried with the word from the input to the output, e.g. an ID from another column, null - none
+    private String payload;
     
     public WordWrapper(String word) {
         originalWord = word;
+        stemmedForms = new HashSet<String>();
+    }
+    
+    /*
+     * makes a wrapper over already found stemmed forms, e.g. a view of a word from WordStore.
+     */
+    WordWrapper(String word, Set<String> stemmedForms) {
+        originalWord = word;
+        this.stemmedForms = stemmedForms;
     }
 
     public Set<String> getStemmedForms() {
@@ -21,6 +38,30 @@ public class WordWrapper {
         return originalWord;
     }
     
+    public int getOccurrences() {
+        return occurrences;
+    }
+    
+    public List<String> getSpellings() {
+        if (spellings == null) {
+            return Collections.singletonList(originalWord);
+        }
+        return spellings;
+    }
+    
+    public void setOccurrences(int occurrences, List<String> spellings) {
+        this.occurrences = occurrences;
+        this.spellings = spellings;
+    }
+    
+    public String getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+    
     public void findStemmedForms() throws Exception {
         stemmedForms.addAll(GeneralStemmer.getStemmedStrings(originalWord));
     }
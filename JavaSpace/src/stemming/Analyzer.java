@@ -0,0 +1,257 @@
+package stemming;
+
+/**
+ * Chain of char filters applied to a string in one pass over its chars. In the same pass the tails which are stemmed
+ * are found: the Cyrillic tail is upper case letters followed by lower case ones at the end of the string, and the
+ * Latin tail is the same for Latin letters and apostrophes (see {@link GeneralStemmer}). Chars are classified by a
+ * table, and the classes of all chars of the string are collected, so it is known which stemmers can match it.
+ */
+public class Analyzer {
+
+    // classes of chars, a string has a set of them
+    public static final int CYRILLIC_UPPER_CASE = 1;
+    public static final int CYRILLIC_LOWER_CASE = 2;
+    public static final int LATIN_UPPER_CASE = 4;
+    public static final int LATIN_LOWER_CASE = 8;
+    // apostrophe and single quotes, they are both upper and lower case Latin chars
+    public static final int APOSTROPHE = 16;
+    public static final int DIGIT = 32;
+
+    // classes of chars up to the end of the Cyrillic block, other chars are classified separately
+    private static final byte[] CHAR_CLASSES = new byte[0x500];
+    static {
+        addClass('А', 'Я', CYRILLIC_UPPER_CASE);
+        addClass('а', 'я', CYRILLIC_LOWER_CASE);
+        addClass('A', 'Z', LATIN_UPPER_CASE);
+        addClass('a', 'z', LATIN_LOWER_CASE);
+        addClass('0', '9', DIGIT);
+        addClass('\'', '\'', APOSTROPHE);
+    }
+
+    private static void addClass(char from, char to, int charClass) {
+        for (char c = from; c <= to; c++) {
+            CHAR_CLASSES[c] = (byte) charClass;
+        }
+    }
+
+    static int classOf(char c) {
+        if (c < CHAR_CLASSES.length) {
+            return CHAR_CLASSES[c];
+        }
+        return isQuote(c) ? APOSTROPHE : 0;
+    }
+
+    /**
+     * The string after all filters and its tails.
+     */
+    public static class Token {
+        private final String text;
+        private final int tailEnd;
+        private final int cyrillicTailStart;
+        private final int cyrillicUpperCaseLen;
+        private final int latinTailStart;
+        private final int latinUpperCaseLen;
+        private final boolean hasQuotes;
+        private final int charClasses;
+
+        Token(String text, int tailEnd, int cyrillicTailStart, int cyrillicUpperCaseLen, int latinTailStart,
+                int latinUpperCaseLen, boolean hasQuotes, int charClasses) {
+            this.text = text;
+            this.tailEnd = tailEnd;
+            this.cyrillicTailStart = cyrillicTailStart;
+            this.cyrillicUpperCaseLen = cyrillicUpperCaseLen;
+            this.latinTailStart = latinTailStart;
+            this.latinUpperCaseLen = latinUpperCaseLen;
+            this.hasQuotes = hasQuotes;
+            this.charClasses = charClasses;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns classes of all chars of the text, e.g. {@link Analyzer#DIGIT}, 0 if it has only other chars.
+         */
+        public int getCharClasses() {
+            return charClasses;
+        }
+
+        public boolean hasAny(int classes) {
+            return (charClasses & classes) != 0;
+        }
+
+        /**
+         * Returns the end of both tails. It is the end of the text unless the text ends with a line terminator, which
+         * is not a part of the tails.
+         */
+        public int getTailEnd() {
+            return tailEnd;
+        }
+
+        /**
+         * Returns the start of the Cyrillic tail, -1 if there is no one.
+         */
+        public int getCyrillicTailStart() {
+            return cyrillicTailStart;
+        }
+
+        public int getCyrillicUpperCaseLength() {
+            return cyrillicUpperCaseLen;
+        }
+
+        /**
+         * Returns the start of the Latin tail, -1 if there is no one.
+         */
+        public int getLatinTailStart() {
+            return latinTailStart;
+        }
+
+        public int getLatinUpperCaseLength() {
+            return latinUpperCaseLen;
+        }
+
+        /**
+         * Returns the text with single quotes replaced by apostrophes, as the Latin tail is stemmed.
+         */
+        public String getLatinText() {
+            if (!hasQuotes) {
+                return text;
+            }
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                if (isQuote(chars[i])) {
+                    chars[i] = '\'';
+                }
+            }
+            return new String(chars);
+        }
+    }
+
+    private final CharFilter[] filters;
+
+    public Analyzer(CharFilter... filters) {
+        this.filters = filters.clone();
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '\u2019' || c == '\u2018' || c == '\u201B';
+    }
+
+    private static boolean isLatinUpperCase(char c) {
+        return (classOf(c) & (LATIN_UPPER_CASE | APOSTROPHE)) != 0;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    public Token analyze(String str) {
+        // chars after filters, it is allocated only when some char is changed or removed
+        char[] out = null;
+        int len = 0;
+        boolean hasQuotes = false;
+        int charClasses = 0;
+
+        // starts of the runs of upper case letters at the current end, -1 - the last char is not such letter
+        int cyrillicUpperCaseStart = -1;
+        int latinUpperCaseStart = -1;
+        // starts of the tails and of the Cyrillic lower case letters at the current end, -1 - no tail at the end
+        int cyrillicTailStart = -1;
+        int cyrillicLowerCaseStart = -1;
+        int latinTailStart = -1;
+        boolean latinLowerCaseLast = false;
+        // the tails as they were before the last line terminator
+        int cyrillicTailStartBeforeEnd = -1;
+        int cyrillicLowerCaseStartBeforeEnd = -1;
+        int latinTailStartBeforeEnd = -1;
+
+        for (int i = 0; i < str.length(); i++) {
+            char src = str.charAt(i);
+            int filtered = src;
+            for (int j = 0; j < filters.length && filtered != CharFilter.REMOVE; j++) {
+                filtered = filters[j].filter((char) filtered, i);
+            }
+            if (filtered != src && out == null) {
+                out = new char[str.length()];
+                str.getChars(0, i, out, 0);
+            }
+            if (filtered == CharFilter.REMOVE) {
+                continue;
+            }
+            char c = (char) filtered;
+
+            if (isLineTerminator(c) && !(c == '\n' && len > 0 && charAt(str, out, len - 1) == '\r')) {
+                cyrillicTailStartBeforeEnd = cyrillicTailStart;
+                cyrillicLowerCaseStartBeforeEnd = cyrillicLowerCaseStart;
+                latinTailStartBeforeEnd = latinTailStart;
+            }
+
+            int charClass = classOf(c);
+            charClasses |= charClass;
+
+            if (charClass == CYRILLIC_LOWER_CASE) {
+                if (cyrillicLowerCaseStart < 0) {
+                    cyrillicLowerCaseStart = len;
+                    cyrillicTailStart = cyrillicUpperCaseStart;
+                }
+            } else {
+                cyrillicLowerCaseStart = -1;
+                cyrillicTailStart = -1;
+            }
+            cyrillicUpperCaseStart = charClass == CYRILLIC_UPPER_CASE ? (cyrillicUpperCaseStart < 0 ? len
+                    : cyrillicUpperCaseStart) : -1;
+
+            // apostrophes are both upper and lower case, so the tail is the leftmost one which ends here
+            boolean latinLowerCase = (charClass & (LATIN_LOWER_CASE | APOSTROPHE)) != 0;
+            if (latinLowerCase) {
+                if (!latinLowerCaseLast) {
+                    latinTailStart = -1;
+                }
+                if (latinTailStart < 0) {
+                    latinTailStart = latinUpperCaseStart;
+                }
+            } else {
+                latinTailStart = -1;
+            }
+            latinLowerCaseLast = latinLowerCase;
+            latinUpperCaseStart = (charClass & (LATIN_UPPER_CASE | APOSTROPHE)) != 0 ? (latinUpperCaseStart < 0 ? len
+                    : latinUpperCaseStart) : -1;
+
+            hasQuotes |= charClass == APOSTROPHE && c != '\'';
+            if (out != null) {
+                out[len] = c;
+            }
+            len++;
+        }
+
+        String text = out == null ? str : new String(out, 0, len);
+
+        // tails may end right before the last line terminator
+        int tailEnd = len;
+        if (len > 1 && text.charAt(len - 2) == '\r' && text.charAt(len - 1) == '\n') {
+            tailEnd = len - 2;
+        } else if (len > 0 && isLineTerminator(text.charAt(len - 1))) {
+            tailEnd = len - 1;
+        }
+        if (tailEnd < len) {
+            cyrillicTailStart = cyrillicTailStartBeforeEnd;
+            cyrillicLowerCaseStart = cyrillicLowerCaseStartBeforeEnd;
+            latinTailStart = latinTailStartBeforeEnd;
+        }
+
+        int latinUpperCaseLen = 0;
+        if (latinTailStart >= 0) {
+            while (latinTailStart + latinUpperCaseLen < tailEnd
+                    && isLatinUpperCase(text.charAt(latinTailStart + latinUpperCaseLen))) {
+                latinUpperCaseLen++;
+            }
+        }
+        return new Token(text, tailEnd, cyrillicTailStart, cyrillicTailStart < 0 ? 0 : cyrillicLowerCaseStart
+                - cyrillicTailStart, latinTailStart, latinUpperCaseLen, hasQuotes, charClasses);
+    }
+
+    private static char charAt(String str, char[] out, int index) {
+        return out == null ? str.charAt(index) : out[index];
+    }
+}
@@ -0,0 +1,22 @@
+package stemming;
+
+/**
+ * One rule of normalization applied to each char of a string (see {@link Analyzer}).
+ */
+public interface CharFilter {
+
+    /**
+     * Value returned by {@link #filter(char, int)} to remove the char from the string.
+     */
+    int REMOVE = -1;
+
+    /**
+     * Returns the char which replaces the given one, or {@link #REMOVE}.
+     * 
+     * @param c
+     *            the char as it is after previous filters
+     * @param index
+     *            the index of the char in the source string
+     */
+    int filter(char c, int index);
+}
@@ -1,39 +1,64 @@
 package stemming;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * This class aims to be an interpretation of the Porter stemming algorithm for English language, which description can
  * be found right here: http://snowballstem.org/algorithms/english/stemmer.html
- * 
+ * <p>
+ * The word is stemmed in a char buffer of the current thread, R1 and R2 are offsets in it and suffixes are checked by
+ * comparing chars, so nothing but the result string is allocated.
  */
 public class EnPorterStemmer {
 
-    static class MutableBoolean {
-        public boolean value;
-    }
+    private static final ThreadLocal<EnPorterStemmer> PER_THREAD = new ThreadLocal<EnPorterStemmer>() {
+        @Override
+        protected EnPorterStemmer initialValue() {
+            return new EnPorterStemmer();
+        }
+    };
+
+    // R1 of words with these prefixes starts right after them
+    private static final String[] R1_EXCEPTIONS = { "gener", "commun", "arsen" };
+
+    // words which are left as they are after step 1a
+    private static final String[] STEP1A_INVARIANTS = { "inning", "outing", "canning", "herring", "earring", "proceed",
+            "exceed", "succeed" };
+
+    private static final String[] STEP1B_SUFFIXES = { "ingly", "edly", "ing", "ed" };
+
+    // pairs of suffixes and their replacements, longer suffixes go first
+    private static final String[][] STEP2_SUFFIXES = { { "fulness", "ful" }, { "ational", "ate" },
+            { "ization", "ize" }, { "ousness", "ous" }, { "iveness", "ive" }, { "lessli", "less" },
+            { "biliti", "ble" }, { "tional", "tion" }, { "entli", "ent" }, { "ation", "ate" }, { "alism", "al" },
+            { "aliti", "al" }, { "ousli", "ous" }, { "iviti", "ive" }, { "fulli", "ful" }, { "enci", "ence" },
+            { "anci", "ance" }, { "abli", "able" }, { "izer", "ize" }, { "ator", "ate" }, { "alli", "al" },
+            { "bli", "ble" } };
 
-    // vowels
-    private static final String VWL_SET = "aeiouy";
-    private static final String VWL_YES = "[" + VWL_SET + "]";
-    private static final String VWL_NO = "[^" + VWL_SET + "]";
+    private static final String[][] STEP3_SUFFIXES = { { "ational", "ate" }, { "tional", "tion" },
+            { "alize", "al" }, { "icate", "ic" }, { "iciti", "ic" }, { "ical", "ic" }, { "ness", "" }, { "ful", "" } };
 
-    // double
-    private static final String DOUBLE = "(bb|dd|ff|gg|mm|nn|pp|rr|tt)";
-    // valid li-ending
-    private static final String LI_END_YES = "[cdeghkmnrt]";
-    private static final String LI_END_NO = "[^cdeghkmnrt]";
+    private static final String[] STEP4_SUFFIXES = { "ement", "ance", "ence", "ment", "able", "ible", "ant", "ent",
+            "ism", "ate", "iti", "ous", "ive", "ize", "er", "ic", "al" };
 
-    // short syllable
-    private static final String SHORT_SYLLABLE_FIRST = "^" + VWL_YES + VWL_NO;
-    private static final String SHORT_SYLLABLE_MIDDLE = VWL_NO + VWL_YES + "[^wxY" + VWL_SET + "]";
+    // the word being stemmed is buf from 0 to len
+    private char[] buf = new char[32];
+    private int len;
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u' || c == 'y';
+    }
+
+    private static boolean isDouble(char c) {
+        return c == 'b' || c == 'd' || c == 'f' || c == 'g' || c == 'm' || c == 'n' || c == 'p' || c == 'r'
+                || c == 't';
+    }
+
+    private static boolean isLiEnding(char c) {
+        return c == 'c' || c == 'd' || c == 'e' || c == 'g' || c == 'h' || c == 'k' || c == 'm' || c == 'n'
+                || c == 'r' || c == 't';
+    }
 
     /**
      * Returns Rn of the specified string, e.g. for n = 2 it is R2.
@@ -43,43 +68,172 @@ public class EnPorterStemmer {
      * <p>
      * R2 is the region after the first non-vowel following a vowel in R1, or the end of the word if there is no such
      * non-vowel
-     * 
+     *
      * @param str
      *            a string from which Rn is built
      * @param n
      *            the number of Rn
      */
     static String getR(int n, String str) {
-        // Exceptions
-        if (n == 1 && str.matches("^(gener|commun|arsen).*")) {
-            Pattern p = Pattern.compile("^(gener|commun|arsen)");
-            Matcher m = p.matcher(str);
-            m.find();
-            return str.substring(m.end());
+        EnPorterStemmer stemmer = PER_THREAD.get();
+        stemmer.load(str);
+        int start = 0;
+        for (int i = 1; i < n; i++) {
+            start = stemmer.usualR1(start);
         }
+        return str.substring(stemmer.r1(start));
+    }
+
+    static boolean isShort(String str) {
+        EnPorterStemmer stemmer = PER_THREAD.get();
+        stemmer.load(str);
+        return stemmer.isShort();
+    }
+
+    public static String stem(String str) {
+        return PER_THREAD.get().stemWord(str);
+    }
 
-        // usual rules
-        Pattern p = Pattern.compile(VWL_YES + VWL_NO);
+    /**
+     * removes suffixes from the specified string or just return it if it has not such suffix
+     *
+     * @param str
+     *            string to handle
+     * @param suffixRegEx
+     *            suffixes, e.g.
+     *            <p>
+     *            suff
+     *            <p>
+     *            (suff1|suff2|suff3)
+     * @return
+     */
+    static String removeSuffix(String str, String suffixRegEx) {
+        Pattern p = Pattern.compile(suffixRegEx + "$");
         Matcher m = p.matcher(str);
         if (m.find()) {
-            if (n > 1) {
-                return getR(n - 1, str.substring(m.end()));
+            if (m.start() > 0) {
+                return str.substring(0, m.start());
             } else {
-                return str.substring(m.end());
+                return "";
             }
         }
-        return "";
+        return str;
     }
 
-    static boolean isShort(String str) {
-        if (getR(1, str).equals("")
-                && (str.matches(".*" + SHORT_SYLLABLE_MIDDLE + "$") || str.matches(SHORT_SYLLABLE_FIRST + "$"))) {
-            return true;
+    /**
+     * replaces in the specified string current suffix with the needed one. Or just return the string if it has not such
+     * suffix
+     *
+     * @param str
+     * @param crntSuffix
+     * @param neededSuffix
+     * @return
+     */
+    static String replaceSuffix(String str, String crntSuffix, String neededSuffix) {
+        if (str.endsWith(crntSuffix)) {
+            return str.substring(0, str.length() - crntSuffix.length()) + neededSuffix;
+        }
+        return str;
+    }
+
+    private void load(String str) {
+        len = str.length();
+        if (buf.length < len) {
+            buf = new char[Math.max(len, buf.length * 2)];
+        }
+        str.getChars(0, len, buf, 0);
+    }
+
+    /**
+     * Returns the start of R1 of the part of the word from the given position, taking exceptional prefixes into
+     * account.
+     */
+    private int r1(int from) {
+        for (String prefix : R1_EXCEPTIONS) {
+            if (len - from >= prefix.length() && regionEquals(from, prefix)) {
+                return from + prefix.length();
+            }
+        }
+        return usualR1(from);
+    }
+
+    /**
+     * Returns the start of R1 of the part of the word from the given position by the usual rule only.
+     */
+    private int usualR1(int from) {
+        for (int i = from; i + 1 < len; i++) {
+            if (isVowel(buf[i]) && !isVowel(buf[i + 1])) {
+                return i + 2;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Returns the start of R2, which is R1 of the region after R1, so exceptional prefixes are looked for only there.
+     */
+    private int r2() {
+        return r1(usualR1(0));
+    }
+
+    private boolean regionEquals(int from, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (buf[from + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the word ends with the suffix which lies entirely after the given position, e.g. in R1.
+     */
+    private boolean endsWith(String suffix, int regionStart) {
+        return len - regionStart >= suffix.length() && regionEquals(len - suffix.length(), suffix);
+    }
+
+    private boolean endsWith(String suffix) {
+        return endsWith(suffix, 0);
+    }
+
+    private void replaceEnd(int oldSuffixLen, String neededSuffix) {
+        len -= oldSuffixLen;
+        if (buf.length < len + neededSuffix.length()) {
+            char[] newBuf = new char[len + neededSuffix.length()];
+            System.arraycopy(buf, 0, newBuf, 0, len);
+            buf = newBuf;
+        }
+        neededSuffix.getChars(0, neededSuffix.length(), buf, len);
+        len += neededSuffix.length();
+    }
+
+    private boolean hasVowel(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isVowel(buf[i])) {
+                return true;
+            }
         }
         return false;
     }
 
-    public static String stem(String str) throws Exception {
+    /**
+     * Checks if the part of the word before the given position ends with a short syllable: a non-vowel followed by a
+     * vowel followed by a non-vowel other than w, x or Y.
+     */
+    private boolean endsWithShortSyllable(int end) {
+        if (end < 3) {
+            return false;
+        }
+        char c = buf[end - 1];
+        return !isVowel(buf[end - 3]) && isVowel(buf[end - 2]) && !isVowel(c) && c != 'w' && c != 'x' && c != 'Y';
+    }
+
+    private boolean isShort() {
+        return r1(0) == len
+                && (endsWithShortSyllable(len) || len == 2 && isVowel(buf[0]) && !isVowel(buf[1]));
+    }
+
+    private String stemWord(String str) {
         // If the word has two letters or less, leave it as it is
         if (str.length() <= 2) {
             return str;
@@ -126,317 +280,177 @@ public class EnPorterStemmer {
             return str;
         }
 
+        load(str);
+
         // Set initial y, or y after a vowel, to Y
-        if (str.charAt(0) == 'y') {
-            str = str.replaceFirst("y", "Y");
-        }
-        Pattern p = Pattern.compile(VWL_YES + "y");
-        Matcher m;
-        boolean isYFound = true;
-        while (isYFound) {
-            isYFound = false;
-            m = p.matcher(str);
-            if (m.find()) {
-                str = str.substring(0, m.end() - 1) + "Y" + str.substring(m.end());
-                isYFound = true;
+        if (buf[0] == 'y') {
+            buf[0] = 'Y';
+        }
+        for (int i = 1; i < len; i++) {
+            if (buf[i] == 'y' && isVowel(buf[i - 1])) {
+                buf[i] = 'Y';
             }
         }
 
         // steps
-        str = step0(str);
+        step0();
 
-        str = step1a(str);
+        step1a();
 
         // invariants
-        switch (str) {
-        case "inning":
-        case "outing":
-        case "canning":
-        case "herring":
-        case "earring":
-        case "proceed":
-        case "exceed":
-        case "succeed":
-            return str;
+        for (String invariant : STEP1A_INVARIANTS) {
+            if (len == invariant.length() && regionEquals(0, invariant)) {
+                return invariant;
+            }
         }
 
-        str = step1b(str);
+        step1b();
 
-        str = step1c(str);
+        step1c();
 
-        str = step2(str);
+        step2();
 
-        str = step3(str);
+        step3();
 
-        str = step4(str);
+        step4();
 
-        str = step5(str);
+        step5();
 
-        str = str.replace('Y', 'y');
-
-        return str;
-
-    }
-
-    /**
-     * removes suffixes from the specified string or just return it if it has not such suffix
-     * 
-     * @param str
-     *            string to handle
-     * @param suffixRegEx
-     *            suffixes, e.g.
-     *            <p>
-     *            suff
-     *            <p>
-     *            (suff1|suff2|suff3)
-     * @return
-     */
-    static String removeSuffix(String str, String suffixRegEx) {
-        Pattern p = Pattern.compile(suffixRegEx + "$");
-        Matcher m = p.matcher(str);
-        if (m.find()) {
-            if (m.start() > 0) {
-                return str.substring(0, m.start());
-            } else {
-                return "";
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == 'Y') {
+                buf[i] = 'y';
             }
         }
-        return str;
-    }
-
-    /**
-     * replaces in the specified string current suffix with the needed one. Or just return the string if it has not such
-     * suffix
-     * 
-     * @param str
-     * @param crntSuffix
-     * @param neededSuffix
-     * @return
-     */
-    static String replaceSuffix(String str, String crntSuffix, String neededSuffix) {
-        if (str.endsWith(crntSuffix)) {
-            return str.substring(0, str.length() - crntSuffix.length()) + neededSuffix;
-        }
-        return str;
+        return new String(buf, 0, len);
     }
 
-    /**
-     * replaces in the specified string last characters of length of given number with the given suffix.
-     */
-    static String replaceSuffix(String str, int crntSuffixLen, String neededSuffix) {
-        if (str.length() >= crntSuffixLen) {
-            return str.substring(0, str.length() - crntSuffixLen) + neededSuffix;
+    private void step0() {
+        if (endsWith("'s'")) {
+            len -= 3;
+        } else if (endsWith("'s")) {
+            len -= 2;
+        } else if (endsWith("'")) {
+            len -= 1;
         }
-        return str;
     }
 
-    /**
-     * this method gets the map of pairs (oldSuffix, newSuffix), sorts it by the length of oldSuffix in descending
-     * order, checks one by one if the strToLookThrough (the string for search an old suffix in it) ends by the current
-     * old suffix and if it does then replaces in the strForReplace (it is the string in which replacing is needed.) the
-     * found old suffix by the one from its pair in the map.
-     * <p>
-     * If suffix for replacement was found then search is stopped and updated string is returned. in the
-     * isSuffixWasReplaced will be true value. If no suffix was found for replacement then the value of
-     * isSuffixWasReplaced is false
-     * 
-     * @param strForReplace
-     * @param strToLookThrough
-     *            is a substring of strForReplace. If it doesn't the nException is thrown
-     * @param replacingPairs
-     * @return
-     * @throws Exception
-     */
-    static String replaceSuffix(String strForReplace, String strToLookThrough, Map<String, String> replacingPairs,
-            MutableBoolean isSuffixWasReplaced) throws Exception {
-        if (!strForReplace.endsWith(strToLookThrough)) {
-            throw new Exception("strForReplace: " + strForReplace + " | strToLookThrough: " + strToLookThrough);
+    private void step1a() {
+        if (endsWith("sses")) {
+            // sses -> ss
+            len -= 2;
+        } else if (endsWith("ied") || endsWith("ies")) {
+            // -> i if preceded by more than one letter, otherwise -> ie
+            len -= len > 4 ? 2 : 1;
+        } else if (endsWith("us") || endsWith("ss")) {
+            return;
+        } else if (endsWith("s") && hasVowel(0, len - 2)) {
+            // delete s if the preceding word part contains a vowel not immediately before the s
+            len--;
         }
-
-        isSuffixWasReplaced.value = false;
-
-        List<String> oldSuffixes = new LinkedList<String>();
-        oldSuffixes.addAll(replacingPairs.keySet());
-        // sort them by length of the string, so I can go from the longest to the shortest
-        oldSuffixes.sort(new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                return o2.length() - o1.length(); // o1 will be to the left from o2 if o2.length < o1.length
-            }
-        });
-
-        for (Iterator<String> itr = oldSuffixes.iterator(); itr.hasNext();) {
-            String oldSuffix = itr.next();
-            if (strToLookThrough.endsWith(oldSuffix)) {
-                String newSuffix = replacingPairs.get(oldSuffix);
-                isSuffixWasReplaced.value = true;
-                return replaceSuffix(strForReplace, oldSuffix, newSuffix);
-            }
-        }
-        return strForReplace;
-    }
-
-    private static String step0(String str) {
-        return removeSuffix(str, "('s'|'s|')");
     }
 
-    private static String step1a(String str) {
-        if (str.endsWith("sses")) {
-            return replaceSuffix(str, "sses", "ss");
+    private void step1b() {
+        int r1 = r1(0);
+        if (endsWith("eedly", r1)) {
+            replaceEnd(5, "ee");
+            return;
         }
-        if (str.endsWith("ied") || str.endsWith("ies")) {
-            if (str.length() > 4) {
-                return replaceSuffix(str, 3, "i");
-            } else {
-                return replaceSuffix(str, 3, "ie");
-            }
+        if (endsWith("eed", r1)) {
+            replaceEnd(3, "ee");
+            return;
         }
-        if (str.endsWith("us") || str.endsWith("ss")) {
-            return str;
-        }
-        if (str.endsWith("s") && str.matches(".*" + VWL_YES + ".+s")) {
-            return removeSuffix(str, "s");
-        }
-        return str;
-    }
 
-    private static String step1b(String str) {
-        String R1 = getR(1, str);
-        if (R1.endsWith("eedly")) {
-            return replaceSuffix(str, 5, "ee");
-        }
-        if (R1.endsWith("eed")) {
-            return replaceSuffix(str, 3, "ee");
-        }
-
-        if (str.matches(".*" + VWL_YES + ".*(ingly|edly|ing|ed)$")) {
-            str = removeSuffix(str, "(ingly|edly|ing|ed)");
-            if (str.matches(".*(at|bl|iz)$")) {
-                return str += "e";
-            }
-            if (str.matches(".*" + DOUBLE + "$")) {
-                return str.substring(0, str.length() - 1);
-            }
-            if (isShort(str)) {
-                return str += "e";
+        for (String suffix : STEP1B_SUFFIXES) {
+            if (endsWith(suffix)) {
+                if (hasVowel(0, len - suffix.length())) {
+                    len -= suffix.length();
+                    if (endsWith("at") || endsWith("bl") || endsWith("iz")) {
+                        replaceEnd(0, "e");
+                    } else if (len >= 2 && buf[len - 1] == buf[len - 2] && isDouble(buf[len - 1])) {
+                        len--;
+                    } else if (isShort()) {
+                        replaceEnd(0, "e");
+                    }
+                }
+                return;
             }
         }
-        return str;
     }
 
-    private static String step1c(String str) {
-        if (str.matches(".+" + VWL_NO + "(y|Y)$")) {
-            return replaceSuffix(str, 1, "i");
+    private void step1c() {
+        if (len > 2 && (buf[len - 1] == 'y' || buf[len - 1] == 'Y') && !isVowel(buf[len - 2])) {
+            buf[len - 1] = 'i';
         }
-        return str;
     }
 
-    private static String step2(String str) throws Exception {
-        String R1 = getR(1, str);
-
-        Map<String, String> replacingSuffixesPairs = new HashMap<String, String>();
-        replacingSuffixesPairs.put("fulness", "ful");
-        replacingSuffixesPairs.put("ational", "ate");
-        replacingSuffixesPairs.put("ization", "ize");
-        replacingSuffixesPairs.put("ousness", "ous");
-        replacingSuffixesPairs.put("iveness", "ive");
-
-        replacingSuffixesPairs.put("lessli", "less");
-        replacingSuffixesPairs.put("biliti", "ble");
-        replacingSuffixesPairs.put("tional", "tion");
-
-        replacingSuffixesPairs.put("entli", "ent");
-        replacingSuffixesPairs.put("ation", "ate");
-        replacingSuffixesPairs.put("alism", "al");
-        replacingSuffixesPairs.put("aliti", "al");
-        replacingSuffixesPairs.put("ousli", "ous");
-        replacingSuffixesPairs.put("iviti", "ive");
-        replacingSuffixesPairs.put("fulli", "ful");
-
-        replacingSuffixesPairs.put("enci", "ence");
-        replacingSuffixesPairs.put("anci", "ance");
-        replacingSuffixesPairs.put("abli", "able");
-        replacingSuffixesPairs.put("izer", "ize");
-        replacingSuffixesPairs.put("ator", "ate");
-        replacingSuffixesPairs.put("alli", "al");
-
-        replacingSuffixesPairs.put("bli", "ble");
-
-        MutableBoolean isSuffixWasReplaced = new MutableBoolean();
-        str = replaceSuffix(str, R1, replacingSuffixesPairs, isSuffixWasReplaced);
-        if (isSuffixWasReplaced.value) {
-            return str;
+    private void step2() {
+        int r1 = r1(0);
+        for (String[] pair : STEP2_SUFFIXES) {
+            if (endsWith(pair[0], r1)) {
+                replaceEnd(pair[0].length(), pair[1]);
+                return;
+            }
         }
 
         // ogi: replace by og if preceded by l
-        if (R1.matches(".*logi$")) {
-            return replaceSuffix(str, "ogi", "og");
+        if (endsWith("logi", r1)) {
+            len--;
+            return;
         }
 
         // li: delete if preceded by a valid li-ending
-        if (R1.matches(".*" + LI_END_YES + "li$")) {
-            return replaceSuffix(str, "li", "");
+        if (len - r1 >= 3 && endsWith("li") && isLiEnding(buf[len - 3])) {
+            len -= 2;
         }
-
-        return str;
     }
 
-    private static String step3(String str) throws Exception {
-        String R1 = getR(1, str);
-
-        Map<String, String> replacingSuffixesPairs = new HashMap<String, String>();
-        replacingSuffixesPairs.put("ational", "ate");
-        replacingSuffixesPairs.put("tional", "tion");
-        replacingSuffixesPairs.put("alize", "al");
-        replacingSuffixesPairs.put("icate", "ic");
-        replacingSuffixesPairs.put("iciti", "ic");
-        replacingSuffixesPairs.put("ical", "ic");
-        replacingSuffixesPairs.put("ness", "");
-        replacingSuffixesPairs.put("ful", "");
-
-        MutableBoolean isSuffixWasReplaced = new MutableBoolean();
-        str = replaceSuffix(str, R1, replacingSuffixesPairs, isSuffixWasReplaced);
-        if (isSuffixWasReplaced.value) {
-            return str;
+    private void step3() {
+        int r1 = r1(0);
+        for (String[] pair : STEP3_SUFFIXES) {
+            if (endsWith(pair[0], r1)) {
+                replaceEnd(pair[0].length(), pair[1]);
+                return;
+            }
         }
 
         // ative*: delete if in R2
-        String R2 = getR(2, str);
-        if (R2.matches(".*ative$")) {
-            return replaceSuffix(str, "ative", "");
+        if (endsWith("ative", r2())) {
+            len -= 5;
         }
-
-        return str;
     }
 
-    private static String step4(String str) {
-        String R2 = getR(2, str);
-
-        String suffixes = "(ement|ance|ence|ment|able|ible|ant|ent|ism|ate|iti|ous|ive|ize|er|ic|al)";
+    private void step4() {
+        int r2 = r2();
 
-        if (R2.matches(".*" + suffixes + "$")) {
-            return removeSuffix(str, suffixes);
+        // the longest suffix of the word is deleted, if at least the shortest suffix of the word is in R2
+        int longest = 0;
+        boolean inR2 = false;
+        for (String suffix : STEP4_SUFFIXES) {
+            if (endsWith(suffix)) {
+                longest = Math.max(longest, suffix.length());
+                inR2 |= len - r2 >= suffix.length();
+            }
         }
-        if (R2.matches(".*[st]ion$")) {
-            return removeSuffix(str, "ion");
+        if (inR2) {
+            len -= longest;
+            return;
         }
 
-        return str;
+        if (endsWith("sion", r2) || endsWith("tion", r2)) {
+            len -= 3;
+        }
     }
 
-    private static String step5(String str) {
-        String R1 = getR(1, str);
-        String R2 = getR(2, str);
+    private void step5() {
+        int r1 = r1(0);
+        int r2 = r2();
 
-        if (R2.matches(".*e$")
-                || (R1.matches(".*e$") && !str.matches(".*" + SHORT_SYLLABLE_MIDDLE + "e$") && !str
-                        .matches(SHORT_SYLLABLE_FIRST + "e$"))) {
-            return removeSuffix(str, "e");
-        }
-        if (R2.matches(".*ll$")) {
-            return removeSuffix(str, "l");
+        if (endsWith("e", r2)
+                || (endsWith("e", r1) && !endsWithShortSyllable(len - 1) && !(len == 3 && isVowel(buf[0]) && !isVowel(
+                        buf[1])))) {
+            len--;
+        } else if (endsWith("ll", r2)) {
+            len--;
         }
-
-        return str;
     }
 }
@@ -1,49 +1,306 @@
 package stemming;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 public class GeneralStemmer {
-    private static final String UNNECESSARY_CHARS = "[!:+]";
 
+    // make first character upper case
+    private static final CharFilter FIRST_CHAR_UPPER_CASE = new CharFilter() {
+        @Override
+        public int filter(char c, int index) {
+            return index == 0 && Character.isLowerCase(c) ? Character.toUpperCase(c) : c;
+        }
+    };
+
+    // removing signs "!:+"
+    // I think all cases when they appear can be joined with other words (after removing these chars) rightfully.
+    private static final CharFilter UNNECESSARY_CHARS = new CharFilter() {
+        @Override
+        public int filter(char c, int index) {
+            return c == '!' || c == ':' || c == '+' ? REMOVE : c;
+        }
+    };
+
+    // replace ёЁ with еЕ
+    private static final CharFilter YO = new CharFilter() {
+        @Override
+        public int filter(char c, int index) {
+            return c == 'ё' ? 'е' : c == 'Ё' ? 'Е' : c;
+        }
+    };
+
+    private static final Analyzer ANALYZER = new Analyzer(FIRST_CHAR_UPPER_CASE, UNNECESSARY_CHARS, YO);
+
+    public static final Stemmer RU_PORTER_STEMMER = new Stemmer() {
+        @Override
+        public String stem(String word) {
+            return RuPorterStemmer.stem(word);
+        }
+    };
+
+    public static final Stemmer EN_PORTER_STEMMER = new Stemmer() {
+        @Override
+        public String stem(String word) {
+            return EnPorterStemmer.stem(word);
+        }
+    };
+
+    // stemmers of Cyrillic and Latin tails
+    private static volatile Stemmer cyrillicStemmer = RU_PORTER_STEMMER;
+    private static volatile Stemmer latinStemmer = EN_PORTER_STEMMER;
+
+    // stemmed forms of Latin words get their transliterations to Cyrillic
+    private static volatile boolean transliteration;
+
+    // words are passed only to stemmers of the letters they have, false - to both stemmers as it was before the
+    // dispatch
+    private static volatile boolean scriptDispatch = true;
+
+    // stemmed forms of normalized strings, null - no caching
+    private static volatile StemCache cache;
+
+    // stemmed forms kept between runs, null - no store
+    private static volatile StemStore store;
+
+    /**
+     * Sets the cache used by {@link #getStemmedStrings(String)} for all threads, null turns caching off.
+     */
+    public static void setCache(StemCache stemCache) {
+        cache = stemCache;
+    }
+
+    public static StemCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the store of stemmed forms used by {@link #getStemmedStrings(String)} for all threads behind the cache,
+     * null turns it off. The store should be opened with the version returned by {@link #getVersion()} after stemmers
+     * are set.
+     */
+    public static void setStore(StemStore stemStore) {
+        store = stemStore;
+    }
+
+    public static StemStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the version of stemmed forms: a checksum of the classes they are made by, i.e. the analyzer and the
+     * current stemmers, of the rules of rule stemmers and of the transliteration. It changes when any of them
+     * changes, so stemmed forms stored by other code are stale.
+     */
+    public static long getVersion() throws IOException {
+        CRC32 crc = new CRC32();
+        addClass(crc, Analyzer.class);
+        addClass(crc, GeneralStemmer.class);
+        for (Stemmer stemmer : new Stemmer[] { cyrillicStemmer, latinStemmer }) {
+            if (stemmer == RU_PORTER_STEMMER) {
+                addClass(crc, RuPorterStemmer.class);
+            } else if (stemmer == EN_PORTER_STEMMER) {
+                addClass(crc, EnPorterStemmer.class);
+            } else {
+                addClass(crc, stemmer.getClass());
+                if (stemmer instanceof RuleStemmer) {
+                    crc.update(((RuleStemmer) stemmer).getRules().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (transliteration) {
+            addClass(crc, Transliterator.class);
+        }
+        return crc.getValue();
+    }
+
+    // bytes of the class, of its member classes and of its anonymous classes
+    private static void addClass(CRC32 crc, Class<?> cls) throws IOException {
+        crc.update(cls.getName().getBytes(StandardCharsets.UTF_8));
+        addClassFile(crc, cls.getName());
+        for (Class<?> member : cls.getDeclaredClasses()) {
+            addClass(crc, member);
+        }
+        for (int i = 1; addClassFile(crc, cls.getName() + "$" + i); i++) {
+        }
+    }
+
+    private static boolean addClassFile(CRC32 crc, String className) throws IOException {
+        InputStream in = GeneralStemmer.class.getClassLoader().getResourceAsStream(
+                className.replace('.', '/') + ".class");
+        if (in == null) {
+            return false;
+        }
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Sets stemmers of Cyrillic and Latin tails for all threads, e.g. rule stemmers (see {@link RuleStemmer}), they
+     * are Porter stemmers by default. Stemmed forms which are already cached are not changed.
+     */
+    public static void setStemmers(Stemmer cyrillic, Stemmer latin) {
+        cyrillicStemmer = cyrillic;
+        latinStemmer = latin;
+    }
+
+    /**
+     * Turns on or off adding transliterations of stemmed forms of Latin words to Cyrillic, so a word written in both
+     * scripts gets into one group. Stemmed forms which are already cached are not changed.
+     */
+    public static void setTransliteration(boolean on) {
+        transliteration = on;
+    }
+
+    /**
+     * Turns on or off passing words only to stemmers of the letters they have. Stemmed forms are the same either way,
+     * so it is only turned off to measure what the dispatch saves (see GeneralStemmerBenchmark).
+     */
+    static void setScriptDispatch(boolean on) {
+        scriptDispatch = on;
+    }
+
+    /**
+     * Returns stemmed forms of the string. If a cache is set the returned list can be shared, so it must not be
+     * modified.
+     */
     public static List<String> getStemmedStrings(String str) throws Exception {
-        List<String> stemmedWrds = new LinkedList<String>();
+        Analyzer.Token token = ANALYZER.analyze(str);
 
-        // make first character upper case
-        str = makeFirstCharUpperCase(str);
+        StemCache stemCache = cache;
+        if (stemCache == null) {
+            return load(token);
+        }
+        List<String> stemmedWrds = stemCache.get(token.getText());
+        if (stemmedWrds == null) {
+            stemmedWrds = Collections.unmodifiableList(load(token));
+            stemCache.put(token.getText(), stemmedWrds);
+        }
+        return stemmedWrds;
+    }
 
-        // removing signs "!:+"
-        // I think all cases when they appear can be joined with other words (after removing these chars) rightfully.
-        str = str.replaceAll(UNNECESSARY_CHARS, "");
+    // stemmed forms from the store if they are there, otherwise they are made and put there
+    private static List<String> load(Analyzer.Token token) throws Exception {
+        StemStore stemStore = store;
+        if (stemStore == null) {
+            return stem(token);
+        }
+        List<String> stemmedWrds = stemStore.get(token.getText());
+        if (stemmedWrds == null) {
+            stemmedWrds = stem(token);
+            stemStore.put(token.getText(), stemmedWrds);
+        }
+        return stemmedWrds;
+    }
 
-        // replace ёЁ with еЕ
-        str = str.replaceAll("ё", "е");
-        str = str.replaceAll("Ё", "Е");
+    private static List<String> stem(Analyzer.Token token) throws Exception {
+        List<String> stemmedWrds = stemByAlphabets(token);
+
+        // translit English characters to Russian
+        if (transliteration) {
+            addTransliterations(stemmedWrds, token);
+        }
+
+        return stemmedWrds;
+    }
 
-        // translit English characters to Russian and vice versa
+    private static List<String> stemByAlphabets(Analyzer.Token token) throws Exception {
+        List<String> stemmedWrds = new LinkedList<String>();
 
-        // apply Porter's algorithms
-        addRuPorterStem(stemmedWrds, str);
-        addEnPorterStem(stemmedWrds, str);
+        // apply Porter's algorithms, each one only if the word has lower case letters of its alphabet, so e.g. numbers
+        // are not passed to any of them
+        boolean dispatch = scriptDispatch;
+        if (!dispatch || token.hasAny(Analyzer.CYRILLIC_LOWER_CASE)) {
+            addRuPorterStem(stemmedWrds, token);
+        }
+        if (!dispatch || token.hasAny(Analyzer.LATIN_LOWER_CASE | Analyzer.APOSTROPHE)) {
+            addEnPorterStem(stemmedWrds, token);
+        }
 
         // if no one of Porters algorithms were used then just add string as is
         if (stemmedWrds.isEmpty()) {
-            stemmedWrds.add(str);
+            stemmedWrds.add(token.getText());
         }
 
         return stemmedWrds;
     }
 
-    static String makeFirstCharUpperCase(String str) {
-        if (Character.isLowerCase(str.charAt(0))) {
-            return Character.toUpperCase(str.charAt(0)) + str.substring(1);
+    static void addTransliterations(List<String> stemmedWrds, Analyzer.Token token) {
+        /*
+         * One key is enough for a Latin and a Cyrillic word to get into one group, so only words of Latin letters get
+         * their stemmed forms in Cyrillic and not vice versa: Latin to Cyrillic joins more spellings (c, k and q are all
+         * "к"), and Cyrillic words, which are most of them, cost nothing.
+         * 
+         * The whole word is transliterated and its tail is stemmed as the tail of a Cyrillic word is, so keys are the
+         * same as stemmed forms of its Cyrillic spelling: "Toyota" -> "Тойота" -> "Тойот", while the Latin stem
+         * "Toyota" would give "Тойота", which "Тойота" never gets.
+         */
+        if (!token.hasAny(Analyzer.LATIN_UPPER_CASE | Analyzer.LATIN_LOWER_CASE)
+                || token.hasAny(Analyzer.CYRILLIC_UPPER_CASE | Analyzer.CYRILLIC_LOWER_CASE)) {
+            return;
+        }
+        String str = token.getText();
+        String cyrillic = Transliterator.LATIN_TO_CYRILLIC.transliterate(str);
+        if (cyrillic == null) {
+            return;
         }
-        return str;
+
+        /*
+         * The text is normalized already and the transliteration has only Cyrillic letters and the same other chars, so
+         * its tail is found right away from its end as the analyzer would find it: lower case letters before the line
+         * terminator and upper case ones before them.
+         */
+        int tailEnd = cyrillic.length() - (str.length() - token.getTailEnd());
+        int lowerCaseStart = tailEnd;
+        while (lowerCaseStart > 0
+                && Analyzer.classOf(cyrillic.charAt(lowerCaseStart - 1)) == Analyzer.CYRILLIC_LOWER_CASE) {
+            lowerCaseStart--;
+        }
+        String key = cyrillic;
+        if (lowerCaseStart < tailEnd) {
+            int startPos = lowerCaseStart;
+            while (startPos > 0 && Analyzer.classOf(cyrillic.charAt(startPos - 1)) == Analyzer.CYRILLIC_UPPER_CASE) {
+                startPos--;
+            }
+            // upper case letters of the tail are 'А'..'Я', so they are made lower case without String.toLowerCase
+            char[] tail = new char[tailEnd - startPos];
+            cyrillic.getChars(startPos, tailEnd, tail, 0);
+            for (int i = 0; i < lowerCaseStart - startPos; i++) {
+                tail[i] += 'а' - 'А';
+            }
+            String potterRes = cyrillicStemmer.stem(new String(tail));
+            // the upper case part is kept as it was, as in addRuPorterStem
+            key = potterRes.length() <= lowerCaseStart - startPos ? cyrillic.substring(0, lowerCaseStart)
+                    : cyrillic.substring(0, lowerCaseStart) + potterRes.substring(lowerCaseStart - startPos);
+        }
+        // the Latin word has one stemmed form
+        if (!key.equals(stemmedWrds.get(0))) {
+            stemmedWrds.add(key);
+        }
+    }
+
+    /**
+     * Brings the string to the form in which it is stemmed: the first character is upper case, signs "!:+" are removed
+     * and ёЁ are replaced with еЕ.
+     */
+    public static String normalize(String str) {
+        return ANALYZER.analyze(str).getText();
     }
 
-    static void addRuPorterStem(List<String> stemmedWrds, String str) {
+    static void addRuPorterStem(List<String> stemmedWrds, Analyzer.Token token) {
         /*
          * Because of abbreviations and combined words, only last part of incoming string will be used for Russian
          * porter algorithm. Namely, I will take the substring which can be defined in the next way:
@@ -63,19 +320,16 @@ public class GeneralStemmer {
          * add it to the shorten original string.
          */
 
-        Pattern p = Pattern.compile("[А-Я]+[а-я]+$");
-        Matcher m = p.matcher(str);
-        if (m.find()) {
-            int startPos = m.start();
-            String strTail = m.group();
+        // the tail and the length of its upper case part are found by the analyzer
+        int startPos = token.getCyrillicTailStart();
+        if (startPos >= 0) {
+            String str = token.getText();
+            String strTail = str.substring(startPos, token.getTailEnd());
 
             // memorize upper case character to restore them afterwards
-            p = Pattern.compile("^[А-Я]+");
-            m = p.matcher(strTail);
-            m.find();
-            String strTailUpperCasePart = m.group();
+            String strTailUpperCasePart = strTail.substring(0, token.getCyrillicUpperCaseLength());
 
-            String potterRes = RuPorterStemmer.stem(strTail.toLowerCase());
+            String potterRes = cyrillicStemmer.stem(strTail.toLowerCase());
 
             if (potterRes.length() <= strTailUpperCasePart.length()) {
                 stemmedWrds.add(str.substring(0, startPos) + strTailUpperCasePart);
@@ -88,26 +342,20 @@ public class GeneralStemmer {
 
     }
     
-    static void addEnPorterStem(List<String> stemmedWrds, String str) throws Exception {
+    static void addEnPorterStem(List<String> stemmedWrds, Analyzer.Token token) throws Exception {
         /*
          * Same preprocessings as for Russian Porter algorithm but now I additionally left all apostrophes and convert
          * single quotes to it too.
          */
-        str = str.replaceAll("[\u2019\u2018\u201B]", "'"); 
-
-        Pattern p = Pattern.compile("[A-Z']+[a-z']+$");
-        Matcher m = p.matcher(str);
-        if (m.find()) {
-            int startPos = m.start();
-            String strTail = m.group();
+        int startPos = token.getLatinTailStart();
+        if (startPos >= 0) {
+            String str = token.getLatinText();
+            String strTail = str.substring(startPos, token.getTailEnd());
 
             // memorize upper case character to restore them afterwards
-            p = Pattern.compile("^[A-Z']+");
-            m = p.matcher(strTail);
-            m.find();
-            String strTailUpperCasePart = m.group();
+            String strTailUpperCasePart = strTail.substring(0, token.getLatinUpperCaseLength());
 
-            String potterRes = EnPorterStemmer.stem(strTail.toLowerCase());
+            String potterRes = latinStemmer.stem(strTail.toLowerCase());
 
             if (potterRes.length() <= strTailUpperCasePart.length()) {
                 stemmedWrds.add(str.substring(0, startPos) + strTailUpperCasePart);
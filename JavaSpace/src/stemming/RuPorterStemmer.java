@@ -1,83 +1,150 @@
 package stemming;
 
 import java.util.Arrays;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * This class aims to be an interpretation of the Porter stemming algorithm for Russian language, which description can
  * be found right here: http://snowballstem.org/algorithms/russian/stemmer.html
- * 
+ * <p>
+ * Suffixes of each class are kept in a trie of reversed suffixes, so the longest suffix of a class is found in one
+ * backward walk over the word, and regions RV, R1 and R2 are only offsets in it. Nothing but the result string is
+ * allocated.
  */
 public class RuPorterStemmer {
 
-    static class MutableBoolean {
-        public boolean value;
+    /**
+     * Trie of reversed suffixes of the Cyrillic lower case letters 'а'..'я'. Each suffix has the number of chars it
+     * removes, which is less than its length if the suffix must be preceded by some chars, e.g. by 'а' or 'я'.
+     */
+    static class SuffixTrie {
+        private static final int ALPHABET = 'я' - 'а' + 1;
+
+        // children of node n are next[n * ALPHABET + (c - 'а')], 0 - no child (the root is never a child)
+        private int[] next = new int[ALPHABET];
+        // number of chars removed by the suffix which ends in the node, 0 - no suffix ends there
+        private int[] removal = new int[1];
+        private int nodesCount = 1;
+
+        SuffixTrie add(String... suffixes) {
+            for (String suffix : suffixes) {
+                add(suffix, suffix.length());
+            }
+            return this;
+        }
+
+        /**
+         * Adds suffixes which are removed only if they are preceded by 'а' or 'я', the preceding char stays.
+         */
+        SuffixTrie addAfterAYa(String... suffixes) {
+            for (String suffix : suffixes) {
+                add('а' + suffix, suffix.length());
+                add('я' + suffix, suffix.length());
+            }
+            return this;
+        }
+
+        private void add(String suffix, int removalLen) {
+            int node = 0;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                int child = node * ALPHABET + (suffix.charAt(i) - 'а');
+                if (next[child] == 0) {
+                    if (nodesCount * ALPHABET == next.length) {
+                        next = Arrays.copyOf(next, next.length * 2);
+                        removal = Arrays.copyOf(removal, removal.length * 2);
+                    }
+                    next[child] = nodesCount++;
+                }
+                node = next[child];
+            }
+            removal[node] = Math.max(removal[node], removalLen);
+        }
+
+        /**
+         * Returns the number of chars removed by the longest suffix which lies in str between from and to, 0 if there
+         * is no such suffix.
+         */
+        int match(String str, int from, int to) {
+            int node = 0;
+            int result = 0;
+            for (int i = to - 1; i >= from; i--) {
+                char c = str.charAt(i);
+                if (c < 'а' || c > 'я') {
+                    break;
+                }
+                node = next[node * ALPHABET + (c - 'а')];
+                if (node == 0) {
+                    break;
+                }
+                if (removal[node] > result) {
+                    result = removal[node];
+                }
+            }
+            return result;
+        }
     }
 
-    private static Set<Character> vowels;
+    private static final boolean[] VOWELS = new boolean['я' - 'а' + 1];
     static {
-        vowels = new TreeSet<Character>();
-        vowels.addAll(Arrays.asList(new Character[] { 'а', 'е', 'и', 'о', 'у', 'ы', 'э', 'ю', 'я' }));
+        for (char c : new char[] { 'а', 'е', 'и', 'о', 'у', 'ы', 'э', 'ю', 'я' }) {
+            VOWELS[c - 'а'] = true;
+        }
     }
 
     // i-suffixes
-    private final static String PERFECTIVE_GERUND_GRP_1_LEN_1 = ".*[ая]в$";
-    private final static String PERFECTIVE_GERUND_GRP_1_LEN_3 = ".*[ая]вши$";
-    private final static String PERFECTIVE_GERUND_GRP_1_LEN_5 = ".*[ая]вшись$";
-    private final static String PERFECTIVE_GERUND_GRP_2_LEN_2 = ".*(ив|ыв)$";
-    private final static String PERFECTIVE_GERUND_GRP_2_LEN_4 = ".*(ивши|ывши)$";
-    private final static String PERFECTIVE_GERUND_GRP_2_LEN_6 = ".*(ившись|ывшись)$";
-
-    private final static String ADJECTIVE_LEN_2 = ".*(ее|ие|ые|ое|ей|ий|ый|ой|ем|им|ым|ом|их|ых|ую|юю|ая|яя|ою|ею)$";
-    private final static String ADJECTIVE_LEN_3 = ".*(ими|ыми|его|ого|ему|ому)$";
-
-    private final static String PARTICIPLE_GRP_1_LEN_1 = ".*[ая]щ$";
-    private final static String PARTICIPLE_GRP_1_LEN_2 = ".*[ая](ем|нн|вш|ющ)$";
-    private final static String PARTICIPLE_GRP_2_LEN_3 = ".*(ивш|ывш|ующ)$";
-
-    private final static String REFLEXIVE_LEN_2 = ".*(ся|сь)$";
-
-    private final static String VERB_GRP_1_LEN_1 = ".*[ая](й|л|н)$";
-    private final static String VERB_GRP_1_LEN_2 = ".*[ая](ла|на|ли|ем|ло|но|ет|ют|ны|ть)$";
-    private final static String VERB_GRP_1_LEN_3 = ".*[ая](ете|йте|ешь|нно)$";
-    private final static String VERB_GRP_2_LEN_1 = ".*(ю)$";
-    private final static String VERB_GRP_2_LEN_2 = ".*(ей|уй|ил|ыл|им|ым|ен|ят|ит|ыт|ую)$";
-    private final static String VERB_GRP_2_LEN_3 = ".*(ила|ыла|ена|ите|или|ыли|ило|ыло|ено|ует|уют|ены|ить|ыть|ишь)$";
-    private final static String VERB_GRP_2_LEN_4 = ".*(ейте|уйте)$";
-
-    private final static String NOUN_LEN_1 = ".*(а|е|и|й|о|у|ы|ь|ю|я)$";
-    private final static String NOUN_LEN_2 = ".*(ев|ов|ие|ье|еи|ии|ей|ой|ий|ям|ем|ам|ом|ах|ях|ию|ью|ия|ья)$";
-    private final static String NOUN_LEN_3 = ".*(ями|ами|ией|иям|ием|иях)$";
-    private final static String NOUN_LEN_4 = ".*(иями)$";
-
-    private final static String SUPERLATIVE_LEN_3 = ".*(ейш)$";
-    private final static String SUPERLATIVE_LEN_4 = ".*(ейше)$";
+    private static final SuffixTrie PERFECTIVE_GERUND = new SuffixTrie()
+            .addAfterAYa("в", "вши", "вшись")
+            .add("ив", "ыв", "ивши", "ывши", "ившись", "ывшись");
+
+    private static final SuffixTrie ADJECTIVE = new SuffixTrie()
+            .add("ее", "ие", "ые", "ое", "ей", "ий", "ый", "ой", "ем", "им", "ым", "ом", "их", "ых", "ую", "юю", "ая",
+                    "яя", "ою", "ею")
+            .add("ими", "ыми", "его", "ого", "ему", "ому");
+
+    private static final SuffixTrie PARTICIPLE = new SuffixTrie()
+            .addAfterAYa("щ", "ем", "нн", "вш", "ющ")
+            .add("ивш", "ывш", "ующ");
+
+    private static final SuffixTrie REFLEXIVE = new SuffixTrie()
+            .add("ся", "сь");
+
+    private static final SuffixTrie VERB = new SuffixTrie()
+            .addAfterAYa("й", "л", "н")
+            .addAfterAYa("ла", "на", "ли", "ем", "ло", "но", "ет", "ют", "ны", "ть")
+            .addAfterAYa("ете", "йте", "ешь", "нно")
+            .add("ю")
+            .add("ей", "уй", "ил", "ыл", "им", "ым", "ен", "ят", "ит", "ыт", "ую")
+            .add("ила", "ыла", "ена", "ите", "или", "ыли", "ило", "ыло", "ено", "ует", "уют", "ены", "ить", "ыть",
+                    "ишь")
+            .add("ейте", "уйте");
+
+    private static final SuffixTrie NOUN = new SuffixTrie()
+            .add("а", "е", "и", "й", "о", "у", "ы", "ь", "ю", "я")
+            .add("ев", "ов", "ие", "ье", "еи", "ии", "ей", "ой", "ий", "ям", "ем", "ам", "ом", "ах", "ях", "ию", "ью",
+                    "ия", "ья")
+            .add("ями", "ами", "ией", "иям", "ием", "иях")
+            .add("иями");
+
+    private static final SuffixTrie SUPERLATIVE = new SuffixTrie()
+            .add("ейш", "ейше");
 
     // d-suffixes
-    private final static String DERIVATIONAL_LEN_3 = ".*(ост)$";
-    private final static String DERIVATIONAL_LEN_4 = ".*(ость)$";
+    private static final SuffixTrie DERIVATIONAL = new SuffixTrie()
+            .add("ост", "ость");
 
     // Define an ADJECTIVAL ending as an ADJECTIVE ending optionally preceded by a PARTICIPLE ending
 
-    // other
-    private final static String DOUBLE_N = ".*нн$";
-    private final static String SIGN_I = ".*и$";
-    private final static String SOFT_SIGN = ".*ь$";
+    private static boolean isVowel(char c) {
+        return c >= 'а' && c <= 'я' && VOWELS[c - 'а'];
+    }
 
     /**
      * In any word, RV is the region after the first vowel, or the end of the word if it contains no vowel.
-     * 
+     *
      * @param str
      * @return
      */
     static String getRv(String str) {
-        for (int i = 0; i < str.length(); i++) {
-            if (vowels.contains(str.charAt(i)) && i + 1 < str.length()) {
-                return str.substring(i + 1);
-            }
-        }
-        return "";
+        return str.substring(rvStart(str, str.length()));
     }
 
     /**
@@ -88,26 +155,61 @@ public class RuPorterStemmer {
      * <p>
      * R2 is the region after the first non-vowel following a vowel in R1, or the end of the word if there is no such
      * non-vowel
-     * 
+     *
      * @param str
      *            a string from which Rn is built
      * @param n
      *            the number of Rn
      */
     static String getR(int n, String str) {
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            start = rStart(str, start, str.length());
+        }
+        return str.substring(start);
+    }
+
+    /**
+     * Returns the start of RV of the first len chars of str.
+     */
+    private static int rvStart(String str, int len) {
+        for (int i = 0; i < len; i++) {
+            if (isVowel(str.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Returns the start of R1 of the region of str between from and len, so R2 is rStart(str, rStart(str, 0, len),
+     * len).
+     */
+    private static int rStart(String str, int from, int len) {
         boolean vowelFound = false;
-        for (int i = 0; i < str.length(); i++) {
-            if (!vowelFound && vowels.contains(str.charAt(i))) {
+        for (int i = from; i < len; i++) {
+            if (!vowelFound && isVowel(str.charAt(i))) {
                 vowelFound = true;
-            } else if (vowelFound && !vowels.contains(str.charAt(i)) && i + 1 < str.length()) {
-                if (n == 1) {
-                    return str.substring(i + 1);
-                } else {
-                    return getR(n - 1, str.substring(i + 1));
-                }
+            } else if (vowelFound && !isVowel(str.charAt(i))) {
+                return i + 1;
             }
         }
-        return "";
+        return len;
+    }
+
+    /**
+     * Returns the position of the last line terminator in str, -1 if there is no one. Suffixes were once matched by
+     * regular expressions ".*suffix$", which do not match a region with a line terminator, and stems must stay the
+     * same.
+     */
+    private static int lastLineTerminator(String str) {
+        for (int i = str.length() - 1; i >= 0; i--) {
+            char c = str.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public static String stem(String str) {
@@ -129,225 +231,87 @@ public class RuPorterStemmer {
          * or (3) if the word ends ь (') (soft sign) remove it.
          */
 
-        String workingStr = getRv(str);
-        int wrkStrLen = workingStr.length(); // memorize RV length for find easy its start position in the str latter.
-
-        workingStr = step1(workingStr);
+        // the word is str from 0 to end, each step only moves the end
+        int end = str.length();
+        int lineTerminator = lastLineTerminator(str);
 
-        workingStr = step2(workingStr);
+        int rv = rvStart(str, end);
+        if (lineTerminator < rv) {
+            end = step1(str, rv, end);
 
-        int stemmedSuffixesLen = wrkStrLen - workingStr.length();
-        str = str.substring(0, str.length() - stemmedSuffixesLen); // get original string without suffixes of steps 1, 2
-
-        workingStr = getR(2, str);
-        wrkStrLen = workingStr.length();
+            end = step2(str, rv, end);
+        }
 
-        workingStr = step3(workingStr);
+        // R2 of the word without suffixes of steps 1, 2
+        int r2 = rStart(str, rStart(str, 0, end), end);
+        if (lineTerminator < r2) {
+            end = step3(str, r2, end);
+        }
 
-        stemmedSuffixesLen = wrkStrLen - workingStr.length();
-        str = str.substring(0, str.length() - stemmedSuffixesLen);
+        if (lineTerminator < 0) {
+            end = step4(str, end);
+        }
 
-        return step4(str);
+        return str.substring(0, end);
     }
 
-    static String step1(String str) {
+    private static int step1(String str, int rv, int end) {
         /**
          * Step 1: Search for a PERFECTIVE GERUND ending. If one is found remove it, and that is then the end of step 1.
          * Otherwise try and remove a REFLEXIVE ending, and then search in turn for (1) an ADJECTIVAL, (2) a VERB or (3)
          * a NOUN ending. As soon as one of the endings (1) to (3) is found remove it, and terminate step 1.
          */
-
-        MutableBoolean isTimeToReturn = new MutableBoolean();
-        isTimeToReturn.value = false;
-
-        str = stemPerfectiveGerund(str, isTimeToReturn);
-        if (isTimeToReturn.value) {
-            return str;
-        }
-
-        str = stemReflexive(str);
-
-        str = stemAdjectival(str, isTimeToReturn);
-        if (isTimeToReturn.value) {
-            return str;
-        }
-
-        str = stemVerb(str, isTimeToReturn);
-        if (isTimeToReturn.value) {
-            return str;
-        }
-
-        str = stemNoun(str, isTimeToReturn);
-        /*
-         * if (isTimeToReturn.value) { return str; }
-         */
-
-        return str;
-    }
-
-    private static String stemPerfectiveGerund(String str, MutableBoolean isTimeToReturn) {
-        isTimeToReturn.value = false;
-        if (str.matches(PERFECTIVE_GERUND_GRP_2_LEN_6)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 6);
+        int removed = PERFECTIVE_GERUND.match(str, rv, end);
+        if (removed > 0) {
+            return end - removed;
         }
-        if (str.matches(PERFECTIVE_GERUND_GRP_1_LEN_5)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 5);
-        }
-        if (str.matches(PERFECTIVE_GERUND_GRP_2_LEN_4)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 4);
-        }
-        if (str.matches(PERFECTIVE_GERUND_GRP_1_LEN_3)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 3);
-        }
-        if (str.matches(PERFECTIVE_GERUND_GRP_2_LEN_2)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 2);
-        }
-        if (str.matches(PERFECTIVE_GERUND_GRP_1_LEN_1)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 1);
-        }
-        return str;
-    }
 
-    private static String stemReflexive(String str) {
-        if (str.matches(REFLEXIVE_LEN_2)) {
-            return str.substring(0, str.length() - 2);
-        }
-        return str;
-    }
+        end -= REFLEXIVE.match(str, rv, end);
 
-    private static String stemAdjectival(String str, MutableBoolean isTimeToReturn) {
-        str = stemAdjective(str, isTimeToReturn);
-        if (isTimeToReturn.value) {
-            str = stemParticiple(str);
+        removed = ADJECTIVE.match(str, rv, end);
+        if (removed > 0) {
+            end -= removed;
+            return end - PARTICIPLE.match(str, rv, end);
         }
-        return str;
-    }
 
-    private static String stemAdjective(String str, MutableBoolean isTimeToReturn) {
-        isTimeToReturn.value = false;
-        if (str.matches(ADJECTIVE_LEN_3)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 3);
+        removed = VERB.match(str, rv, end);
+        if (removed > 0) {
+            return end - removed;
         }
-        if (str.matches(ADJECTIVE_LEN_2)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 2);
-        }
-        return str;
-    }
 
-    private static String stemParticiple(String str) {
-        if (str.matches(PARTICIPLE_GRP_2_LEN_3)) {
-            return str.substring(0, str.length() - 3);
-        }
-        if (str.matches(PARTICIPLE_GRP_1_LEN_2)) {
-            return str.substring(0, str.length() - 2);
-        }
-        if (str.matches(PARTICIPLE_GRP_1_LEN_1)) {
-            return str.substring(0, str.length() - 1);
-        }
-        return str;
-    }
-
-    private static String stemVerb(String str, MutableBoolean isTimeToReturn) {
-        isTimeToReturn.value = false;
-        if (str.matches(VERB_GRP_2_LEN_4)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 4);
-        }
-        if (str.matches(VERB_GRP_1_LEN_3) || str.matches(VERB_GRP_2_LEN_3)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 3);
-        }
-        if (str.matches(VERB_GRP_1_LEN_2) || str.matches(VERB_GRP_2_LEN_2)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 2);
-        }
-        if (str.matches(VERB_GRP_1_LEN_1) || str.matches(VERB_GRP_2_LEN_1)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 1);
-        }
-        return str;
+        return end - NOUN.match(str, rv, end);
     }
 
-    private static String stemNoun(String str, MutableBoolean isTimeToReturn) {
-        isTimeToReturn.value = false;
-        if (str.matches(NOUN_LEN_4)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 4);
-        }
-        if (str.matches(NOUN_LEN_3)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 3);
-        }
-        if (str.matches(NOUN_LEN_2)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 2);
-        }
-        if (str.matches(NOUN_LEN_1)) {
-            isTimeToReturn.value = true;
-            return str.substring(0, str.length() - 1);
-        }
-        return str;
-    }
-
-    private static String step2(String str) {
+    private static int step2(String str, int rv, int end) {
         /**
          * Step 2: If the word ends with и (i), remove it.
          */
-
-        if (str.matches(SIGN_I)) {
-            return str.substring(0, str.length() - 1);
+        if (end > rv && str.charAt(end - 1) == 'и') {
+            return end - 1;
         }
-        return str;
+        return end;
     }
 
-    private static String step3(String str) {
+    private static int step3(String str, int r2, int end) {
         /**
          * Step 3: Search for a DERIVATIONAL ending in R2 (i.e. the entire ending must lie in R2), and if one is found,
          * remove it.
          */
-        return stemDerivational(str);
+        return end - DERIVATIONAL.match(str, r2, end);
     }
 
-    private static String stemDerivational(String str) {
-        if (str.matches(DERIVATIONAL_LEN_4)) {
-            return str.substring(0, str.length() - 4);
-        }
-        if (str.matches(DERIVATIONAL_LEN_3)) {
-            return str.substring(0, str.length() - 3);
-        }
-        return str;
-    }
-
-    private static String step4(String str) {
+    private static int step4(String str, int end) {
         /**
          * Step 4: (1) Undouble н (n), or, (2) if the word ends with a SUPERLATIVE ending, remove it and undouble н (n),
          * or (3) if the word ends ь (') (soft sign) remove it.
          */
-        if (str.matches(SOFT_SIGN)) {
-            return str.substring(0, str.length() - 1);
-        }
-        str = stemSuperlative(str);
-        if (str.matches(DOUBLE_N)) {
-            str = str.substring(0, str.length() - 1);
-        }
-        return str;
-    }
-
-    private static String stemSuperlative(String str) {
-        if (str.matches(SUPERLATIVE_LEN_4)) {
-            return str.substring(0, str.length() - 4);
+        if (end > 0 && str.charAt(end - 1) == 'ь') {
+            return end - 1;
         }
-        if (str.matches(SUPERLATIVE_LEN_3)) {
-            return str.substring(0, str.length() - 3);
+        end -= SUPERLATIVE.match(str, 0, end);
+        if (end > 1 && str.charAt(end - 1) == 'н' && str.charAt(end - 2) == 'н') {
+            end--;
         }
-        return str;
+        return end;
     }
 }
@@ -0,0 +1,1852 @@
+package stemming;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stemmer which follows rules written in a small language in the manner of Snowball (http://snowballstem.org). Rules
+ * are compiled when they are loaded: suffixes of each among command are put into a trie of reversed suffixes,
+ * groupings of chars become tables and regions and backward commands become one table of instructions, so a word is
+ * stemmed in one buffer of the current thread without any regular expressions, and a new language is only a new rules
+ * file. Rules of the languages stemmed by {@link GeneralStemmer} are in src/stemming/rules.
+ * <p>
+ * Rules are declarations and word commands, '#' starts a comment up to the end of the line, strings are quoted by '
+ * or ". Declarations:
+ * <ul>
+ * <li>define G 'chars' - grouping of chars;</li>
+ * <li>region R ( ... ) - region from the position where forward commands put it to the end of the word, the position
+ * starts at 0 and is moved by gopast G (past the next char of G), gopast non-G, prefix ('s1' 's2' ...) (past one of
+ * the strings, which must be right there) and from R (to the start of the region R); "or" separates alternatives, if
+ * every one fails the region is empty;</li>
+ * <li>routine NAME ( ... ) - named backward command.</li>
+ * </ul>
+ * Word commands are run in the order they are written:
+ * <ul>
+ * <li>minimum-length N - a shorter word is left as it is;</li>
+ * <li>drop-prefix 's' - the prefix is removed if the word has it;</li>
+ * <li>exceptions ('word1' 'stem1' 'word2' 'stem2' ...) - a word of the list is replaced by its stem, which is the
+ * result;</li>
+ * <li>replace 'c' 'd' [at-start | after G] - char c is replaced by d everywhere, only as the first char or only after a
+ * char of G, chars are replaced from left to right;</li>
+ * <li>backwards ( ... ) - runs backward commands.</li>
+ * </ul>
+ * Backward commands look at the end of the word. Each one succeeds or fails, commands written one after another are
+ * run while they succeed, "or" runs alternatives until one succeeds. The cursor starts at the end of the word:
+ * <ul>
+ * <li>among [in R] ('s1' 's2' (C1) 's3' (C2) ...) - finds the longest suffix of the list which lies in the region,
+ * fails if there is no one, otherwise makes it the slice, puts the cursor before it and runs the command written after
+ * the suffix, the cursor can not leave the region while it runs;</li>
+ * <li>delete, &lt;- 's' - deletes the slice or replaces it by the string, the cursor is put after the result; append
+ * 's' - adds the string to the end of the word;</li>
+ * <li>'s', G, non-G, hop N, gopast G, gopast non-G - the chars before the cursor are checked, and the cursor is moved
+ * before them;</li>
+ * <li>inside R - the cursor is in the region; empty R - the region is empty; atstart - the cursor is at the start of
+ * the word; word ('w1' 'w2' ...) - the word is one of the list;</li>
+ * <li>try C - runs C and succeeds anyway; not C - succeeds if C fails; test C, do C - run C and restore the cursor, do
+ * C succeeds anyway; NAME - runs the routine.</li>
+ * </ul>
+ * Changes are never undone, only the cursor is restored: if an alternative of "or" fails, the next one starts with the
+ * cursor where the first one started.
+ */
+public class RuleStemmer implements Stemmer {
+
+    private final WordCommand[] statements;
+    private final Program program;
+    private final String rules;
+
+    private final ThreadLocal<State> states = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(program);
+        }
+    };
+
+    private RuleStemmer(WordCommand[] statements, Program program, String rules) {
+        this.statements = statements;
+        this.program = program;
+        this.rules = rules;
+    }
+
+    /**
+     * Compiles rules, an error in them is reported by {@link IllegalArgumentException} with the number of the line.
+     */
+    public static RuleStemmer compile(String rules) {
+        return new Parser(rules).parse();
+    }
+
+    /**
+     * Compiles rules from a UTF-8 file.
+     */
+    public static RuleStemmer load(String file) throws IOException {
+        try {
+            return compile(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the rules the stemmer was compiled from.
+     */
+    public String getRules() {
+        return rules;
+    }
+
+    @Override
+    public String stem(String word) {
+        State s = states.get();
+        s.load(word);
+        int version = s.version;
+        for (WordCommand statement : statements) {
+            s.cursor = s.len;
+            s.limit = 0;
+            // a word command succeeds when the word is stemmed
+            if (statement.run(s)) {
+                break;
+            }
+        }
+        return s.version == version ? word : new String(s.buf, 0, s.len);
+    }
+
+    /**
+     * The word being stemmed and positions in it.
+     */
+    private static class State {
+        private final Program program;
+        // starts of the regions which are found, and how many first chars of the word each one depends on, a region
+        // which is found by running to the end of the word also depends on its length
+        private final int[] regionStarts;
+        private final int[] regionExtents;
+        private final boolean[] regionsFound;
+        // how many first chars are examined by the region commands which run now
+        int examined;
+
+        // the word is buf from 0 to len, each change of it gets a new version
+        char[] buf = new char[32];
+        int len;
+        int version;
+        int cursor;
+        // the cursor can not move before the limit
+        int limit;
+        int sliceStart;
+        int sliceEnd;
+        // registers of the program, the ones from top on are free
+        int[] registers = new int[16];
+        int top;
+
+        State(Program program) {
+            this.program = program;
+            this.regionStarts = new int[program.regionsCount()];
+            this.regionExtents = new int[program.regionsCount()];
+            this.regionsFound = new boolean[program.regionsCount()];
+        }
+
+        void load(String word) {
+            len = word.length();
+            if (buf.length < len) {
+                buf = new char[Math.max(len, buf.length * 2)];
+            }
+            word.getChars(0, len, buf, 0);
+            version++;
+            Arrays.fill(regionsFound, false);
+        }
+
+        void replace(int from, int to, String str) {
+            int newLen = len - (to - from) + str.length();
+            if (buf.length < newLen) {
+                buf = Arrays.copyOf(buf, Math.max(newLen, buf.length * 2));
+            }
+            // most changes remove the end of the word
+            if (to < len) {
+                System.arraycopy(buf, to, buf, from + str.length(), len - to);
+            }
+            if (!str.isEmpty()) {
+                str.getChars(0, str.length(), buf, from);
+            }
+            len = newLen;
+            changed(from);
+        }
+
+        /**
+         * Must be called when chars from the given position are changed.
+         */
+        void changed(int from) {
+            version++;
+            for (int i = 0; i < regionsFound.length; i++) {
+                regionsFound[i] &= regionExtents[i] <= from;
+            }
+        }
+
+        int regionStart(int region) {
+            if (!regionsFound[region]) {
+                int outerExamined = examined;
+                examined = 0;
+                int start = program.move(this, region);
+                regionStarts[region] = start < 0 ? len : start;
+                regionExtents[region] = start < 0 ? len + 1 : examined;
+                regionsFound[region] = true;
+                examined = outerExamined;
+            }
+            examined = Math.max(examined, regionExtents[region]);
+            return regionStarts[region];
+        }
+    }
+
+    private static class Grouping {
+        private final boolean[] chars;
+
+        Grouping(String str) {
+            char max = 0;
+            for (int i = 0; i < str.length(); i++) {
+                max = (char) Math.max(max, str.charAt(i));
+            }
+            chars = new boolean[max + 1];
+            for (int i = 0; i < str.length(); i++) {
+                chars[str.charAt(i)] = true;
+            }
+        }
+
+        boolean contains(char c) {
+            return c < chars.length && chars[c];
+        }
+    }
+
+    /**
+     * Trie of reversed strings, each string has the number of its group. Children of node n are next[n * alphabet +
+     * column of the char], 0 - no child (the root is never a child). A string may have condition strings, one of which
+     * must be right before it: each condition string followed by the string is in the trie too, its node has the node
+     * of the string as the base and no group.
+     */
+    private static class SuffixTrie {
+        private char minChar = Character.MAX_VALUE;
+        private int[] columns;
+        private int alphabet;
+        private int[] next;
+        private int[] groups;
+        private int[] depths;
+        private int[] bases;
+        private int nodesCount = 1;
+
+        SuffixTrie(List<String> strings, List<Integer> stringGroups) {
+            this(strings, stringGroups, null);
+        }
+
+        /**
+         * Creates a trie of the strings and their condition strings, null - no condition strings.
+         */
+        SuffixTrie(List<String> strings, List<Integer> stringGroups, List<String[]> conditions) {
+            // condition strings followed by their strings
+            List<String> conditional = new ArrayList<String>();
+            List<String> conditionalBases = new ArrayList<String>();
+            for (int s = 0; conditions != null && s < strings.size(); s++) {
+                for (int i = 0; conditions.get(s) != null && i < conditions.get(s).length; i++) {
+                    conditional.add(conditions.get(s)[i] + strings.get(s));
+                    conditionalBases.add(strings.get(s));
+                }
+            }
+            List<String> all = new ArrayList<String>(strings);
+            all.addAll(conditional);
+            char maxChar = 0;
+            for (String str : all) {
+                for (int i = 0; i < str.length(); i++) {
+                    minChar = (char) Math.min(minChar, str.charAt(i));
+                    maxChar = (char) Math.max(maxChar, str.charAt(i));
+                }
+            }
+            columns = new int[all.isEmpty() ? 0 : maxChar - minChar + 1];
+            Arrays.fill(columns, -1);
+            for (String str : all) {
+                for (int i = 0; i < str.length(); i++) {
+                    if (columns[str.charAt(i) - minChar] < 0) {
+                        columns[str.charAt(i) - minChar] = alphabet++;
+                    }
+                }
+            }
+
+            next = new int[Math.max(1, alphabet)];
+            groups = new int[] { -1 };
+            depths = new int[1];
+            bases = new int[1];
+            for (int s = 0; s < strings.size(); s++) {
+                int node = add(strings.get(s));
+                if (groups[node] >= 0) {
+                    throw new IllegalArgumentException("repeated string '" + strings.get(s) + "'");
+                }
+                groups[node] = stringGroups.get(s);
+            }
+            for (int i = 0; i < conditional.size(); i++) {
+                int node = add(conditional.get(i));
+                bases[node] = add(conditionalBases.get(i));
+            }
+        }
+
+        /**
+         * Adds the nodes of the string which are not in the trie yet and returns the node of the string.
+         */
+        private int add(String str) {
+            int node = 0;
+            for (int i = str.length() - 1; i >= 0; i--) {
+                int child = node * alphabet + columns[str.charAt(i) - minChar];
+                if (next[child] == 0) {
+                    if (nodesCount == groups.length) {
+                        next = Arrays.copyOf(next, next.length * 2);
+                        groups = Arrays.copyOf(groups, groups.length * 2);
+                        depths = Arrays.copyOf(depths, depths.length * 2);
+                        bases = Arrays.copyOf(bases, bases.length * 2);
+                    }
+                    groups[nodesCount] = -1;
+                    depths[nodesCount] = str.length() - i;
+                    next[child] = nodesCount++;
+                }
+                node = next[child];
+            }
+            return node;
+        }
+
+        /**
+         * Returns the node of the longest string which lies in buf between from and to, 0 if there is no such string.
+         * The node is negative if a condition string of the string lies there right before it.
+         */
+        int match(char[] buf, int from, int to) {
+            int node = 0;
+            int result = 0;
+            boolean conditionFound = false;
+            for (int i = to - 1; i >= from; i--) {
+                int c = buf[i] - minChar;
+                if (c < 0 || c >= columns.length || columns[c] < 0) {
+                    break;
+                }
+                node = next[node * alphabet + columns[c]];
+                if (node == 0) {
+                    break;
+                }
+                if (groups[node] >= 0) {
+                    result = node;
+                    conditionFound = false;
+                } else if (bases[node] != 0 && bases[node] == result) {
+                    conditionFound = true;
+                }
+            }
+            return conditionFound ? -result : result;
+        }
+
+        int groupOf(int node) {
+            return groups[node];
+        }
+
+        int depthOf(int node) {
+            return depths[node];
+        }
+    }
+
+    /**
+     * Forward command of a region, it is compiled like a backward command, see {@link Command}.
+     */
+    private abstract static class Forward {
+        abstract void compile(Program p, int fail);
+    }
+
+    private static class GoPast extends Forward {
+        private final Grouping grouping;
+        private final boolean non;
+
+        GoPast(Grouping grouping, boolean non) {
+            this.grouping = grouping;
+            this.non = non;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.FORWARD_GOPAST, p.grouping(grouping), non ? 1 : 0);
+            p.address(fail);
+        }
+    }
+
+    private static class Prefix extends Forward {
+        private final String[] prefixes;
+
+        Prefix(String[] prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            // a prefix which does not fit leaves the position as it is
+            int end = p.newLabel();
+            for (int i = 0; i < prefixes.length; i++) {
+                int next = i == prefixes.length - 1 ? fail : p.newLabel();
+                p.emit(Program.PREFIX, p.string(prefixes[i]));
+                p.address(next);
+                if (next != fail) {
+                    p.jump(end);
+                    p.bind(next);
+                }
+            }
+            p.bind(end);
+        }
+    }
+
+    private static class From extends Forward {
+        private final int region;
+
+        From(int region) {
+            this.region = region;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.FROM, region);
+        }
+    }
+
+    private static class ForwardSequence extends Forward {
+        private final Forward[] commands;
+
+        ForwardSequence(Forward[] commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            for (Forward command : commands) {
+                command.compile(p, fail);
+            }
+        }
+    }
+
+    private static class ForwardAlternatives extends Forward {
+        private final Forward[] alternatives;
+
+        ForwardAlternatives(Forward[] alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int end = p.newLabel();
+            int pos = p.allocate();
+            p.emit(Program.SAVE, pos);
+            for (int i = 0; i < alternatives.length - 1; i++) {
+                int failed = p.newLabel();
+                alternatives[i].compile(p, failed);
+                p.jump(end);
+                p.bind(failed);
+                p.emit(Program.RESTORE, pos);
+            }
+            alternatives[alternatives.length - 1].compile(p, fail);
+            p.bind(end);
+            p.release(pos);
+        }
+    }
+
+    private static boolean regionEquals(State s, int from, String str) {
+        if (from < 0 || s.len - from < str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (s.buf[from + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Backward command, it is compiled into instructions which go on to the next instruction if the command succeeds
+     * and jump to the fail label otherwise.
+     */
+    private abstract static class Command {
+        abstract void compile(Program p, int fail);
+
+        /**
+         * Returns whether the cursor is where it was if the command fails, then it need not be restored.
+         */
+        boolean keepsCursor() {
+            return true;
+        }
+    }
+
+    /**
+     * Word command, it returns whether the word is stemmed.
+     */
+    private abstract static class WordCommand {
+        abstract boolean run(State s);
+
+        /**
+         * Compiles backward commands of the word command, it is called when all routines are defined.
+         */
+        void compile(Program p) {
+        }
+    }
+
+    private static class Among extends Command {
+        private final int region;
+        private final SuffixTrie trie;
+        // commands of groups of suffixes, null - no command
+        private final Command[] commands;
+        // a suffix of a conditional group is found only with one of its condition strings before it, see SuffixTrie
+        private final boolean[] conditional;
+
+        Among(int region, SuffixTrie trie, Command[] commands, boolean[] conditional) {
+            this.region = region;
+            this.trie = trie;
+            this.commands = commands;
+            this.conditional = conditional;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int end = p.newLabel();
+            int restore = p.newLabel();
+            // the limit and the cursor are restored when the command of a group fails
+            int limit = p.allocate();
+            int cursor = p.allocate();
+            boolean hasCode = false;
+            int[] labels = new int[commands.length];
+            String[] replacements = new String[commands.length];
+            for (int i = 0; i < commands.length; i++) {
+                labels[i] = -1;
+                if (commands[i] instanceof ReplaceSlice) {
+                    replacements[i] = ((ReplaceSlice) commands[i]).str;
+                } else if (commands[i] != null) {
+                    labels[i] = p.newLabel();
+                    hasCode = true;
+                }
+            }
+            p.emit(Program.AMONG, p.among(new AmongTable(trie, labels, replacements, conditional)), region);
+            p.address(end);
+            p.emit(limit);
+            p.address(fail);
+            for (int i = 0; i < commands.length; i++) {
+                if (labels[i] >= 0) {
+                    p.bind(labels[i]);
+                    commands[i].compile(p, restore);
+                    p.emit(Program.RESTORE_LIMIT, limit);
+                    p.jump(end);
+                }
+            }
+            if (hasCode) {
+                p.bind(restore);
+                p.emit(Program.RESTORE_LIMIT, limit, Program.RESTORE, cursor);
+                p.jump(fail);
+            }
+            p.bind(end);
+            p.release(limit);
+        }
+    }
+
+    /**
+     * What an among command does when it finds a suffix of a group: replaces the slice by the string of the group,
+     * jumps to the address of the group or, if there are neither, only succeeds.
+     */
+    private static class AmongTable {
+        final SuffixTrie trie;
+        // labels until the program is linked, -1 - no address
+        final int[] addresses;
+        final String[] replacements;
+        final boolean[] conditional;
+
+        AmongTable(SuffixTrie trie, int[] addresses, String[] replacements, boolean[] conditional) {
+            this.trie = trie;
+            this.addresses = addresses;
+            this.replacements = replacements;
+            this.conditional = conditional;
+        }
+    }
+
+    private static class ReplaceSlice extends Command {
+        private final String str;
+
+        ReplaceSlice(String str) {
+            this.str = str;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.REPLACE, p.string(str));
+        }
+    }
+
+    private static class Append extends Command {
+        private final String str;
+
+        Append(String str) {
+            this.str = str;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.APPEND, p.string(str));
+        }
+    }
+
+    private static class BackwardString extends Command {
+        private final String str;
+
+        BackwardString(String str) {
+            this.str = str;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.STRING, p.string(str));
+            p.address(fail);
+        }
+    }
+
+    private static class BackwardChar extends Command {
+        private final Grouping grouping;
+        private final boolean non;
+
+        BackwardChar(Grouping grouping, boolean non) {
+            this.grouping = grouping;
+            this.non = non;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.CHAR, p.grouping(grouping), non ? 1 : 0);
+            p.address(fail);
+        }
+    }
+
+    private static class BackwardGoPast extends Command {
+        private final Grouping grouping;
+        private final boolean non;
+
+        BackwardGoPast(Grouping grouping, boolean non) {
+            this.grouping = grouping;
+            this.non = non;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.GOPAST, p.grouping(grouping), non ? 1 : 0);
+            p.address(fail);
+        }
+    }
+
+    private static class Hop extends Command {
+        private final int count;
+
+        Hop(int count) {
+            this.count = count;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.HOP, count);
+            p.address(fail);
+        }
+    }
+
+    private static class Inside extends Command {
+        private final int region;
+
+        Inside(int region) {
+            this.region = region;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.INSIDE, region);
+            p.address(fail);
+        }
+    }
+
+    private static class Empty extends Command {
+        private final int region;
+
+        Empty(int region) {
+            this.region = region;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.EMPTY, region);
+            p.address(fail);
+        }
+    }
+
+    private static class AtStart extends Command {
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.ATSTART);
+            p.address(fail);
+        }
+    }
+
+    private static class Word extends Command {
+        private final SuffixTrie words;
+
+        Word(SuffixTrie words) {
+            this.words = words;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            p.emit(Program.WORD, p.words(words));
+            p.address(fail);
+        }
+    }
+
+    private static class Try extends Command {
+        private final Command command;
+
+        Try(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int end = p.newLabel();
+            if (command.keepsCursor()) {
+                command.compile(p, end);
+                p.bind(end);
+                return;
+            }
+            int failed = p.newLabel();
+            int cursor = p.allocate();
+            p.emit(Program.SAVE, cursor);
+            command.compile(p, failed);
+            p.jump(end);
+            p.bind(failed);
+            p.emit(Program.RESTORE, cursor);
+            p.bind(end);
+            p.release(cursor);
+        }
+    }
+
+    /**
+     * Runs the command and restores the cursor.
+     */
+    private static class Test extends Command {
+        private final Command command;
+
+        Test(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        boolean keepsCursor() {
+            return command.keepsCursor();
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int cursor = p.allocate();
+            p.emit(Program.SAVE, cursor);
+            command.compile(p, fail);
+            p.emit(Program.RESTORE, cursor);
+            p.release(cursor);
+        }
+    }
+
+    private static class Not extends Command {
+        private final Command command;
+
+        Not(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int failed = p.newLabel();
+            int cursor = p.allocate();
+            p.emit(Program.SAVE, cursor);
+            command.compile(p, failed);
+            p.emit(Program.RESTORE, cursor);
+            p.jump(fail);
+            p.bind(failed);
+            p.emit(Program.RESTORE, cursor);
+            p.release(cursor);
+        }
+    }
+
+    private static class Sequence extends Command {
+        private final Command[] commands;
+
+        Sequence(Command[] commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        boolean keepsCursor() {
+            return false;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            for (Command command : commands) {
+                command.compile(p, fail);
+            }
+        }
+    }
+
+    private static class Alternatives extends Command {
+        private final Command[] alternatives;
+
+        Alternatives(Command[] alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        boolean keepsCursor() {
+            return alternatives[alternatives.length - 1].keepsCursor();
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            int end = p.newLabel();
+            int cursor = p.allocate();
+            for (int i = 0; i < alternatives.length - 1; i++) {
+                if (!alternatives[i].keepsCursor()) {
+                    p.emit(Program.SAVE, cursor);
+                    break;
+                }
+            }
+            for (int i = 0; i < alternatives.length - 1; i++) {
+                int failed = p.newLabel();
+                alternatives[i].compile(p, failed);
+                p.jump(end);
+                p.bind(failed);
+                if (!alternatives[i].keepsCursor()) {
+                    p.emit(Program.RESTORE, cursor);
+                }
+            }
+            alternatives[alternatives.length - 1].compile(p, fail);
+            p.bind(end);
+            p.release(cursor);
+        }
+    }
+
+    private static class Routine extends Command {
+        private final String name;
+        private final int line;
+        private Command body;
+        private boolean compiling;
+        private boolean checking;
+
+        Routine(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+
+        @Override
+        boolean keepsCursor() {
+            if (compiling || checking) {
+                return false;
+            }
+            checking = true;
+            boolean result = body.keepsCursor();
+            checking = false;
+            return result;
+        }
+
+        @Override
+        void compile(Program p, int fail) {
+            if (compiling) {
+                // a recursive routine stays a call
+                p.emit(Program.CALL);
+                p.address(p.function(this));
+                p.address(fail);
+            } else {
+                compileBody(p, fail);
+            }
+        }
+
+        void compileBody(Program p, int fail) {
+            compiling = true;
+            body.compile(p, fail);
+            compiling = false;
+        }
+    }
+
+    /**
+     * Regions and backward commands compiled into a table of instructions, so a word is stemmed by loops over it
+     * instead of calls of a tree of commands. An instruction is an operation code with its operands, the fail address
+     * is the last one. Positions which are restored later and limits of among commands are kept in registers; routines
+     * are compiled into each place they are called from, except a recursive one, which is called with its own
+     * registers.
+     */
+    private static class Program {
+        // operands: address
+        static final int JUMP = 0;
+        // operands: register
+        static final int SAVE = 1;
+        static final int RESTORE = 2;
+        static final int RESTORE_LIMIT = 3;
+        // operands: among table, region or -1, address of the next command, register of the limit (the next one
+        // keeps the cursor), fail
+        static final int AMONG = 4;
+        // operands: string
+        static final int REPLACE = 5;
+        static final int APPEND = 6;
+        // operands: string, fail
+        static final int STRING = 7;
+        // operands: grouping, 1 for non-, fail
+        static final int CHAR = 8;
+        static final int GOPAST = 9;
+        // operands: count, fail
+        static final int HOP = 10;
+        // operands: region, fail
+        static final int INSIDE = 11;
+        static final int EMPTY = 12;
+        // operands: fail
+        static final int ATSTART = 13;
+        // operands: words, fail
+        static final int WORD = 14;
+        // operands: address, fail
+        static final int CALL = 15;
+        // operands: 1 if the program succeeds
+        static final int RETURN = 16;
+        // forward instructions of regions, operands: grouping, 1 for non-, fail
+        static final int FORWARD_GOPAST = 17;
+        // operands: string, fail
+        static final int PREFIX = 18;
+        // operands: region
+        static final int FROM = 19;
+
+        private int[] code = new int[64];
+        private int size;
+        private int[] labels = new int[16];
+        private int labelsCount;
+        // positions of the code which hold labels until the program is linked
+        private final List<Integer> addresses = new ArrayList<Integer>();
+        private final Map<Routine, Integer> functions = new HashMap<Routine, Integer>();
+        private final List<Routine> routines = new ArrayList<Routine>();
+        private int routinesCompiled;
+        private int[] regionAddresses = new int[0];
+        private int registersCount;
+        private int registersUsed;
+
+        private final List<String> stringList = new ArrayList<String>();
+        private final List<Grouping> groupingList = new ArrayList<Grouping>();
+        private final List<AmongTable> amongList = new ArrayList<AmongTable>();
+        private final List<SuffixTrie> wordsList = new ArrayList<SuffixTrie>();
+        private String[] strings;
+        private Grouping[] groupings;
+        private AmongTable[] amongs;
+        private SuffixTrie[] words;
+
+        /**
+         * Compiles the region, which gets the next number.
+         */
+        void compileRegion(Forward region) {
+            regionAddresses = Arrays.copyOf(regionAddresses, regionAddresses.length + 1);
+            regionAddresses[regionAddresses.length - 1] = size;
+            int fail = newLabel();
+            registersUsed = 0;
+            region.compile(this, fail);
+            emitReturns(fail);
+        }
+
+        int regionsCount() {
+            return regionAddresses.length;
+        }
+
+        /**
+         * Compiles backward commands and returns their address.
+         */
+        int compileBackwards(Command command) {
+            int address = size;
+            int fail = newLabel();
+            registersUsed = 0;
+            command.compile(this, fail);
+            emitReturns(fail);
+            return address;
+        }
+
+        private void emitReturns(int fail) {
+            emit(RETURN, 1);
+            bind(fail);
+            emit(RETURN, 0);
+        }
+
+        /**
+         * Replaces labels by addresses, no instructions can be added then.
+         */
+        void link() {
+            while (routinesCompiled < routines.size()) {
+                Routine routine = routines.get(routinesCompiled++);
+                bind(functions.get(routine));
+                int fail = newLabel();
+                registersUsed = 0;
+                routine.compileBody(this, fail);
+                emitReturns(fail);
+            }
+            code = Arrays.copyOf(code, size);
+            for (int position : addresses) {
+                code[position] = labels[code[position]];
+            }
+            // a jump to a jump goes to its address at once
+            for (int position : addresses) {
+                code[position] = target(code[position]);
+            }
+            for (AmongTable among : amongList) {
+                for (int i = 0; i < among.addresses.length; i++) {
+                    if (among.addresses[i] >= 0) {
+                        among.addresses[i] = target(labels[among.addresses[i]]);
+                    }
+                }
+            }
+            strings = stringList.toArray(new String[stringList.size()]);
+            groupings = groupingList.toArray(new Grouping[groupingList.size()]);
+            amongs = amongList.toArray(new AmongTable[amongList.size()]);
+            words = wordsList.toArray(new SuffixTrie[wordsList.size()]);
+        }
+
+        private int target(int address) {
+            while (code[address] == JUMP) {
+                address = code[address + 1];
+            }
+            return address;
+        }
+
+        void emit(int... values) {
+            for (int value : values) {
+                if (size == code.length) {
+                    code = Arrays.copyOf(code, size * 2);
+                }
+                code[size++] = value;
+            }
+        }
+
+        /**
+         * Emits the address of the label, which may be bound later.
+         */
+        void address(int label) {
+            addresses.add(size);
+            emit(label);
+        }
+
+        void jump(int label) {
+            emit(JUMP);
+            address(label);
+        }
+
+        int newLabel() {
+            if (labelsCount == labels.length) {
+                labels = Arrays.copyOf(labels, labelsCount * 2);
+            }
+            labels[labelsCount] = -1;
+            return labelsCount++;
+        }
+
+        /**
+         * Puts the label at the next instruction.
+         */
+        void bind(int label) {
+            labels[label] = size;
+        }
+
+        int allocate() {
+            registersCount = Math.max(registersCount, registersUsed + 1);
+            return registersUsed++;
+        }
+
+        void release(int register) {
+            registersUsed = register;
+        }
+
+        int function(Routine routine) {
+            if (!functions.containsKey(routine)) {
+                functions.put(routine, newLabel());
+                routines.add(routine);
+            }
+            return functions.get(routine);
+        }
+
+        int string(String str) {
+            return indexOf(stringList, str);
+        }
+
+        int grouping(Grouping grouping) {
+            return indexOf(groupingList, grouping);
+        }
+
+        int among(AmongTable among) {
+            return indexOf(amongList, among);
+        }
+
+        int words(SuffixTrie trie) {
+            return indexOf(wordsList, trie);
+        }
+
+        private static <T> int indexOf(List<T> list, T value) {
+            int index = list.indexOf(value);
+            if (index < 0) {
+                list.add(value);
+                index = list.size() - 1;
+            }
+            return index;
+        }
+
+        /**
+         * Runs backward instructions from the address and returns whether they succeed.
+         */
+        boolean run(State s, int pc) {
+            int frame = allocateFrame(s);
+            int[] code = this.code;
+            int cursor = s.cursor;
+            int limit = s.limit;
+            while (true) {
+                switch (code[pc]) {
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case SAVE:
+                    s.registers[frame + code[pc + 1]] = cursor;
+                    pc += 2;
+                    break;
+                case RESTORE:
+                    cursor = s.registers[frame + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case RESTORE_LIMIT:
+                    limit = s.registers[frame + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case AMONG: {
+                    AmongTable among = amongs[code[pc + 1]];
+                    int region = code[pc + 2];
+                    // the region is found only if some string ends the word, and the strings are matched again in the
+                    // region only if the string begins before it or its condition string is found
+                    int from = limit;
+                    int node = among.trie.match(s.buf, from, s.len);
+                    if (node != 0 && region >= 0) {
+                        int start = s.regionStart(region);
+                        if (start > from) {
+                            from = start;
+                            if (s.len - among.trie.depthOf(Math.abs(node)) < from || node < 0) {
+                                node = among.trie.match(s.buf, from, s.len);
+                            }
+                        }
+                    }
+                    if (node == 0) {
+                        pc = code[pc + 5];
+                        break;
+                    }
+                    int group = among.trie.groupOf(Math.abs(node));
+                    s.sliceEnd = s.len;
+                    s.sliceStart = s.len - among.trie.depthOf(Math.abs(node));
+                    if (node > 0 && among.conditional[group]) {
+                        pc = code[pc + 5];
+                    } else if (among.replacements[group] != null) {
+                        String str = among.replacements[group];
+                        s.replace(s.sliceStart, s.sliceEnd, str);
+                        s.sliceEnd = s.sliceStart + str.length();
+                        cursor = s.sliceEnd;
+                        pc = code[pc + 3];
+                    } else if (among.addresses[group] < 0) {
+                        cursor = s.sliceStart;
+                        pc = code[pc + 3];
+                    } else {
+                        // the cursor can not leave the region while the command of the group runs, both are restored
+                        // if it fails
+                        s.registers[frame + code[pc + 4]] = limit;
+                        s.registers[frame + code[pc + 4] + 1] = cursor;
+                        limit = from;
+                        cursor = s.sliceStart;
+                        pc = among.addresses[group];
+                    }
+                    break;
+                }
+                case REPLACE: {
+                    String str = strings[code[pc + 1]];
+                    s.replace(s.sliceStart, s.sliceEnd, str);
+                    s.sliceEnd = s.sliceStart + str.length();
+                    cursor = s.sliceEnd;
+                    pc += 2;
+                    break;
+                }
+                case APPEND:
+                    s.replace(s.len, s.len, strings[code[pc + 1]]);
+                    cursor = s.len;
+                    pc += 2;
+                    break;
+                case STRING: {
+                    String str = strings[code[pc + 1]];
+                    int from = cursor - str.length();
+                    if (from < limit || !regionEquals(s, from, str)) {
+                        pc = code[pc + 2];
+                    } else {
+                        cursor = from;
+                        pc += 3;
+                    }
+                    break;
+                }
+                case CHAR:
+                    if (cursor <= limit || groupings[code[pc + 1]].contains(s.buf[cursor - 1]) == (code[pc + 2] != 0)) {
+                        pc = code[pc + 3];
+                    } else {
+                        cursor--;
+                        pc += 4;
+                    }
+                    break;
+                case GOPAST: {
+                    Grouping grouping = groupings[code[pc + 1]];
+                    boolean non = code[pc + 2] != 0;
+                    int i = cursor - 1;
+                    while (i >= limit && grouping.contains(s.buf[i]) == non) {
+                        i--;
+                    }
+                    if (i < limit) {
+                        pc = code[pc + 3];
+                    } else {
+                        cursor = i;
+                        pc += 4;
+                    }
+                    break;
+                }
+                case HOP:
+                    if (cursor - code[pc + 1] < limit) {
+                        pc = code[pc + 2];
+                    } else {
+                        cursor -= code[pc + 1];
+                        pc += 3;
+                    }
+                    break;
+                case INSIDE:
+                    pc = cursor >= s.regionStart(code[pc + 1]) ? pc + 3 : code[pc + 2];
+                    break;
+                case EMPTY:
+                    pc = s.regionStart(code[pc + 1]) >= s.len ? pc + 3 : code[pc + 2];
+                    break;
+                case ATSTART:
+                    pc = cursor == 0 ? pc + 2 : code[pc + 1];
+                    break;
+                case WORD: {
+                    SuffixTrie trie = words[code[pc + 1]];
+                    int node = trie.match(s.buf, 0, s.len);
+                    pc = node != 0 && trie.depthOf(node) == s.len ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case CALL: {
+                    s.cursor = cursor;
+                    s.limit = limit;
+                    boolean result = run(s, code[pc + 1]);
+                    cursor = s.cursor;
+                    pc = result ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case RETURN:
+                    s.cursor = cursor;
+                    s.limit = limit;
+                    s.top = frame;
+                    return code[pc + 1] != 0;
+                default:
+                    throw new IllegalStateException("unknown instruction " + code[pc]);
+                }
+            }
+        }
+
+        /**
+         * Runs forward instructions of the region and returns its start, -1 if they fail.
+         */
+        int move(State s, int region) {
+            int frame = allocateFrame(s);
+            int[] code = this.code;
+            int pc = regionAddresses[region];
+            int pos = 0;
+            int examined = s.examined;
+            while (true) {
+                switch (code[pc]) {
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case SAVE:
+                    s.registers[frame + code[pc + 1]] = pos;
+                    pc += 2;
+                    break;
+                case RESTORE:
+                    pos = s.registers[frame + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case FORWARD_GOPAST: {
+                    Grouping grouping = groupings[code[pc + 1]];
+                    boolean non = code[pc + 2] != 0;
+                    int i = pos;
+                    while (i < s.len && grouping.contains(s.buf[i]) == non) {
+                        i++;
+                    }
+                    if (i == s.len) {
+                        examined = s.len + 1;
+                        pc = code[pc + 3];
+                    } else {
+                        pos = i + 1;
+                        examined = Math.max(examined, pos);
+                        pc += 4;
+                    }
+                    break;
+                }
+                case PREFIX: {
+                    String prefix = strings[code[pc + 1]];
+                    // a prefix which does not fit also depends on the length of the word
+                    examined = Math.max(examined, Math.min(pos + prefix.length(), s.len + 1));
+                    if (regionEquals(s, pos, prefix)) {
+                        pos += prefix.length();
+                        pc += 3;
+                    } else {
+                        pc = code[pc + 2];
+                    }
+                    break;
+                }
+                case FROM:
+                    s.examined = examined;
+                    pos = s.regionStart(code[pc + 1]);
+                    examined = s.examined;
+                    pc += 2;
+                    break;
+                case RETURN:
+                    s.examined = examined;
+                    s.top = frame;
+                    return code[pc + 1] != 0 ? pos : -1;
+                default:
+                    throw new IllegalStateException("unknown instruction " + code[pc]);
+                }
+            }
+        }
+
+        /**
+         * Returns the first register of the instructions which start to run.
+         */
+        private int allocateFrame(State s) {
+            int frame = s.top;
+            s.top += registersCount;
+            if (s.registers.length < s.top) {
+                s.registers = Arrays.copyOf(s.registers, s.top * 2);
+            }
+            return frame;
+        }
+    }
+
+    private static class MinimumLength extends WordCommand {
+        private final int length;
+
+        MinimumLength(int length) {
+            this.length = length;
+        }
+
+        @Override
+        boolean run(State s) {
+            return s.len < length;
+        }
+    }
+
+    private static class DropPrefix extends WordCommand {
+        private final String prefix;
+
+        DropPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean run(State s) {
+            if (regionEquals(s, 0, prefix)) {
+                s.replace(0, prefix.length(), "");
+            }
+            return false;
+        }
+    }
+
+    private static class Exceptions extends WordCommand {
+        private final SuffixTrie words;
+        private final String[] stems;
+
+        Exceptions(SuffixTrie words, String[] stems) {
+            this.words = words;
+            this.stems = stems;
+        }
+
+        @Override
+        boolean run(State s) {
+            int node = words.match(s.buf, 0, s.len);
+            if (node == 0 || words.depthOf(node) != s.len) {
+                return false;
+            }
+            s.replace(0, s.len, stems[words.groupOf(node)]);
+            return true;
+        }
+    }
+
+    private static class ReplaceChar extends WordCommand {
+        private final char from;
+        private final char to;
+        private final boolean atStart;
+        // the char is replaced only after a char of the grouping, null - everywhere
+        private final Grouping after;
+
+        ReplaceChar(char from, char to, boolean atStart, Grouping after) {
+            this.from = from;
+            this.to = to;
+            this.atStart = atStart;
+            this.after = after;
+        }
+
+        @Override
+        boolean run(State s) {
+            int end = atStart ? Math.min(1, s.len) : s.len;
+            for (int i = 0; i < end; i++) {
+                if (s.buf[i] == from && (after == null || i > 0 && after.contains(s.buf[i - 1]))) {
+                    s.buf[i] = to;
+                    s.changed(i);
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Backwards extends WordCommand {
+        private final Command command;
+        private int address;
+
+        Backwards(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        void compile(Program p) {
+            address = p.compileBackwards(command);
+        }
+
+        @Override
+        boolean run(State s) {
+            s.program.run(s, address);
+            return false;
+        }
+    }
+
+    private static class Parser {
+        private final List<String> tokens = new ArrayList<String>();
+        // tokens which are strings, their quotes are removed
+        private final List<Boolean> quoted = new ArrayList<Boolean>();
+        private final List<Integer> lines = new ArrayList<Integer>();
+        private int pos;
+
+        private final Map<String, Grouping> groupings = new HashMap<String, Grouping>();
+        private final Map<String, Integer> regionIndexes = new HashMap<String, Integer>();
+        private final List<Forward> regions = new ArrayList<Forward>();
+        private final Map<String, Routine> routines = new HashMap<String, Routine>();
+        private final String rules;
+
+        Parser(String rules) {
+            this.rules = rules;
+            int line = 1;
+            int i = 0;
+            while (i < rules.length()) {
+                char c = rules.charAt(i);
+                if (c == '\n') {
+                    line++;
+                    i++;
+                } else if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '#') {
+                    while (i < rules.length() && rules.charAt(i) != '\n') {
+                        i++;
+                    }
+                } else if (c == '(' || c == ')') {
+                    add(String.valueOf(c), false, line);
+                    i++;
+                } else if (c == '\'' || c == '"') {
+                    int end = rules.indexOf(c, i + 1);
+                    if (end < 0 || rules.substring(i, end).indexOf('\n') >= 0) {
+                        throw new IllegalArgumentException("line " + line + ": unterminated string");
+                    }
+                    add(rules.substring(i + 1, end), true, line);
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < rules.length() && !Character.isWhitespace(rules.charAt(i))
+                            && "()'\"#".indexOf(rules.charAt(i)) < 0) {
+                        i++;
+                    }
+                    add(rules.substring(start, i), false, line);
+                }
+            }
+        }
+
+        private void add(String token, boolean isString, int line) {
+            tokens.add(token);
+            quoted.add(isString);
+            lines.add(line);
+        }
+
+        RuleStemmer parse() {
+            List<WordCommand> statements = new ArrayList<WordCommand>();
+            while (pos < tokens.size()) {
+                String keyword = name();
+                switch (keyword) {
+                case "define":
+                    String grouping = newName();
+                    groupings.put(grouping, new Grouping(string()));
+                    break;
+                case "region":
+                    String region = newName();
+                    expect("(");
+                    regions.add(forwardAlternatives());
+                    expect(")");
+                    regionIndexes.put(region, regions.size() - 1);
+                    break;
+                case "routine":
+                    Routine routine = routine(name());
+                    if (routine.body != null) {
+                        throw error("routine " + routine.name + " is already defined");
+                    }
+                    expect("(");
+                    routine.body = alternatives();
+                    expect(")");
+                    break;
+                case "minimum-length":
+                    statements.add(new MinimumLength(number()));
+                    break;
+                case "drop-prefix":
+                    statements.add(new DropPrefix(string()));
+                    break;
+                case "exceptions":
+                    List<String> words = new ArrayList<String>();
+                    List<Integer> indexes = new ArrayList<Integer>();
+                    List<String> stems = new ArrayList<String>();
+                    expect("(");
+                    while (!accept(")")) {
+                        words.add(string());
+                        indexes.add(stems.size());
+                        stems.add(string());
+                    }
+                    statements.add(new Exceptions(trie(words, indexes), stems.toArray(new String[stems.size()])));
+                    break;
+                case "replace":
+                    char from = charString();
+                    char to = charString();
+                    boolean atStart = accept("at-start");
+                    Grouping after = !atStart && accept("after") ? grouping(name()) : null;
+                    statements.add(new ReplaceChar(from, to, atStart, after));
+                    break;
+                case "backwards":
+                    expect("(");
+                    statements.add(new Backwards(alternatives()));
+                    expect(")");
+                    break;
+                default:
+                    pos--;
+                    throw error("unknown declaration or word command " + keyword);
+                }
+            }
+            for (Routine routine : routines.values()) {
+                if (routine.body == null) {
+                    throw new IllegalArgumentException("line " + routine.line + ": routine " + routine.name
+                            + " is not defined");
+                }
+            }
+            Program program = new Program();
+            for (Forward region : regions) {
+                program.compileRegion(region);
+            }
+            for (WordCommand statement : statements) {
+                statement.compile(program);
+            }
+            program.link();
+            return new RuleStemmer(statements.toArray(new WordCommand[statements.size()]), program, rules);
+        }
+
+        private Forward forwardAlternatives() {
+            List<Forward> alternatives = new ArrayList<Forward>();
+            do {
+                List<Forward> commands = new ArrayList<Forward>();
+                while (pos < tokens.size() && !peek(")") && !peek("or")) {
+                    commands.add(forward());
+                }
+                if (commands.isEmpty()) {
+                    throw error("region command expected");
+                }
+                alternatives.add(commands.size() == 1 ? commands.get(0) : new ForwardSequence(
+                        commands.toArray(new Forward[commands.size()])));
+            } while (accept("or"));
+            return alternatives.size() == 1 ? alternatives.get(0) : new ForwardAlternatives(
+                    alternatives.toArray(new Forward[alternatives.size()]));
+        }
+
+        private Forward forward() {
+            if (accept("(")) {
+                Forward result = forwardAlternatives();
+                expect(")");
+                return result;
+            }
+            String keyword = name();
+            switch (keyword) {
+            case "gopast":
+                String target = name();
+                return new GoPast(grouping(target.replaceFirst("^non-", "")), target.startsWith("non-"));
+            case "prefix":
+                expect("(");
+                List<String> prefixes = new ArrayList<String>();
+                while (!accept(")")) {
+                    prefixes.add(string());
+                }
+                return new Prefix(prefixes.toArray(new String[prefixes.size()]));
+            case "from":
+                return new From(region(name()));
+            default:
+                pos--;
+                throw error("unknown region command " + keyword);
+            }
+        }
+
+        private Command alternatives() {
+            List<Command> alternatives = new ArrayList<Command>();
+            do {
+                List<Command> commands = new ArrayList<Command>();
+                while (pos < tokens.size() && !peek(")") && !peek("or")) {
+                    commands.add(command());
+                }
+                if (commands.isEmpty()) {
+                    throw error("command expected");
+                }
+                alternatives.add(commands.size() == 1 ? commands.get(0) : new Sequence(
+                        commands.toArray(new Command[commands.size()])));
+            } while (accept("or"));
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternatives(
+                    alternatives.toArray(new Command[alternatives.size()]));
+        }
+
+        private Command command() {
+            if (accept("(")) {
+                Command result = alternatives();
+                expect(")");
+                return result;
+            }
+            if (quoted.get(pos)) {
+                return new BackwardString(string());
+            }
+            String keyword = name();
+            switch (keyword) {
+            case "among":
+                return among();
+            case "delete":
+                return new ReplaceSlice("");
+            case "<-":
+                return new ReplaceSlice(string());
+            case "append":
+                return new Append(string());
+            case "hop":
+                return new Hop(number());
+            case "gopast":
+                String target = name();
+                return new BackwardGoPast(grouping(target.replaceFirst("^non-", "")), target.startsWith("non-"));
+            case "inside":
+                return new Inside(region(name()));
+            case "empty":
+                return new Empty(region(name()));
+            case "atstart":
+                return new AtStart();
+            case "word":
+                expect("(");
+                List<String> words = new ArrayList<String>();
+                List<Integer> indexes = new ArrayList<Integer>();
+                while (!accept(")")) {
+                    words.add(string());
+                    indexes.add(0);
+                }
+                return new Word(trie(words, indexes));
+            case "try":
+                return new Try(command());
+            case "not":
+                return new Not(command());
+            case "test":
+                return new Test(command());
+            case "do":
+                return new Try(new Test(command()));
+            default:
+                boolean non = keyword.startsWith("non-");
+                String name = non ? keyword.substring(4) : keyword;
+                if (groupings.containsKey(name)) {
+                    return new BackwardChar(groupings.get(name), non);
+                }
+                if (non) {
+                    pos--;
+                    throw error("unknown grouping " + name);
+                }
+                return routine(keyword);
+            }
+        }
+
+        private Command among() {
+            int region = accept("in") ? region(name()) : -1;
+            expect("(");
+            List<String> suffixes = new ArrayList<String>();
+            List<Integer> groups = new ArrayList<Integer>();
+            List<Command> commands = new ArrayList<Command>();
+            // suffixes get the command which follows them, the last ones may have no command
+            int groupSize = 0;
+            while (!accept(")")) {
+                if (accept("(")) {
+                    if (groupSize == 0) {
+                        pos--;
+                        throw error("suffix expected");
+                    }
+                    commands.add(alternatives());
+                    expect(")");
+                    groupSize = 0;
+                } else {
+                    suffixes.add(string());
+                    groups.add(commands.size());
+                    groupSize++;
+                }
+            }
+            if (groupSize > 0) {
+                commands.add(null);
+            }
+            if (suffixes.isEmpty()) {
+                throw error("suffix expected");
+            }
+            // strings which are checked before a suffix, which is replaced then, are found by the trie with it
+            boolean[] conditional = new boolean[commands.size()];
+            String[][] groupConditions = new String[commands.size()][];
+            for (int i = 0; i < commands.size(); i++) {
+                groupConditions[i] = conditions(commands.get(i));
+                if (groupConditions[i] != null) {
+                    conditional[i] = true;
+                    commands.set(i, ((Sequence) commands.get(i)).commands[1]);
+                }
+            }
+            List<String[]> conditions = new ArrayList<String[]>();
+            for (int group : groups) {
+                conditions.add(groupConditions[group]);
+            }
+            return new Among(region, trie(suffixes, groups, conditions), commands.toArray(new Command[commands.size()]),
+                    conditional);
+        }
+
+        /**
+         * Returns strings of the command if it is ('s1' or 's2' ...) followed by delete or &lt;-, null otherwise.
+         */
+        private String[] conditions(Command command) {
+            if (!(command instanceof Sequence) || ((Sequence) command).commands.length != 2
+                    || !(((Sequence) command).commands[1] instanceof ReplaceSlice)) {
+                return null;
+            }
+            Command condition = ((Sequence) command).commands[0];
+            Command[] alternatives = condition instanceof Alternatives ? ((Alternatives) condition).alternatives
+                    : new Command[] { condition };
+            String[] strings = new String[alternatives.length];
+            for (int i = 0; i < alternatives.length; i++) {
+                if (!(alternatives[i] instanceof BackwardString) || ((BackwardString) alternatives[i]).str.isEmpty()) {
+                    return null;
+                }
+                strings[i] = ((BackwardString) alternatives[i]).str;
+            }
+            return strings;
+        }
+
+        private SuffixTrie trie(List<String> strings, List<Integer> groups) {
+            return trie(strings, groups, null);
+        }
+
+        private SuffixTrie trie(List<String> strings, List<Integer> groups, List<String[]> conditions) {
+            try {
+                return new SuffixTrie(strings, groups, conditions);
+            } catch (IllegalArgumentException e) {
+                throw error(e.getMessage());
+            }
+        }
+
+        private Routine routine(String name) {
+            Routine routine = routines.get(name);
+            if (routine == null) {
+                routine = new Routine(name, lines.get(pos - 1));
+                routines.put(name, routine);
+            }
+            return routine;
+        }
+
+        private Grouping grouping(String name) {
+            Grouping grouping = groupings.get(name);
+            if (grouping == null) {
+                pos--;
+                throw error("unknown grouping " + name);
+            }
+            return grouping;
+        }
+
+        private int region(String name) {
+            Integer region = regionIndexes.get(name);
+            if (region == null) {
+                pos--;
+                throw error("unknown region " + name);
+            }
+            return region;
+        }
+
+        private String newName() {
+            String name = name();
+            if (name.startsWith("non-") || groupings.containsKey(name) || regionIndexes.containsKey(name)) {
+                pos--;
+                throw error("bad or repeated name " + name);
+            }
+            return name;
+        }
+
+        private boolean peek(String token) {
+            return pos < tokens.size() && !quoted.get(pos) && tokens.get(pos).equals(token);
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error(token + " expected");
+            }
+        }
+
+        private String name() {
+            if (pos == tokens.size() || quoted.get(pos) || peek("(") || peek(")")) {
+                throw error("name expected");
+            }
+            return tokens.get(pos++);
+        }
+
+        private String string() {
+            if (pos == tokens.size() || !quoted.get(pos)) {
+                throw error("string expected");
+            }
+            return tokens.get(pos++);
+        }
+
+        private char charString() {
+            String str = string();
+            if (str.length() != 1) {
+                pos--;
+                throw error("one char expected");
+            }
+            return str.charAt(0);
+        }
+
+        private int number() {
+            String str = name();
+            try {
+                return Integer.parseInt(str);
+            } catch (NumberFormatException e) {
+                pos--;
+                throw error("number expected");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            int line = lines.isEmpty() ? 1 : lines.get(Math.min(pos, lines.size() - 1));
+            return new IllegalArgumentException("line " + line + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package stemming;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of stemmed forms keyed by normalized strings (see {@link GeneralStemmer#normalize(String)}). It can be
+ * shared by any number of threads.
+ * <p>
+ * Keys are spread over segments with their own locks. Each segment is a segmented LRU: a new entry gets into the
+ * probation part, and a hit moves it to the protected part, which takes up to 80% of the segment. Entries which fall
+ * out of the protected part go back to probation, and entries are evicted from the probation part first. So forms
+ * which are met only once do not push out the ones which repeat.
+ * <p>
+ * The size is limited by the number of entries and optionally by the weight, which is the number of chars in keys and
+ * stemmed forms.
+ */
+public class StemCache {
+
+    private static final int SEGMENTS_COUNT = 16;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Cache of at most maxEntries entries of any weight.
+     */
+    public StemCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    public StemCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("maxEntries: " + maxEntries + " | maxWeight: " + maxWeight);
+        }
+        // limits are split between segments, an entry heavier than the weight limit of its segment is not kept; small
+        // limits get fewer segments (a power of 2), so that each one gets at least 1 and the sum is the limit
+        int segmentsCount = Integer.highestOneBit((int) Math.min(SEGMENTS_COUNT, Math.min(maxEntries, maxWeight)));
+        segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment((maxEntries + i) / segmentsCount,
+                    maxWeight == Long.MAX_VALUE ? maxWeight : (maxWeight + i) / segmentsCount);
+        }
+    }
+
+    /**
+     * Returns stemmed forms of the normalized string, null if they are not in the cache.
+     */
+    public List<String> get(String normalized) {
+        List<String> stems = segmentFor(normalized).get(normalized);
+        if (stems == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return stems;
+    }
+
+    /**
+     * Puts stemmed forms of the normalized string into the cache. The list must not be modified afterwards.
+     */
+    public void put(String normalized, List<String> stems) {
+        int evicted = segmentFor(normalized).put(normalized, stems);
+        if (evicted > 0) {
+            evictions.addAndGet(evicted);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + " | weight: " + weight() + " | hits: " + getHits() + " | misses: " + getMisses()
+                + " | evictions: " + getEvictions();
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    static int weightOf(String key, List<String> stems) {
+        int weight = key.length();
+        for (String stem : stems) {
+            weight += stem.length();
+        }
+        return weight;
+    }
+
+    private static class Segment {
+        private final int maxEntries;
+        private final int maxProtected;
+        private final long maxWeight;
+
+        // both maps are in the order from the least to the most recently used entry
+        private final LinkedHashMap<String, List<String>> probation = new LinkedHashMap<String, List<String>>();
+        private final LinkedHashMap<String, List<String>> protectedPart = new LinkedHashMap<String, List<String>>(16,
+                0.75f, true);
+        private long weight;
+
+        Segment(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxProtected = Math.max(1, maxEntries * 4 / 5);
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized List<String> get(String key) {
+            List<String> stems = protectedPart.get(key);
+            if (stems != null) {
+                return stems;
+            }
+            stems = probation.remove(key);
+            if (stems != null) {
+                // the second use: the entry is protected now, the least used protected one goes back to probation
+                protectedPart.put(key, stems);
+                if (protectedPart.size() > maxProtected) {
+                    Iterator<Map.Entry<String, List<String>>> itr = protectedPart.entrySet().iterator();
+                    Map.Entry<String, List<String>> eldest = itr.next();
+                    itr.remove();
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+            return stems;
+        }
+
+        /**
+         * Returns the number of evicted entries.
+         */
+        synchronized int put(String key, List<String> stems) {
+            List<String> old = protectedPart.containsKey(key) ? protectedPart.put(key, stems) : probation.put(key,
+                    stems);
+            if (old != null) {
+                weight -= weightOf(key, old);
+            }
+            weight += weightOf(key, stems);
+
+            int evicted = 0;
+            while (size() > maxEntries || weight > maxWeight) {
+                LinkedHashMap<String, List<String>> victims = probation.isEmpty() ? protectedPart : probation;
+                Iterator<Map.Entry<String, List<String>>> itr = victims.entrySet().iterator();
+                Map.Entry<String, List<String>> eldest = itr.next();
+                itr.remove();
+                weight -= weightOf(eldest.getKey(), eldest.getValue());
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedPart.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package stemming;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Stemmed forms of normalized strings (see {@link GeneralStemmer#normalize(String)}) kept on disk between runs, so a
+ * vocabulary which was stemmed once is not stemmed again. Any number of processes can open it at once: the first one
+ * appends new entries and the others only read them (see {@link #isWriter()}), entries appended by the writer become
+ * visible to the readers right away. It can be shared by any number of threads.
+ * <p>
+ * It is two files: an append-only log of entries and a hash index of their offsets in the log, both are memory-mapped
+ * and read in place. Each entry records the version of stemmed forms it was made with (see
+ * {@link GeneralStemmer#getVersion()}). Entries of another version are stale: they are not returned, and new ones for
+ * their keys are appended to the log and replace them in the index.
+ * <p>
+ * Layout (all numbers are big-endian, strings are UTF-8):
+ *
+ * <pre>
+ * log:         MAGIC, FORMAT, reserved long, then entries
+ * log entry:   int length of the rest, int CRC32 of the rest, long version, int length and bytes of the key,
+ *              int number of stemmed forms, then int length and bytes of each of them
+ * index:       MAGIC, FORMAT, long table, long committed size of the log, long number of entries, 2 reserved longs,
+ *              then tables
+ * index table: slots of long offset of an entry in the log (0 - empty slot), int hash code of its key, reserved int
+ * </pre>
+ *
+ * The table is log2 of its number of slots in the highest byte and its offset in the index file in the rest. When the
+ * table is half full the writer appends a twice larger one to the index file and then switches to it, so readers never
+ * see a table which is being filled. An entry is published by writing it into the log, then moving the committed size
+ * of the log, then setting its slot, so no slot refers to an incomplete entry. The writer extends the log file ahead
+ * by chunks, nothing beyond the committed size is read, and if the writer dies, what it wrote there is overwritten by
+ * the next one.
+ * <p>
+ * Each file is limited to 2 GB, entries which do not fit are not stored.
+ */
+public class StemStore implements Closeable {
+
+    private static final int MAGIC_LOG = 0x5954534C; // "YTSL"
+    private static final int MAGIC_INDEX = 0x59545349; // "YTSI"
+    private static final int FORMAT = 1;
+
+    private static final int LOG_HEADER_SIZE = 16;
+    private static final int INDEX_HEADER_SIZE = 48;
+    private static final int TABLE = 8;
+    private static final int LOG_SIZE = 16;
+    private static final int ENTRIES_COUNT = 24;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_TABLE_BITS = 10;
+    private static final long OFFSET_MASK = (1L << 56) - 1;
+    // the writer extends the log by at least this number of bytes at once
+    private static final int LOG_CHUNK = 1 << 20;
+
+    private final long version;
+    private final RandomAccessFile logFile;
+    private final RandomAccessFile indexFile;
+    // lock of the writer, null - the store is only read
+    private final FileLock lock;
+
+    // mappings of the files, they are replaced by larger ones when the files grow
+    private volatile MappedByteBuffer log;
+    private volatile MappedByteBuffer index;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    private StemStore(long version, RandomAccessFile logFile, RandomAccessFile indexFile, FileLock lock) {
+        this.version = version;
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the store kept in the files with the given path and suffixes ".log" and ".idx", they are created if there
+     * are no such files. Stemmed forms of other versions than the given one are treated as missing. The store is
+     * opened for writing if no other store of these files is opened for writing, by this process or by another one,
+     * otherwise it is only read.
+     */
+    public static StemStore open(String path, long version) throws IOException {
+        RandomAccessFile logFile;
+        RandomAccessFile indexFile;
+        try {
+            logFile = new RandomAccessFile(path + ".log", "rw");
+            indexFile = new RandomAccessFile(path + ".idx", "rw");
+        } catch (FileNotFoundException e) {
+            // no rights to write
+            logFile = new RandomAccessFile(path + ".log", "r");
+            indexFile = new RandomAccessFile(path + ".idx", "r");
+        }
+
+        FileLock lock = null;
+        try {
+            // a byte far beyond the end of the index is locked, so the lock does not stop anybody from reading
+            lock = indexFile.getChannel().tryLock(Long.MAX_VALUE - 1, 1, false);
+        } catch (OverlappingFileLockException e) {
+            // another store of this process writes
+        } catch (IOException e) {
+            // the file is opened only for reading
+        }
+
+        StemStore store = new StemStore(version, logFile, indexFile, lock);
+        try {
+            if (lock != null) {
+                store.prepareForWriting();
+            } else {
+                store.index = map(indexFile, FileChannel.MapMode.READ_ONLY, indexFile.length());
+                store.log = map(logFile, FileChannel.MapMode.READ_ONLY, logFile.length());
+            }
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, FileChannel.MapMode mode, long size)
+            throws IOException {
+        return file.getChannel().map(mode, 0, Math.min(size, Integer.MAX_VALUE));
+    }
+
+    // creates new files unless there is a sound store
+    private void prepareForWriting() throws IOException {
+        long committed = -1;
+        if (indexFile.length() >= INDEX_HEADER_SIZE && logFile.length() >= LOG_HEADER_SIZE) {
+            index = map(indexFile, FileChannel.MapMode.READ_WRITE, indexFile.length());
+            log = map(logFile, FileChannel.MapMode.READ_WRITE, logFile.length());
+            if (index.getInt(0) == MAGIC_INDEX && index.getInt(4) == FORMAT && log.getInt(0) == MAGIC_LOG
+                    && log.getInt(4) == FORMAT && index.getLong(LOG_SIZE) <= logFile.length()) {
+                committed = index.getLong(LOG_SIZE);
+            }
+        }
+        if (committed < 0) {
+            // no store or a broken one, it is only a cache so it is started anew
+            logFile.setLength(0);
+            indexFile.setLength(0);
+            log = map(logFile, FileChannel.MapMode.READ_WRITE, LOG_CHUNK);
+            log.putInt(0, MAGIC_LOG);
+            log.putInt(4, FORMAT);
+            index = map(indexFile, FileChannel.MapMode.READ_WRITE,
+                    INDEX_HEADER_SIZE + (SLOT_SIZE << INITIAL_TABLE_BITS));
+            index.putLong(TABLE, (long) INITIAL_TABLE_BITS << 56 | INDEX_HEADER_SIZE);
+            index.putLong(LOG_SIZE, LOG_HEADER_SIZE);
+            index.putLong(ENTRIES_COUNT, 0);
+            index.putInt(4, FORMAT);
+            index.putInt(0, MAGIC_INDEX);
+        }
+    }
+
+    /**
+     * Returns true if new entries are stored, false if the store is only read.
+     */
+    public boolean isWriter() {
+        return lock != null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns stemmed forms of the normalized string, null if they are not stored or are stale.
+     */
+    public List<String> get(String normalized) {
+        int slot = find(normalized);
+        long offset = slot < 0 ? 0 : index.getLong(slot);
+        if (offset == 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+        ByteBuffer entry = entry(offset);
+        if (entry.getLong(8) != version) {
+            stale.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        int keyLength = entry.getInt(16);
+        int pos = 20 + keyLength;
+        int count = entry.getInt(pos);
+        pos += 4;
+        List<String> stems = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int length = entry.getInt(pos);
+            stems.add(string(entry, pos + 4, length));
+            pos += 4 + length;
+        }
+        return stems;
+    }
+
+    /**
+     * Stores stemmed forms of the normalized string unless the store is only read or the same version of them is
+     * already stored.
+     */
+    public synchronized void put(String normalized, List<String> stems) throws IOException {
+        if (lock == null) {
+            return;
+        }
+        int slot = find(normalized);
+        if (slot < 0) {
+            return;
+        }
+        long old = index.getLong(slot);
+        if (old != 0 && entry(old).getLong(8) == version) {
+            return;
+        }
+
+        byte[] key = normalized.getBytes(StandardCharsets.UTF_8);
+        byte[][] stemBytes = new byte[stems.size()][];
+        int length = 8 + 4 + key.length + 4;
+        for (int i = 0; i < stemBytes.length; i++) {
+            stemBytes[i] = stems.get(i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + stemBytes[i].length;
+        }
+        long offset = index.getLong(LOG_SIZE);
+        if (offset + 8 + length > Integer.MAX_VALUE) {
+            return;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(8 + length);
+        entry.putInt(length);
+        entry.putInt(0);
+        entry.putLong(version);
+        entry.putInt(key.length);
+        entry.put(key);
+        entry.putInt(stemBytes.length);
+        for (byte[] stem : stemBytes) {
+            entry.putInt(stem.length);
+            entry.put(stem);
+        }
+        entry.putInt(4, checksum(entry, 8, length));
+
+        // the entry, the committed size of the log, then the slot
+        MappedByteBuffer logBuffer = log;
+        if (offset + entry.capacity() > logBuffer.capacity()) {
+            logBuffer = map(logFile, FileChannel.MapMode.READ_WRITE,
+                    Math.max(offset + entry.capacity(), Math.min(2L * logBuffer.capacity(), logBuffer.capacity()
+                            + 64L * LOG_CHUNK)));
+            log = logBuffer;
+        }
+        entry.flip();
+        ByteBuffer target = logBuffer.duplicate();
+        target.position((int) offset);
+        target.put(entry);
+        index.putLong(LOG_SIZE, offset + entry.capacity());
+        if (old == 0) {
+            index.putInt(slot + 8, hash(normalized));
+            index.putLong(slot, offset);
+            long entriesCount = index.getLong(ENTRIES_COUNT) + 1;
+            index.putLong(ENTRIES_COUNT, entriesCount);
+            if (entriesCount * 2 > 1L << (index.getLong(TABLE) >>> 56)) {
+                grow();
+            }
+        } else {
+            index.putLong(slot, offset);
+        }
+    }
+
+    // appends a twice larger table to the index and switches to it
+    private void grow() throws IOException {
+        long table = index.getLong(TABLE);
+        int bits = (int) (table >>> 56);
+        int start = (int) (table & OFFSET_MASK);
+        long newStart = start + ((long) SLOT_SIZE << bits);
+        long newEnd = newStart + ((long) SLOT_SIZE << (bits + 1));
+        if (newEnd > Integer.MAX_VALUE) {
+            // the table stays as it is, probing just gets longer
+            return;
+        }
+        MappedByteBuffer newIndex = map(indexFile, FileChannel.MapMode.READ_WRITE, newEnd);
+        int mask = (1 << (bits + 1)) - 1;
+        for (int i = 0; i < 1 << bits; i++) {
+            long offset = newIndex.getLong(start + i * SLOT_SIZE);
+            if (offset != 0) {
+                int hash = newIndex.getInt(start + i * SLOT_SIZE + 8);
+                int j = hash & mask;
+                while (newIndex.getLong((int) newStart + j * SLOT_SIZE) != 0) {
+                    j = (j + 1) & mask;
+                }
+                newIndex.putInt((int) newStart + j * SLOT_SIZE + 8, hash);
+                newIndex.putLong((int) newStart + j * SLOT_SIZE, offset);
+            }
+        }
+        newIndex.putLong(TABLE, (long) (bits + 1) << 56 | newStart);
+        index = newIndex;
+    }
+
+    /**
+     * Returns the position in the index of the slot of the key or of the empty slot where it would be put, -1 if the
+     * index is not created yet or is full.
+     */
+    private int find(String normalized) {
+        MappedByteBuffer indexBuffer = index;
+        if (indexBuffer.capacity() < INDEX_HEADER_SIZE || indexBuffer.getInt(0) != MAGIC_INDEX) {
+            // the writer has not created it yet
+            indexBuffer = remapIndex(INDEX_HEADER_SIZE);
+            if (indexBuffer.capacity() < INDEX_HEADER_SIZE || indexBuffer.getInt(0) != MAGIC_INDEX) {
+                return -1;
+            }
+        }
+        long table = indexBuffer.getLong(TABLE);
+        int bits = (int) (table >>> 56);
+        long start = table & OFFSET_MASK;
+        if (start + ((long) SLOT_SIZE << bits) > indexBuffer.capacity()) {
+            indexBuffer = remapIndex(start + ((long) SLOT_SIZE << bits));
+            if (start + ((long) SLOT_SIZE << bits) > indexBuffer.capacity()) {
+                return -1;
+            }
+        }
+
+        int hash = hash(normalized);
+        byte[] key = null;
+        int mask = (1 << bits) - 1;
+        for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            int slot = (int) start + i * SLOT_SIZE;
+            long offset = indexBuffer.getLong(slot);
+            if (offset == 0) {
+                return slot;
+            }
+            if (indexBuffer.getInt(slot + 8) == hash) {
+                if (key == null) {
+                    key = normalized.getBytes(StandardCharsets.UTF_8);
+                }
+                if (hasKey(entry(offset), key)) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(String normalized) {
+        int h = normalized.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // the entry at the offset in the log, its position is 0
+    private ByteBuffer entry(long offset) {
+        MappedByteBuffer logBuffer = log;
+        if (offset + 8 > logBuffer.capacity()) {
+            logBuffer = remapLog(offset + 8);
+        }
+        int length = logBuffer.getInt((int) offset);
+        if (offset + 8 + length > logBuffer.capacity()) {
+            logBuffer = remapLog(offset + 8 + length);
+        }
+        ByteBuffer entry = logBuffer.duplicate();
+        entry.position((int) offset);
+        entry.limit((int) offset + 8 + length);
+        return entry.slice();
+    }
+
+    private static boolean hasKey(ByteBuffer entry, byte[] key) {
+        if (entry.getInt(16) != key.length || entry.getInt(4) != checksum(entry, 8, entry.getInt(0))) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (entry.get(20 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(from + length);
+        bytes.position(from);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static String string(ByteBuffer buffer, int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // the files grow while they are read, so they are mapped again
+    private synchronized MappedByteBuffer remapIndex(long size) {
+        try {
+            if (index.capacity() < size && indexFile.length() > index.capacity()) {
+                index = map(indexFile, isWriter() ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        indexFile.length());
+            }
+        } catch (IOException e) {
+            // the old mapping stays, the key is just not found
+        }
+        return index;
+    }
+
+    private synchronized MappedByteBuffer remapLog(long size) {
+        try {
+            if (log.capacity() < size && logFile.length() > log.capacity()) {
+                log = map(logFile, isWriter() ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        logFile.length());
+            }
+        } catch (IOException e) {
+            // the old mapping stays
+        }
+        if (log.capacity() < size) {
+            throw new IllegalStateException("log entry beyond the end of the file");
+        }
+        return log;
+    }
+
+    /**
+     * Returns the number of stored entries, stale ones included.
+     */
+    public long size() {
+        MappedByteBuffer indexBuffer = index;
+        return indexBuffer.capacity() < INDEX_HEADER_SIZE ? 0 : indexBuffer.getLong(ENTRIES_COUNT);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of lookups which found entries of another version.
+     */
+    public long getStale() {
+        return stale.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + " | hits: " + getHits() + " | misses: " + getMisses() + " | stale: " + getStale();
+    }
+
+    /**
+     * Closes the files. The writer saves everything to disk and cuts the log to its committed size.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (lock != null && index != null && log != null) {
+                log.force();
+                index.force();
+                try {
+                    logFile.setLength(index.getLong(LOG_SIZE));
+                } catch (IOException e) {
+                    // some systems do not cut mapped files, the rest is cut at the next opening
+                }
+                lock.release();
+            }
+        } finally {
+            try {
+                logFile.close();
+            } finally {
+                indexFile.close();
+            }
+        }
+    }
+}
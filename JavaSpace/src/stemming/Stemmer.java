@@ -0,0 +1,9 @@
+package stemming;
+
+/**
+ * Stemmer of one language, it gets a lower case word of the letters of its alphabet (see {@link GeneralStemmer}).
+ */
+public interface Stemmer {
+
+    String stem(String word);
+}
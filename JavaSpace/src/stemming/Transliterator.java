@@ -0,0 +1,222 @@
+package stemming;
+
+import java.util.Arrays;
+
+/**
+ * Transliterates letters of one alphabet to another by a table of lower case strings and their replacements, e.g. "sh"
+ * -> "ш". The strings are kept in a trie, and a table by chars tells which of them are replaced right away because
+ * no longer string starts with them, so the trie is walked only at the rest. Upper case is kept: a replacement of an
+ * upper case letter starts with an upper case char, and it is all upper case inside an upper case run.
+ */
+public class Transliterator {
+
+    public static final Transliterator CYRILLIC_TO_LATIN = new Transliterator('а', 'я', new String[][] {
+            { "а", "a" }, { "б", "b" }, { "в", "v" }, { "г", "g" }, { "д", "d" }, { "е", "e" }, { "ж", "zh" },
+            { "з", "z" }, { "и", "i" }, { "й", "y" }, { "к", "k" }, { "л", "l" }, { "м", "m" }, { "н", "n" },
+            { "о", "o" }, { "п", "p" }, { "р", "r" }, { "с", "s" }, { "т", "t" }, { "у", "u" }, { "ф", "f" },
+            { "х", "kh" }, { "ц", "ts" }, { "ч", "ch" }, { "ш", "sh" }, { "щ", "shch" }, { "ъ", "" }, { "ы", "y" },
+            { "ь", "" }, { "э", "e" }, { "ю", "yu" }, { "я", "ya" },
+            { "кс", "x" }, { "ий", "y" }, { "ый", "y" } });
+
+    public static final Transliterator LATIN_TO_CYRILLIC = new Transliterator('a', 'z', new String[][] {
+            { "a", "а" }, { "b", "б" }, { "c", "к" }, { "d", "д" }, { "e", "е" }, { "f", "ф" }, { "g", "г" },
+            { "h", "х" }, { "i", "и" }, { "j", "дж" }, { "k", "к" }, { "l", "л" }, { "m", "м" }, { "n", "н" },
+            { "o", "о" }, { "p", "п" }, { "q", "к" }, { "r", "р" }, { "s", "с" }, { "t", "т" }, { "u", "у" },
+            { "v", "в" }, { "w", "в" }, { "x", "кс" }, { "y", "и" }, { "z", "з" },
+            { "shch", "щ" }, { "sh", "ш" }, { "ch", "ч" }, { "zh", "ж" }, { "kh", "х" }, { "ts", "ц" },
+            { "ph", "ф" }, { "ck", "к" }, { "ee", "и" }, { "oo", "у" }, { "ya", "я" }, { "yu", "ю" }, { "yo", "е" },
+            { "ye", "е" }, { "ay", "ай" }, { "ey", "ей" }, { "oy", "ой" }, { "uy", "уй" } });
+
+    // first chars of the lower and upper case source alphabet, which has the same order in both cases
+    private final char first;
+    private final char upperCaseFirst;
+    private final int alphabet;
+    // both cases of the alphabet are within chars from low to low + width - 1
+    private final char low;
+    private final int width;
+    // children of node n are next[n * width + c - low], a letter of either case leads to the same child, 0 - no child
+    // (the root is never a child)
+    private int[] next;
+    // replacement of the string which ends in the node in lower case, capitalized and in upper case, null - no string
+    // ends there
+    private char[][] replacements;
+    private char[][] capitalizedReplacements;
+    private char[][] upperCaseReplacements;
+    private int nodesCount = 1;
+    private int maxReplacementLength;
+    // what is done with chars from low on: 0 - nothing, WALK with the node of the char - the trie is walked, DIRECT
+    // with the length of the replacement shifted left by 48 bits and up to 3 its chars by 16 bits from the lowest ones
+    // - the char is replaced right away
+    private final long[] actions;
+    private static final long WALK = 1L << 62;
+    private static final long DIRECT = 1L << 61;
+
+    // buffers of transliterated chars
+    private final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    /**
+     * The table is pairs of lower case strings of chars from first to last and their lower case replacements.
+     */
+    public Transliterator(char first, char last, String[][] table) {
+        this.first = first;
+        this.upperCaseFirst = Character.toUpperCase(first);
+        this.alphabet = last - first + 1;
+        this.low = (char) Math.min(first, upperCaseFirst);
+        this.width = Math.max(first, upperCaseFirst) + alphabet - low;
+        next = new int[width * 16];
+        replacements = new char[16][];
+        capitalizedReplacements = new char[16][];
+        upperCaseReplacements = new char[16][];
+        for (String[] pair : table) {
+            add(pair[0], pair[1]);
+        }
+
+        actions = new long[width];
+        for (int c = 0; c < alphabet; c++) {
+            int node = next[first + c - low];
+            if (node == 0) {
+                continue;
+            }
+            actions[first + c - low] = WALK | node;
+            actions[upperCaseFirst + c - low] = WALK | node;
+            if (replacements[node] == null || hasChildren(node) || replacements[node].length > 3) {
+                continue;
+            }
+            actions[first + c - low] = direct(replacements[node]);
+            // the case of the rest of a longer replacement depends on the next char
+            if (replacements[node].length <= 1) {
+                actions[upperCaseFirst + c - low] = direct(upperCaseReplacements[node]);
+            }
+        }
+    }
+
+    private void add(String str, String replacement) {
+        int node = 0;
+        for (int i = 0; i < str.length(); i++) {
+            int c = str.charAt(i) - first;
+            if (c < 0 || c >= alphabet) {
+                throw new IllegalArgumentException("char out of the alphabet: " + str);
+            }
+            int index = node * width + first + c - low;
+            if (next[index] == 0) {
+                if (nodesCount == replacements.length) {
+                    next = Arrays.copyOf(next, next.length * 2);
+                    replacements = Arrays.copyOf(replacements, replacements.length * 2);
+                    capitalizedReplacements = Arrays.copyOf(capitalizedReplacements, replacements.length);
+                    upperCaseReplacements = Arrays.copyOf(upperCaseReplacements, replacements.length);
+                }
+                next[index] = nodesCount;
+                next[node * width + upperCaseFirst + c - low] = nodesCount;
+                nodesCount++;
+            }
+            node = next[index];
+        }
+        replacements[node] = replacement.toCharArray();
+        upperCaseReplacements[node] = replacement.toUpperCase().toCharArray();
+        capitalizedReplacements[node] = replacement.isEmpty() ? new char[0] : (replacement.substring(0, 1)
+                .toUpperCase() + replacement.substring(1)).toCharArray();
+        maxReplacementLength = Math.max(maxReplacementLength, replacement.length());
+    }
+
+    private boolean hasChildren(int node) {
+        for (int c = 0; c < width; c++) {
+            if (next[node * width + c] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long direct(char[] replacement) {
+        long action = DIRECT | (long) replacement.length << 48;
+        for (int i = 0; i < replacement.length; i++) {
+            action |= (long) replacement[i] << 16 * i;
+        }
+        return action;
+    }
+
+    private boolean isUpperCase(char c) {
+        return c - upperCaseFirst >= 0 && c - upperCaseFirst < alphabet;
+    }
+
+    /**
+     * Returns the transliterated string, null if it has no letters of the source alphabet. Other chars stay as they
+     * are.
+     */
+    public String transliterate(String str) {
+        int len = str.length();
+        char[] out = buffers.get();
+        // 3 chars are written for any direct replacement
+        if (out.length < len * maxReplacementLength + 3) {
+            out = new char[len * maxReplacementLength * 2 + 3];
+            buffers.set(out);
+        }
+        int outLen = 0;
+        boolean replaced = false;
+        int i = 0;
+        while (i < len) {
+            char c = str.charAt(i);
+            int index = c - low;
+            long action = index >= 0 && index < width ? actions[index] : 0;
+            if (action == 0) {
+                out[outLen++] = c;
+                i++;
+                continue;
+            }
+            if ((action & DIRECT) != 0) {
+                out[outLen] = (char) action;
+                out[outLen + 1] = (char) (action >>> 16);
+                out[outLen + 2] = (char) (action >>> 32);
+                outLen += (int) (action >>> 48) & 3;
+                replaced = true;
+                i++;
+                continue;
+            }
+
+            // the longest string from this position
+            int node = (int) action;
+            int longest = replacements[node] != null ? node : 0;
+            int end = i + 1;
+            for (int j = i + 1; j < len; j++) {
+                index = str.charAt(j) - low;
+                if (index < 0 || index >= width) {
+                    break;
+                }
+                node = next[node * width + index];
+                if (node == 0) {
+                    break;
+                }
+                if (replacements[node] != null) {
+                    longest = node;
+                    end = j + 1;
+                }
+            }
+            if (longest == 0) {
+                // only longer strings start with the char
+                out[outLen++] = c;
+                i++;
+                continue;
+            }
+
+            char[] replacement;
+            if (!isUpperCase(c)) {
+                replacement = replacements[longest];
+            } else if (end - i > 1 && isUpperCase(str.charAt(i + 1)) || end < len && isUpperCase(str.charAt(end))) {
+                replacement = upperCaseReplacements[longest];
+            } else {
+                replacement = capitalizedReplacements[longest];
+            }
+            for (char r : replacement) {
+                out[outLen++] = r;
+            }
+            replaced = true;
+            i = end;
+        }
+        return replaced ? new String(out, 0, outLen) : null;
+    }
+}
@@ -1,13 +1,33 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import stemming.GeneralStemmer;
 
 public class IoDataTester {
     private static final String OUTPUT_FILE;
+    private static final String INPUT_FILE;
 
     static {
         Properties properties = new Properties();
@@ -21,6 +41,7 @@ public class IoDataTester {
             System.exit(0);
         }
         OUTPUT_FILE = properties.getProperty("IoDataTester_OUTPUT_FILE");
+        INPUT_FILE = properties.getProperty("IoDataTester_INPUT_FILE");
 
     }
 
@@ -32,4 +53,380 @@ public class IoDataTester {
         OutputDataCreator.writeData(groups, OUTPUT_FILE);
     }
 
+    public static void test2() throws Exception {
+        // every word must be found in its group after writing and mapping the index file
+        WordSet ws = new WordSet(InputDataParser.getData(INPUT_FILE));
+        ws.stemAll();
+        ws.uniteGroups();
+        List<Group> groups = ws.getGroups();
+
+        File file = File.createTempFile("groupIndex", ".idx");
+        try {
+            GroupIndexFile.write(groups, file.getPath());
+            GroupIndexFile index = GroupIndexFile.open(file.getPath());
+            if (index.getGroupsCount() != groups.size()) {
+                throw new Exception("groups: " + index.getGroupsCount());
+            }
+            for (int groupId = 0; groupId < groups.size(); groupId++) {
+                List<String> expected = new ArrayList<String>();
+                for (WordWrapper wrd : groups.get(groupId).getElements()) {
+                    if (index.findGroup(wrd.getOriginalWord()) != groupId
+                            || !new ArrayList<String>(wrd.getStemmedForms()).equals(index.getStems(wrd
+                                    .getOriginalWord()))) {
+                        throw new Exception("word: " + wrd.getOriginalWord());
+                    }
+                    expected.add(wrd.getOriginalWord());
+                }
+                if (!new ArrayList<String>(new LinkedHashSet<String>(expected)).equals(index.getGroupWords(groupId))) {
+                    throw new Exception("group: " + groupId + " | " + index.getGroupWords(groupId));
+                }
+            }
+            if (index.findGroup("no such word") != -1 || index.findGroupByStems("no such word") != -1) {
+                throw new Exception("unknown word was found");
+            }
+            // unknown form of a known word is found by its stem
+            WordSet small = new WordSet(Arrays.asList("Lambda", "Конструктор"));
+            small.stemAll();
+            small.uniteGroups();
+            GroupIndexFile.write(small.getGroups(), file.getPath());
+            index = GroupIndexFile.open(file.getPath());
+            if (index.findGroup("Конструкторы") != -1 || index.findGroupByStems("Конструкторы") != 1) {
+                throw new Exception("by stems: " + index.findGroupByStems("Конструкторы"));
+            }
+            // stemmed forms of other stemmers are not looked up
+            GeneralStemmer.setTransliteration(true);
+            try {
+                GroupIndexFile.open(file.getPath()).findGroupByStems("Конструкторы");
+                throw new Exception("index of other stemmers was used");
+            } catch (IllegalStateException e) {
+                // expected
+            } finally {
+                GeneralStemmer.setTransliteration(false);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public static void test3() throws Exception {
+        // quoted fields with separators, line breaks and doubled quotes, empty fields and lines, any line breaks, fields
+        // across bounds of small buffers
+        String csv = "\uFEFFa,\"b,c\",\"d\"\"e\"\r\n\"Привет\nмир\",,\n\nx\"y,\"z\"w\rlast,\"\"";
+        List<List<String>> expected = Arrays.asList(Arrays.asList("a", "b,c", "d\"e"),
+                Arrays.asList("Привет\nмир", "", ""), Arrays.asList(""), Arrays.asList("x\"y", "zw"),
+                Arrays.asList("last", ""));
+        for (int bufferSize = 1; bufferSize <= 1 << 16; bufferSize *= 2) {
+            CsvReader reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(
+                    csv.getBytes(StandardCharsets.UTF_8))), bufferSize);
+            List<List<String>> records = new ArrayList<List<String>>();
+            for (List<String> record = reader.readRecord(); record != null; record = reader.readRecord()) {
+                records.add(record);
+            }
+            reader.close();
+            if (!expected.equals(records)) {
+                throw new Exception(bufferSize + ": " + records);
+            }
+        }
+
+        // plain lines in quotes are read as before
+        List<String> lines = Files.readAllLines(Paths.get(INPUT_FILE));
+        List<String> words = InputDataParser.getData(INPUT_FILE);
+        for (int i = 0; i < lines.size(); i++) {
+            lines.set(i, lines.get(i).replace("\"", ""));
+        }
+        if (!lines.equals(words)) {
+            throw new Exception("words differ from lines");
+        }
+    }
+
+    public static void test4() throws Exception {
+        // chunks parsed in parallel give the same words as one reader for any chunk size, with quoted line breaks,
+        // CRLF across chunk bounds and broken quoting
+        String[] csvs = { "\uFEFFa,\"b\r\nc\"\r\n\"d\"\"\ne\",f\r\n\r\ng,\"h,\ni\"\n\"\"\nПривет,мир\r\nj,",
+                "a\"b\nc\n\"d\ne\"\nf\n\"g", "" };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        File file = File.createTempFile("parallelCsv", ".csv");
+        try {
+            for (String csv : csvs) {
+                Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+                List<String> expected = InputDataParser.getData(file.getPath());
+                for (int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+                    List<String> words = ParallelCsvParser.parse(file.getPath(), executor, null, false, chunkSize).get(0);
+                    if (!expected.equals(words)) {
+                        throw new Exception(chunkSize + ": " + words + " | " + expected);
+                    }
+                }
+            }
+            if (!InputDataParser.getData(INPUT_FILE).equals(
+                    ParallelCsvParser.parse(INPUT_FILE, executor, null, false, 1000).get(0))) {
+                throw new Exception(INPUT_FILE);
+            }
+        } finally {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+
+    public static void test5() throws Exception {
+        // columns are found by names in the header, other fields are skipped, payloads get to the output
+        String csv = "id,\"note, long\",word\n7,\"a\nb\",Бегущий\n8,,бегущие\r\n9\n10,\"x\"\"y\",\"Бег, спорт\",z\n";
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        File file = File.createTempFile("columns", ".csv");
+        File output = File.createTempFile("columns", ".html");
+        try {
+            Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+            int[] columns = InputDataParser.findColumns(file.getPath(), true, "word", "0");
+            if (!Arrays.equals(new int[] { 2, 0 }, columns)) {
+                throw new Exception(Arrays.toString(columns));
+            }
+            List<List<String>> expected = Arrays.asList(Arrays.asList("Бегущий", "бегущие", "", "Бег, спорт"),
+                    Arrays.asList("7", "8", "9", "10"));
+            if (!expected.equals(InputDataParser.getColumns(file.getPath(), columns, true))) {
+                throw new Exception(InputDataParser.getColumns(file.getPath(), columns, true).toString());
+            }
+            for (int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+                if (!expected.equals(ParallelCsvParser.parse(file.getPath(), executor, columns, true, chunkSize))) {
+                    throw new Exception(chunkSize + ": "
+                            + ParallelCsvParser.parse(file.getPath(), executor, columns, true, chunkSize));
+                }
+            }
+
+            OutputDataCreator.writeData(WordStore.build(expected.get(0), expected.get(1)).getGroups(),
+                    output.getPath());
+            String html = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+            if (!html.contains("Бегущий</td>\n\t\t\t\t<td>7</td>") || !html.contains("бегущие</td>\n\t\t\t\t<td>8</td>")) {
+                throw new Exception(html);
+            }
+        } finally {
+            executor.shutdown();
+            file.delete();
+            output.delete();
+        }
+    }
+
+    public static void test6() throws Exception {
+        // compressed input gives the same words as the plain one: gzip of one and of many members (read in turn and
+        // in parallel), zlib and stdin; broken members are errors; output is compressed by the name
+        byte[] plain = Files.readAllBytes(Paths.get(INPUT_FILE));
+        List<String> expected = InputDataParser.getData(INPUT_FILE);
+        ByteArrayOutputStream big = new ByteArrayOutputStream();
+        while (big.size() < (1 << 23) + 1) {
+            big.write(plain);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        File file = File.createTempFile("compressed", ".csv.gz");
+        File output = File.createTempFile("compressed", ".HTML.GZ");
+        try {
+            ByteArrayOutputStream members = new ByteArrayOutputStream();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            for (int start = 0; start < plain.length; start += 100) {
+                byte[] part = Arrays.copyOfRange(plain, start, Math.min(start + 100, plain.length));
+                members.write(start % 300 == 0 ? gzipNamed(part) : gzip(part));
+            }
+            DeflaterOutputStream zlib = new DeflaterOutputStream(deflated);
+            zlib.write(plain);
+            zlib.close();
+            byte[] bigMembers = concat(gzip(plain), gzip(big.toByteArray()), gzip(new byte[0]), gzip(plain));
+            byte[][] inputs = { gzip(plain), members.toByteArray(), deflated.toByteArray(), bigMembers };
+            for (int i = 0; i < inputs.length; i++) {
+                List<String> words = expected;
+                if (inputs[i] == bigMembers) {
+                    Files.write(file.toPath(), concat(plain, big.toByteArray(), plain));
+                    words = InputDataParser.getData(file.getPath());
+                }
+                Files.write(file.toPath(), inputs[i]);
+                if (!CompressedInput.isCompressed(file.getPath())
+                        || !words.equals(InputDataParser.getData(file.getPath()))
+                        || !words.equals(InputDataParser.getData(file.getPath(), executor))) {
+                    throw new Exception("input " + i);
+                }
+                CsvReader reader = new CsvReader(CompressedInput.open(new ByteArrayInputStream(inputs[i])));
+                if (!words.equals(InputDataParser.read(reader, null, false).get(0))) {
+                    throw new Exception("stream " + i);
+                }
+            }
+            if (CompressedInput.isCompressed(INPUT_FILE)) {
+                throw new Exception(INPUT_FILE);
+            }
+
+            // a broken byte in the middle of a member and a broken trailer
+            byte[] broken = members.toByteArray();
+            broken[broken.length / 2] ^= 0x55;
+            byte[] badTrailer = gzip(plain);
+            badTrailer[badTrailer.length - 6] ^= 1;
+            for (byte[] input : new byte[][] { broken, badTrailer }) {
+                Files.write(file.toPath(), input);
+                for (ExecutorService inflating : new ExecutorService[] { null, executor }) {
+                    try {
+                        CsvReader reader = InputDataParser.open(file.getPath(), inflating);
+                        try {
+                            InputDataParser.read(reader, null, false);
+                        } finally {
+                            reader.close();
+                        }
+                        throw new IllegalStateException("no error for broken input");
+                    } catch (IOException e) {
+                        // expected
+                    }
+                }
+            }
+
+            List<Group> groups = WordStore.build(expected).getGroups();
+            OutputDataCreator.writeData(groups, output.getPath(), false);
+            ByteArrayOutputStream html = new ByteArrayOutputStream();
+            OutputDataCreator.writeData(groups, html, false);
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            InputStream in = new GZIPInputStream(new FileInputStream(output));
+            try {
+                byte[] buf = new byte[1 << 16];
+                for (int count = in.read(buf); count >= 0; count = in.read(buf)) {
+                    inflated.write(buf, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+            if (!Arrays.equals(html.toByteArray(), inflated.toByteArray())) {
+                throw new Exception("gzip output");
+            }
+        } finally {
+            executor.shutdown();
+            file.delete();
+            output.delete();
+        }
+    }
+
+    public static void test7() throws Exception {
+        // words are escaped, other chars are encoded the same as by String, rows across buffer bounds included
+        List<String> words = new ArrayList<String>(Arrays.asList("a<b>", "Tom & Jerry", "\"q\"", "it's", "\uD83D\uDE00",
+                "x\uD800y", "\uDC00", "€漢ñ"));
+        for (int i = 0; i < 20000; i++) {
+            words.add("Слово" + i);
+        }
+        List<Group> groups = new ArrayList<Group>();
+        StringBuilder expected = new StringBuilder("<!DOCTYPE html>\n<html>\n\t<head>\n"
+                + "\t<meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\">\n"
+                + "\t\t<title>Задание 3</title>\n\t</head>\n\t<body>\n");
+        for (String word : words) {
+            groups.add(new Group(new WordWrapper(word)));
+            expected.append("\t\t<table>\n\t\t\t<tr>\n\t\t\t\t<td>").append(word.replace("&", "&amp;")
+                    .replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")).append("</td>\n\t\t\t</tr>\n"
+                    + "\t\t</table>\n");
+        }
+        expected.append("\t</body>\n</html>\n");
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        OutputDataCreator.writeData(groups, html, false);
+        if (!Arrays.equals(expected.toString().getBytes(StandardCharsets.UTF_8), html.toByteArray())) {
+            throw new Exception(new String(html.toByteArray(), StandardCharsets.UTF_8).substring(0, 600));
+        }
+    }
+
+    public static void test8() throws Exception {
+        // every format gives the same groups: csv is read back, binary groups are written again as html; formats are
+        // chosen by extensions and names
+        List<String> data = new ArrayList<String>(InputDataParser.getData(INPUT_FILE));
+        data.addAll(Arrays.asList("Бег, \"спорт\"", "tab\tand\nline\\"));
+        List<String> payloads = new ArrayList<String>();
+        for (int i = 0; i < data.size(); i++) {
+            payloads.add("id" + i);
+        }
+        File file = File.createTempFile("groups", ".grp");
+        try {
+            for (boolean withCounts : new boolean[] { false, true }) {
+                List<Group> groups = withCounts ? WordStore.build(WordCounts.collapse(data)).getGroups()
+                        : WordStore.build(data, payloads).getGroups();
+                int wordsCount = 0;
+                for (Group group : groups) {
+                    wordsCount += group.getElements().size();
+                }
+
+                String text = write(groups, OutputFormat.TEXT, withCounts);
+                if (text.split("\n", -1).length != wordsCount + groups.size() + 1
+                        || !text.contains("tab\\tand\\nline\\\\")) {
+                    throw new Exception("text");
+                }
+                String[] lines = write(groups, OutputFormat.JSON_LINES, withCounts).split("\n");
+                if (lines.length != groups.size() || !lines[0].startsWith("{\"group\":0,\"words\":[\"")
+                        || lines[0].contains("payloads") == withCounts || lines[0].contains("spellings") != withCounts
+                        || !Arrays.toString(lines).contains("\"Бег, \\\"спорт\\\"\"")) {
+                    throw new Exception("jsonl: " + lines[0]);
+                }
+                CsvReader reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(
+                        write(groups, OutputFormat.CSV, withCounts).getBytes(StandardCharsets.UTF_8))));
+                List<String> header = reader.readRecord();
+                if (!header.equals(withCounts ? Arrays.asList("group_id", "word", "occurrences")
+                        : Arrays.asList("group_id", "word", "payload"))) {
+                    throw new Exception("csv header " + header);
+                }
+                for (int groupId = 0; groupId < groups.size(); groupId++) {
+                    for (WordWrapper wrd : groups.get(groupId).getElements()) {
+                        List<String> record = reader.readRecord();
+                        if (!record.equals(Arrays.asList(String.valueOf(groupId), wrd.getOriginalWord(),
+                                withCounts ? String.valueOf(wrd.getOccurrences()) : wrd.getPayload()))) {
+                            throw new Exception("csv " + record);
+                        }
+                    }
+                }
+                if (reader.readRecord() != null) {
+                    throw new Exception("csv end");
+                }
+
+                OutputDataCreator.writeData(groups, file.getPath(), withCounts);
+                BinaryOutputFormat.Reader binary = BinaryOutputFormat.open(file.getPath());
+                if (binary.getGroupsCount() != groups.size() || binary.hasCounts() != withCounts
+                        || !write(groups, OutputFormat.HTML, withCounts).equals(
+                                write(binary.getGroups(), OutputFormat.HTML, withCounts))) {
+                    throw new Exception("binary");
+                }
+            }
+        } finally {
+            file.delete();
+        }
+
+        if (OutputFormat.forFile("a.JSONL.gz") != OutputFormat.JSON_LINES || OutputFormat.forFile("a.txt")
+                != OutputFormat.TEXT || OutputFormat.forFile("a.out") != OutputFormat.HTML || OutputFormat.forFile("-")
+                != OutputFormat.HTML || OutputFormat.forName("CSV") != OutputFormat.CSV
+                || !(OutputFormat.forName("TextOutputFormat") instanceof TextOutputFormat)) {
+            throw new Exception("formats");
+        }
+    }
+
+    private static String write(List<Group> groups, OutputFormat format, boolean withCounts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputDataCreator.writeData(groups, out, format, withCounts);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    // a gzip member with the file name in its header
+    private static byte[] gzipNamed(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { 0x1F, (byte) 0x8B, 8, 8, 0, 0, 0, 0, 0, (byte) 0xFF });
+        out.write("name.csv\0".getBytes(StandardCharsets.US_ASCII));
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        deflater.write(bytes);
+        deflater.finish();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        for (long value : new long[] { crc.getValue(), bytes.length }) {
+            for (int i = 0; i < 4; i++) {
+                out.write((int) (value >> (8 * i)));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
 }
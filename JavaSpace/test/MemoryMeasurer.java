@@ -0,0 +1,46 @@
+import java.util.List;
+
+/**
+ * Prints how much heap is retained by grouped words of the given file in {@link WordSet} and in {@link WordStore}.
+ * Strings of the input are loaded before the first measurement, so only the structures themselves and stemmed forms
+ * are counted. The results for data/in/sample.csv are kept in data/test/memoryFootprint.txt.
+ */
+public class MemoryMeasurer {
+
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "data/in/sample.csv";
+        List<String> data = InputDataParser.getData(file);
+
+        long before = usedMemory();
+        WordSet ws = new WordSet(data);
+        ws.stemAll();
+        ws.uniteGroups();
+        long wordSetBytes = usedMemory() - before;
+        int groups = ws.getGroups().size();
+        ws = null;
+
+        before = usedMemory();
+        WordStore store = WordStore.build(data);
+        long storeBytes = usedMemory() - before;
+        if (store.getGroupsCount() != groups) {
+            throw new Exception("groups: " + store.getGroupsCount() + " | " + groups);
+        }
+
+        System.out.println("file: " + file + ", words: " + data.size() + ", groups: " + groups);
+        System.out.println("WordSet:   " + wordSetBytes + " bytes, " + wordSetBytes / data.size() + " per word");
+        System.out.println("WordStore: " + storeBytes + " bytes, " + storeBytes / data.size() + " per word");
+        System.out.println("ratio: " + String.format("%.1f", (double) wordSetBytes / storeBytes));
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // several collections make the value stable enough
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
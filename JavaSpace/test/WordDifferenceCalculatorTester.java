@@ -0,0 +1,261 @@
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class WordDifferenceCalculatorTester {
+    private static final String INPUT_FILE;
+
+    static {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream("test/.properties"));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        INPUT_FILE = properties.getProperty("WordDifferenceCalculatorTester_INPUT_FILE");
+
+    }
+
+    /*
+     * The first recursive implementation of the measure: every cell of the distance matrix keeps lists of changed
+     * positions. It is slow but obviously follows the definition, so the current implementation is checked against it.
+     */
+    static class ReferenceCalculator {
+        List<Integer> firstWordPositionChanges = new ArrayList<Integer>();
+        List<Integer> secondWordPositionChanges = new ArrayList<Integer>();
+        int distVal;
+
+        static double calcDiff(String first, String second) {
+            ReferenceCalculator[][] distanceMatrix = new ReferenceCalculator[first.length() + 1][second.length() + 1];
+            calcLevenshteinDistance(first, second, first.length(), second.length(), distanceMatrix);
+            ReferenceCalculator levenshteinDist = distanceMatrix[first.length()][second.length()];
+            return calcDiff(levenshteinDist.firstWordPositionChanges, first.length())
+                    + calcDiff(levenshteinDist.secondWordPositionChanges, second.length());
+        }
+
+        static void calcLevenshteinDistance(String first, String second, int indxFrst, int indxScnd,
+                ReferenceCalculator[][] distanceMatrix) {
+            if (distanceMatrix[indxFrst][indxScnd] != null) {
+                return;
+            }
+            ReferenceCalculator wd = new ReferenceCalculator();
+            if (indxFrst == 0 || indxScnd == 0) {
+                wd.distVal = indxFrst + indxScnd;
+                for (int i = 1; i <= indxScnd; i++) {
+                    wd.secondWordPositionChanges.add(i);
+                }
+                for (int i = 1; i <= indxFrst; i++) {
+                    wd.firstWordPositionChanges.add(i);
+                }
+                distanceMatrix[indxFrst][indxScnd] = wd;
+                return;
+            }
+            calcLevenshteinDistance(first, second, indxFrst - 1, indxScnd, distanceMatrix);
+            calcLevenshteinDistance(first, second, indxFrst, indxScnd - 1, distanceMatrix);
+            calcLevenshteinDistance(first, second, indxFrst - 1, indxScnd - 1, distanceMatrix);
+            distanceMatrix[indxFrst][indxScnd] = wd;
+
+            ReferenceCalculator leftDelDist = distanceMatrix[indxFrst - 1][indxScnd];
+            ReferenceCalculator rightDelDist = distanceMatrix[indxFrst][indxScnd - 1];
+            ReferenceCalculator substitutionDist = distanceMatrix[indxFrst - 1][indxScnd - 1];
+            ReferenceCalculator chosen;
+            if (leftDelDist.distVal < rightDelDist.distVal && leftDelDist.distVal < substitutionDist.distVal) {
+                chosen = leftDelDist;
+                wd.distVal = chosen.distVal + 1;
+                wd.firstWordPositionChanges.add(indxFrst);
+            } else if (rightDelDist.distVal < substitutionDist.distVal) {
+                chosen = rightDelDist;
+                wd.distVal = chosen.distVal + 1;
+                wd.secondWordPositionChanges.add(indxScnd);
+            } else {
+                chosen = substitutionDist;
+                wd.distVal = chosen.distVal;
+                if (first.charAt(indxFrst - 1) != second.charAt(indxScnd - 1)) {
+                    wd.distVal++;
+                    wd.firstWordPositionChanges.add(indxFrst);
+                    wd.secondWordPositionChanges.add(indxScnd);
+                }
+            }
+            wd.firstWordPositionChanges.addAll(0, chosen.firstWordPositionChanges);
+            wd.secondWordPositionChanges.addAll(0, chosen.secondWordPositionChanges);
+        }
+
+        static double calcDiff(List<Integer> postionsOfChanges, int wordLength) {
+            int middlePos = wordLength / 2;
+            Double result = 0.0;
+            for (int pos : postionsOfChanges) {
+                if (pos <= middlePos) {
+                    result += pos;
+                } else {
+                    result += wordLength + 1 - pos;
+                }
+            }
+            result /= wordLength;
+            return result;
+        }
+    }
+
+    public static void test1() throws Exception {
+        if (WordDifferenceCalculator.calcLevenshteinDistance("kitten", "sitting") != 3
+                || WordDifferenceCalculator.calcLevenshteinDistance("", "abc") != 3
+                || WordDifferenceCalculator.calcLevenshteinDistance("abc", "abc") != 0) {
+            throw new Exception("wrong Levenshtein distance");
+        }
+    }
+
+    public static void test2() throws Exception {
+        // no pair of words closer than maxDiff can be farther than maxDistanceForDiff
+        List<String> words = Arrays.asList("telegram", "telegramm", "telegrams", "elegram", "tlegram", "teleram",
+                "телеграм", "телеграмм", "kitten", "sitting", "mitten", "kit", "a", "ab", "ba");
+        for (double maxDiff : new double[] { 0.1, 0.2, 0.3, 0.5, 0.9 }) {
+            for (String first : words) {
+                for (String second : words) {
+                    if (WordDifferenceCalculator.calcDiff(first, second) < maxDiff
+                            && WordDifferenceCalculator.calcLevenshteinDistance(first, second) > WordDifferenceCalculator
+                                    .maxDistanceForDiff(second.length(), maxDiff)) {
+                        throw new Exception("maxDiff: " + maxDiff + " | " + first + " | " + second);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void test3() throws Exception {
+        // the tree must find the same strings as comparing with each of them
+        List<String> words = Arrays.asList("telegram", "telegramm", "telegrams", "elegram", "tlegram", "teleram",
+                "kitten", "sitting", "mitten", "kit", "a", "ab", "ba", "telegram");
+        BkTree tree = new BkTree();
+        for (int i = 0; i < words.size(); i++) {
+            tree.add(words.get(i), i);
+        }
+        for (String query : new String[] { "telegram", "kitten", "b", "" }) {
+            for (int radius = 0; radius < 4; radius++) {
+                List<Integer> found = tree.find(query, radius);
+                int expected = 0;
+                for (int i = 0; i < words.size(); i++) {
+                    if (WordDifferenceCalculator.calcLevenshteinDistance(query, words.get(i)) <= radius) {
+                        expected++;
+                        if (!found.contains(i)) {
+                            throw new Exception("not found: " + words.get(i) + " | query: " + query);
+                        }
+                    }
+                }
+                if (found.size() != expected) {
+                    throw new Exception("query: " + query + " | radius: " + radius + " | found: " + found);
+                }
+            }
+        }
+    }
+
+    public static void test4() throws Exception {
+        // the measure must be exactly the same as the one of the reference implementation, on real words and on
+        // their random distortions
+        List<String> words = InputDataParser.getData(INPUT_FILE);
+        Random random = new Random(1);
+        WordDifferenceCalculator calculator = new WordDifferenceCalculator();
+        for (int n = 0; n < 20000; n++) {
+            String first = words.get(random.nextInt(words.size()));
+            String second = n % 2 == 0 ? words.get(random.nextInt(words.size())) : distort(first, random);
+            double expected = ReferenceCalculator.calcDiff(first, second);
+            if (Double.compare(expected, calculator.diff(first, second)) != 0
+                    || Double.compare(expected, WordDifferenceCalculator.calcDiff(first, second)) != 0) {
+                throw new Exception(first + " | " + second + " | expected: " + expected + " | actual: "
+                        + calculator.diff(first, second));
+            }
+            // bounded variant is exact below the threshold and is not less than the threshold otherwise
+            for (double maxDiff : new double[] { 0.2, 0.5, 1.0 }) {
+                double bounded = WordDifferenceCalculator.calcDiff(first, second, maxDiff);
+                if (expected < maxDiff ? bounded != expected : bounded < maxDiff) {
+                    throw new Exception(first + " | " + second + " | maxDiff: " + maxDiff + " | " + bounded);
+                }
+            }
+        }
+    }
+
+    public static void test5() throws Exception {
+        // long tokens must not overflow the stack
+        StringBuilder longWord = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            longWord.append((char) ('a' + i % 26));
+        }
+        String first = longWord.toString();
+        String second = first.substring(1) + "z";
+        if (WordDifferenceCalculator.calcLevenshteinDistance(first, second) != 2
+                || WordDifferenceCalculator.calcDiff(first, second) != 2.0 / first.length()) {
+            throw new Exception("long words: " + WordDifferenceCalculator.calcDiff(first, second));
+        }
+    }
+
+    public static void test6() throws Exception {
+        // batch results must agree with single comparisons: exact below maxDiff and not less than it otherwise
+        List<String> words = InputDataParser.getData(INPUT_FILE);
+        String[] candidates = words.toArray(new String[words.size()]);
+        String[] queries = { candidates[0], candidates[100], "Телеграм", "x" };
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (double maxDiff : new double[] { 0.3, 0.9, Double.POSITIVE_INFINITY }) {
+                double[][] matrix = WordDifferenceCalculator.calcDiff(queries, candidates, maxDiff, pool);
+                for (int q = 0; q < queries.length; q++) {
+                    double[] row = WordDifferenceCalculator.calcDiff(queries[q], candidates, maxDiff, pool);
+                    for (int i = 0; i < candidates.length; i++) {
+                        double expected = WordDifferenceCalculator.calcDiff(queries[q], candidates[i]);
+                        if (expected < maxDiff ? row[i] != expected || matrix[q][i] != expected
+                                : row[i] < maxDiff || matrix[q][i] < maxDiff) {
+                            throw new Exception(queries[q] + " | " + candidates[i] + " | " + row[i]);
+                        }
+                    }
+                }
+            }
+
+            String query = candidates[100] + "s";
+            int[] closest = WordDifferenceCalculator.findClosest(query, candidates, 5, 0.9, pool);
+            double prevDiff = -1;
+            for (int idx : closest) {
+                double diff = WordDifferenceCalculator.calcDiff(query, candidates[idx]);
+                if (diff < prevDiff || diff >= 0.9) {
+                    throw new Exception("not sorted: " + candidates[idx]);
+                }
+                prevDiff = diff;
+            }
+            int closer = 0;
+            for (String candidate : candidates) {
+                if (WordDifferenceCalculator.calcDiff(query, candidate) < prevDiff) {
+                    closer++;
+                }
+            }
+            if (closest.length == 0 || closer >= closest.length) {
+                throw new Exception("wrong closest: " + closest.length + " | " + closer);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static String distort(String word, Random random) {
+        StringBuilder result = new StringBuilder(word);
+        for (int changes = random.nextInt(4); changes > 0 && result.length() > 1; changes--) {
+            int pos = random.nextInt(result.length());
+            switch (random.nextInt(3)) {
+            case 0:
+                result.deleteCharAt(pos);
+                break;
+            case 1:
+                result.insert(pos, 'x');
+                break;
+            default:
+                result.setCharAt(pos, 'ж');
+            }
+        }
+        return result.toString();
+    }
+}
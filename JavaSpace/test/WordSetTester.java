@@ -0,0 +1,259 @@
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+public class WordSetTester {
+    private static final String INPUT_FILE;
+
+    static {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream("test/.properties"));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        INPUT_FILE = properties.getProperty("WordSetTester_INPUT_FILE");
+
+    }
+
+    public static void test1() throws Exception {
+        // "Конструктор" and "Конструкторы" share stem directly, "Lambda" and "Lambdas" too,
+        // "Кубик" stays alone. Groups are ordered by their first words.
+        WordSet ws = new WordSet(Arrays.asList("Конструктор", "Lambda", "Кубик", "Lambdas", "Конструкторы"));
+        ws.stemAll();
+        ws.uniteGroups();
+        List<Group> groups = ws.getGroups();
+        if (groups.size() != 3) {
+            throw new Exception("groups: " + groups.size());
+        }
+        checkGroup(groups.get(0), "Конструктор", "Конструкторы");
+        checkGroup(groups.get(1), "Lambda", "Lambdas");
+        checkGroup(groups.get(2), "Кубик");
+    }
+
+    public static void test2() throws Exception {
+        // words which are joined only through a word placed after them must end up in one group
+        UnionFind uf = new UnionFind(5);
+        uf.union(3, 4);
+        uf.union(0, 4);
+        uf.union(1, 2);
+        if (uf.find(0) != uf.find(3) || uf.find(1) != uf.find(2) || uf.find(0) == uf.find(1)) {
+            throw new Exception("wrong sets");
+        }
+        if (uf.union(4, 0)) {
+            throw new Exception("already united");
+        }
+    }
+
+    public static void test3() throws Exception {
+        // parallel mode must give the same groups as the sequential one whatever the number of threads
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        WordSet sequential = new WordSet(data);
+        sequential.stemAll();
+        sequential.uniteGroups();
+
+        for (int threads : new int[] { 1, 2, 7 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            WordSet parallel = new WordSet(data);
+            try {
+                parallel.stemAll(pool);
+                parallel.uniteGroups(pool);
+            } finally {
+                pool.shutdown();
+            }
+            checkSameGroups(sequential.getGroups(), parallel.getGroups());
+        }
+    }
+
+    public static void test4() throws Exception {
+        // adding and removing words must give the same groups as building the set from scratch
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        WordSet incremental = new WordSet(data.subList(0, data.size() / 2));
+        incremental.stemAll();
+        incremental.uniteGroups();
+        List<Group> affected = incremental.addWords(data.subList(data.size() / 2, data.size()));
+        if (affected.isEmpty()) {
+            throw new Exception("no affected groups");
+        }
+        checkSameContent(buildFull(data), incremental.getGroups());
+
+        List<String> removed = new ArrayList<String>();
+        List<String> remained = new ArrayList<String>();
+        for (int i = 0; i < data.size(); i++) {
+            (i % 3 == 0 ? removed : remained).add(data.get(i));
+        }
+        remained.removeAll(removed);
+        incremental.removeWords(removed);
+        checkSameContent(buildFull(remained), incremental.getGroups());
+
+        // after incremental changes the whole set still can be united again
+        incremental.uniteGroups();
+        checkSameGroups(buildFull(remained), incremental.getGroups());
+    }
+
+    public static void test5() throws Exception {
+        // "Telegramm" is a typo which stemming does not catch, so only similarity can unite it with "Telegram"
+        WordSet ws = new WordSet(Arrays.asList("Telegram", "Lambda", "Telegramm", "Lambdas"));
+        ws.stemAll();
+        ws.uniteGroups();
+        if (ws.getGroups().size() != 3) {
+            throw new Exception("groups: " + ws.getGroups().size());
+        }
+        ws.uniteSimilarGroups(0.2);
+        if (ws.getGroups().size() != 2) {
+            throw new Exception("groups: " + ws.getGroups().size());
+        }
+        checkGroup(ws.getGroups().get(0), "Telegram", "Telegramm");
+        checkGroup(ws.getGroups().get(1), "Lambda", "Lambdas");
+    }
+
+    public static void test6() throws Exception {
+        // LSH can only miss some pairs found by BK-tree, so each its group must lie inside a group found with the tree
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        WordSet byTree = new WordSet(data);
+        byTree.stemAll();
+        byTree.uniteGroups();
+        byTree.uniteSimilarGroups(0.3);
+        WordSet byLsh = new WordSet(data);
+        byLsh.stemAll();
+        byLsh.uniteGroups();
+        byLsh.uniteSimilarGroups(0.3, new MinHashLsh(32, 4));
+
+        Map<String, Group> treeGroupByWord = new HashMap<String, Group>();
+        for (Group grp : byTree.getGroups()) {
+            for (WordWrapper wrd : grp.getElements()) {
+                treeGroupByWord.put(wrd.getOriginalWord(), grp);
+            }
+        }
+        for (Group grp : byLsh.getGroups()) {
+            Group treeGroup = treeGroupByWord.get(grp.getElements().get(0).getOriginalWord());
+            for (WordWrapper wrd : grp.getElements()) {
+                if (treeGroupByWord.get(wrd.getOriginalWord()) != treeGroup) {
+                    throw new Exception("not in the tree group: " + wrd.getOriginalWord());
+                }
+            }
+        }
+        if (byLsh.getGroups().size() < byTree.getGroups().size()) {
+            throw new Exception("groups: " + byLsh.getGroups().size() + " | " + byTree.getGroups().size());
+        }
+
+        WordSet ws = new WordSet(Arrays.asList("Telegram", "Lambda", "Telegramm", "Lambdas"));
+        ws.stemAll();
+        ws.uniteGroups();
+        ws.uniteSimilarGroups(0.2, new MinHashLsh(32, 4));
+        checkGroup(ws.getGroups().get(0), "Telegram", "Telegramm");
+    }
+
+    static List<Group> buildFull(List<String> data) throws Exception {
+        WordSet ws = new WordSet(data);
+        ws.stemAll();
+        ws.uniteGroups();
+        return ws.getGroups();
+    }
+
+    // compares groups ignoring the order of groups and the order of words inside them
+    static void checkSameContent(List<Group> expected, List<Group> actual) throws Exception {
+        if (!new HashSet<List<String>>(sortedWords(expected)).equals(new HashSet<List<String>>(sortedWords(actual)))
+                || expected.size() != actual.size()) {
+            throw new Exception("groups differ: " + expected.size() + " | " + actual.size());
+        }
+    }
+
+    public static void test7() throws Exception {
+        // identical words are one entry with all spellings and the number of occurrences
+        WordCounts counts = WordCounts.collapse(Arrays.asList("club", "Lambda", "Club", "club", "Clubs", "Lambda"));
+        if (!counts.getWords().equals(Arrays.asList("club", "Lambda", "Clubs"))) {
+            throw new Exception("words: " + counts.getWords());
+        }
+        if (counts.getCount(0) != 3 || counts.getCount(1) != 2 || counts.getCount(2) != 1) {
+            throw new Exception("counts");
+        }
+        if (!counts.getSpellings(0).equals(Arrays.asList("club", "Club"))
+                || !counts.getSpellings(1).equals(Arrays.asList("Lambda"))) {
+            throw new Exception("spellings: " + counts.getSpellings(0) + " " + counts.getSpellings(1));
+        }
+
+        // grouping of collapsed words must give the same groups as grouping of all words, the sum of occurrences
+        // in each group is the size of the group
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        WordSet all = new WordSet(data);
+        all.stemAll();
+        all.uniteGroups();
+        WordSet collapsed = new WordSet(WordCounts.collapse(data));
+        collapsed.stemAll();
+        collapsed.uniteGroups();
+        List<Group> allGroups = all.getGroups();
+        List<Group> collapsedGroups = collapsed.getGroups();
+        List<Group> storeGroups = WordStore.build(WordCounts.collapse(data)).getGroups();
+        checkSameGroups(collapsedGroups, storeGroups);
+        if (allGroups.size() != collapsedGroups.size()) {
+            throw new Exception("groups: " + allGroups.size() + " | " + collapsedGroups.size());
+        }
+        for (int i = 0; i < allGroups.size(); i++) {
+            int occurrences = 0;
+            int storeOccurrences = 0;
+            for (WordWrapper wrd : collapsedGroups.get(i).getElements()) {
+                occurrences += wrd.getOccurrences();
+            }
+            for (WordWrapper wrd : storeGroups.get(i).getElements()) {
+                storeOccurrences += wrd.getOccurrences();
+            }
+            if (occurrences != allGroups.get(i).getElements().size() || storeOccurrences != occurrences) {
+                throw new Exception("group: " + i + " | size: " + allGroups.get(i).getElements().size()
+                        + " | occurrences: " + occurrences + " | " + storeOccurrences);
+            }
+        }
+    }
+
+    static List<List<String>> sortedWords(List<Group> groups) {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (Group grp : groups) {
+            List<String> words = new ArrayList<String>();
+            for (WordWrapper wrd : grp.getElements()) {
+                words.add(wrd.getOriginalWord());
+            }
+            Collections.sort(words);
+            result.add(words);
+        }
+        return result;
+    }
+
+    static void checkSameGroups(List<Group> expected, List<Group> actual) throws Exception {
+        if (expected.size() != actual.size()) {
+            throw new Exception("groups: " + expected.size() + " | " + actual.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            List<WordWrapper> expWords = expected.get(i).getElements();
+            String[] expOriginals = new String[expWords.size()];
+            for (int j = 0; j < expOriginals.length; j++) {
+                expOriginals[j] = expWords.get(j).getOriginalWord();
+            }
+            checkGroup(actual.get(i), expOriginals);
+        }
+    }
+
+    static void checkGroup(Group grp, String... expected) throws Exception {
+        if (grp.getElements().size() != expected.length) {
+            throw new Exception("group size: " + grp.getElements().size());
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (!expected[i].equals(grp.getElements().get(i).getOriginalWord())) {
+                throw new Exception("i: " + i + " | expected: " + expected[i] + " | actual: "
+                        + grp.getElements().get(i).getOriginalWord());
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+public class WordStoreTester {
+    private static final String INPUT_FILE;
+
+    static {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream("test/.properties"));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        INPUT_FILE = properties.getProperty("WordStoreTester_INPUT_FILE");
+
+    }
+
+    public static void test1() throws Exception {
+        // the store must give exactly the same groups and stemmed forms as the word set
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        WordSet ws = new WordSet(data);
+        ws.stemAll();
+        ws.uniteGroups();
+        WordStore store = WordStore.build(data);
+        WordSetTester.checkSameGroups(ws.getGroups(), store.getGroups());
+
+        if (store.getWordsCount() != data.size()) {
+            throw new Exception("words: " + store.getWordsCount());
+        }
+        for (int i = 0; i < ws.getGroups().size(); i++) {
+            List<WordWrapper> expected = ws.getGroups().get(i).getElements();
+            List<WordWrapper> actual = store.getGroup(i).getElements();
+            for (int j = 0; j < expected.size(); j++) {
+                if (!expected.get(j).getStemmedForms().equals(new HashSet<String>(actual.get(j).getStemmedForms()))
+                        || actual.get(j).getStemmedForms().size() != expected.get(j).getStemmedForms().size()) {
+                    throw new Exception("stems: " + expected.get(j).getOriginalWord());
+                }
+            }
+        }
+    }
+
+    public static void test2() throws Exception {
+        // the pipeline must give the same groups as the store built at once, whatever the number of threads and the
+        // budget are
+        List<String> data = InputDataParser.getData(INPUT_FILE);
+        List<Group> expected = WordStore.build(data).getGroups();
+        for (int threadsCount = 1; threadsCount <= 3; threadsCount++) {
+            for (long memoryBudget : new long[] { 0, 1 << 26 }) {
+                StreamingPipeline pipeline = new StreamingPipeline(threadsCount, memoryBudget);
+                CsvReader reader = InputDataParser.open(INPUT_FILE);
+                try {
+                    WordSetTester.checkSameGroups(expected, pipeline.run(reader, false, null, null).getGroups());
+                } finally {
+                    reader.close();
+                }
+                for (StreamingPipeline.Stage stage : pipeline.getStages()) {
+                    if (stage.getWords() != data.size()) {
+                        throw new Exception(stage.toString());
+                    }
+                }
+            }
+        }
+
+        // columns by name in the header, payloads are kept
+        CsvReader reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(
+                "id,word\n1,Бегущий\n2,Дом\n3,бегущими\n4,\"Дома\"\n".getBytes(StandardCharsets.UTF_8))));
+        WordStore store = new StreamingPipeline(2, 0).run(reader, true, "word", "id");
+        String groups = "";
+        for (Group group : store.getGroups()) {
+            for (WordWrapper wrd : group.getElements()) {
+                groups += wrd.getOriginalWord() + "=" + wrd.getPayload() + " ";
+            }
+            groups += "| ";
+        }
+        if (!groups.equals("Бегущий=1 бегущими=3 | Дом=2 Дома=4 | ")) {
+            throw new Exception(groups);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package stemming;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AnalyzerTester {
+
+    public static void test1() throws Exception {
+        // filters are applied in their order and the first one sees chars before the others
+        Analyzer analyzer = new Analyzer(new CharFilter() {
+            @Override
+            public int filter(char c, int index) {
+                return index == 0 ? Character.toUpperCase(c) : c;
+            }
+        }, new CharFilter() {
+            @Override
+            public int filter(char c, int index) {
+                return c == '-' || c == 'A' ? REMOVE : c;
+            }
+        });
+        if (!"Bc".equals(analyzer.analyze("a-Bc").getText())) {
+            throw new Exception(analyzer.analyze("a-Bc").getText());
+        }
+        // nothing is copied if no char is changed
+        String str = "ab'cd";
+        if (new Analyzer().analyze(str).getText() != str) {
+            throw new Exception("copied");
+        }
+    }
+
+    public static void test2() throws Exception {
+        Analyzer analyzer = new Analyzer();
+        // Cyrillic tail: upper case letters followed by lower case ones
+        checkTails(analyzer.analyze("ООО Ромашка"), 4, 1, -1, 0);
+        checkTails(analyzer.analyze("2ГИС"), -1, 0, -1, 0);
+        // Latin tail: apostrophes are both upper and lower case, the leftmost tail is taken
+        checkTails(analyzer.analyze("24nonStop"), -1, 0, 5, 1);
+        checkTails(analyzer.analyze("IPhone's"), -1, 0, 0, 2);
+        checkTails(analyzer.analyze("ab'cd"), -1, 0, 2, 1);
+        Analyzer.Token token = analyzer.analyze("Rock’n’Roll");
+        checkTails(token, -1, 0, 6, 2);
+        if (!"Rock'n'Roll".equals(token.getLatinText())) {
+            throw new Exception(token.getLatinText());
+        }
+        // a line terminator at the end is not a part of tails
+        token = analyzer.analyze("Привет\r\n");
+        checkTails(token, 0, 1, -1, 0);
+        if (token.getTailEnd() != 6) {
+            throw new Exception("tail end: " + token.getTailEnd());
+        }
+    }
+
+    public static void test3() throws Exception {
+        // words are passed only to stemmers of their letters, and they get the same stems as from both stemmers
+        List<String> words = new ArrayList<String>(Arrays.asList("100%", "2.0", "24nonStop", "2ГИС", "IPhone's",
+                "Вода-water", "ООО Ромашка", "Привет\r\n", "'"));
+        words.addAll(Files.readAllLines(Paths.get("data/in/sample.csv")));
+        // cached stems would hide the difference
+        StemCache cache = GeneralStemmer.getCache();
+        GeneralStemmer.setCache(null);
+        try {
+            for (String word : words) {
+                GeneralStemmer.setScriptDispatch(true);
+                List<String> dispatched = GeneralStemmer.getStemmedStrings(word);
+                GeneralStemmer.setScriptDispatch(false);
+                if (!dispatched.equals(GeneralStemmer.getStemmedStrings(word))) {
+                    throw new Exception(word + ": " + dispatched + " | " + GeneralStemmer.getStemmedStrings(word));
+                }
+            }
+        } finally {
+            GeneralStemmer.setScriptDispatch(true);
+            GeneralStemmer.setCache(cache);
+        }
+    }
+
+    private static void checkTails(Analyzer.Token token, int cyrillicStart, int cyrillicUpperCaseLen, int latinStart,
+            int latinUpperCaseLen) throws Exception {
+        if (token.getCyrillicTailStart() != cyrillicStart
+                || cyrillicStart >= 0 && token.getCyrillicUpperCaseLength() != cyrillicUpperCaseLen
+                || token.getLatinTailStart() != latinStart
+                || latinStart >= 0 && token.getLatinUpperCaseLength() != latinUpperCaseLen) {
+            throw new Exception(token.getText() + ": " + token.getCyrillicTailStart() + " "
+                    + token.getCyrillicUpperCaseLength() + " " + token.getLatinTailStart() + " "
+                    + token.getLatinUpperCaseLength());
+        }
+    }
+}
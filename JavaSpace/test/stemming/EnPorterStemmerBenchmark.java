@@ -0,0 +1,61 @@
+package stemming;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prints how many words per second {@link EnPorterStemmer#stem(String)} and the first, regex based implementation of
+ * the stemmer (see EnPorterStemmerTester.ReferenceStemmer) handle, and how many times the current one is faster. Words
+ * are English tokens of the given file converted to lower case, as GeneralStemmer passes them, and the stemmer test
+ * data. The results for data/in/sample.csv are kept in data/test/enStemmerBenchmark.txt.
+ */
+public class EnPorterStemmerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "data/in/sample.csv";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<String> words = new ArrayList<String>();
+        Matcher m = Pattern.compile("[A-Za-z']+").matcher(new String(Files.readAllBytes(Paths.get(file)), "UTF-8"));
+        while (m.find()) {
+            words.add(m.group().toLowerCase());
+        }
+        words.addAll(Files.readAllLines(Paths.get("data/test/PorterStemmingEnInputData.txt")));
+
+        // warming up, then the best of several rounds of both stemmers by turns, so both get the same conditions
+        double[] best = new double[2];
+        for (int i = 0; i < 8; i++) {
+            double rate = run(words, i % 2 == 1, seconds);
+            if (i >= 2) {
+                best[i % 2] = Math.max(best[i % 2], rate);
+            }
+        }
+        System.out.println("file: " + file + ", words: " + words.size());
+        System.out.println("EnPorterStemmer: " + String.format("%.0f", best[0]) + " words per second");
+        System.out.println("regex reference: " + String.format("%.0f", best[1]) + " words per second");
+        System.out.println("speedup: " + String.format("%.1f", best[0] / best[1]) + "x");
+    }
+
+    private static double run(List<String> words, boolean reference, int seconds) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1000000000L;
+        long count = 0;
+        int hash = 0;
+        while (System.nanoTime() < deadline) {
+            for (String word : words) {
+                hash += (reference ? EnPorterStemmerTester.ReferenceStemmer.stem(word) : EnPorterStemmer.stem(word))
+                        .length();
+            }
+            count += words.size();
+        }
+        if (hash == 42) {
+            // only keeps results from being thrown away
+            System.out.println();
+        }
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+}
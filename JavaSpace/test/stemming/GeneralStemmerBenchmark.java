@@ -0,0 +1,82 @@
+package stemming;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints how many words per second {@link GeneralStemmer#getStemmedStrings(String)} handles without a cache, for all
+ * words of the given file and separately for words of each kind: only Cyrillic letters, only Latin ones, both of them
+ * and no letters at all: with the dispatch of words to stemmers of their letters, without it (every word is passed to
+ * both stemmers, as it was before the dispatch) and with transliteration keys. The results for data/in/sample.csv are
+ * kept in data/test/generalStemmerBenchmark.txt.
+ */
+public class GeneralStemmerBenchmark {
+
+    private static final String[] KINDS = { "all", "Cyrillic", "Latin", "mixed", "no letters" };
+
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "data/in/sample.csv";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        List<List<String>> words = new ArrayList<List<String>>();
+        for (int i = 0; i < KINDS.length; i++) {
+            words.add(new ArrayList<String>());
+        }
+        Analyzer analyzer = new Analyzer();
+        int cyrillic = Analyzer.CYRILLIC_UPPER_CASE | Analyzer.CYRILLIC_LOWER_CASE;
+        int latin = Analyzer.LATIN_UPPER_CASE | Analyzer.LATIN_LOWER_CASE;
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            String word = line.replace("\"", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            Analyzer.Token token = analyzer.analyze(word);
+            int kind = token.hasAny(cyrillic) ? (token.hasAny(latin) ? 3 : 1) : (token.hasAny(latin) ? 2 : 4);
+            words.get(0).add(word);
+            words.get(kind).add(word);
+        }
+
+        GeneralStemmer.setCache(null);
+        System.out.println("file: " + file);
+        for (int i = 0; i < KINDS.length; i++) {
+            if (words.get(i).isEmpty()) {
+                continue;
+            }
+            // warming up, then the best of several rounds of each mode by turns, so all of them get the same conditions
+            double[] best = new double[3];
+            for (int j = 0; j < 12; j++) {
+                GeneralStemmer.setScriptDispatch(j % 3 != 1);
+                GeneralStemmer.setTransliteration(j % 3 == 2);
+                double rate = run(words.get(i), seconds);
+                if (j >= 3) {
+                    best[j % 3] = Math.max(best[j % 3], rate);
+                }
+            }
+            GeneralStemmer.setScriptDispatch(true);
+            GeneralStemmer.setTransliteration(false);
+            System.out.println(KINDS[i] + ": " + words.get(i).size() + " words, " + String.format("%.0f", best[0])
+                    + " words per second, " + String.format("%.0f", best[1]) + " without dispatch, "
+                    + String.format("%.0f", best[2]) + " with transliteration");
+        }
+    }
+
+    private static double run(List<String> words, int seconds) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1000000000L;
+        long count = 0;
+        int hash = 0;
+        while (System.nanoTime() < deadline) {
+            for (String word : words) {
+                hash += GeneralStemmer.getStemmedStrings(word).size();
+            }
+            count += words.size();
+        }
+        if (hash == 42) {
+            // only keeps results from being thrown away
+            System.out.println();
+        }
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -50,4 +50,19 @@ public class RuPorterStemmerTester {
         }
     }
 
+    public static void test3() throws Exception {
+        // suffixes which must be preceded by 'а' or 'я' keep it, suffixes never go beyond RV and R2,
+        // a line terminator in the region stops stemming as regular expressions used to do
+        String[] input = { "явшись", "знавшими", "победнейшее", "читающая", "длинный", "прочитавший", "яв",
+                "мудрость", "мудрости", "книга\n" };
+        String[] output = { "явш", "знавш", "победн", "чита", "длин", "прочита", "яв", "мудрост", "мудрост",
+                "книга\n" };
+        for (int i = 0; i < input.length; i++) {
+            if (!RuPorterStemmer.stem(input[i]).equals(output[i])) {
+                throw new Exception("i: " + i + " | input: " + input[i] + " | output: " + output[i] + " | actual: "
+                        + RuPorterStemmer.stem(input[i]));
+            }
+        }
+    }
+
 }
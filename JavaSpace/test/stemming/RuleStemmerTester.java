@@ -0,0 +1,116 @@
+package stemming;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+public class RuleStemmerTester {
+
+    private static final String RU_RULES;
+    private static final String EN_RULES;
+    private static final String RU_INPUT_DATA;
+    private static final String RU_OUTPUT_DATA;
+    private static final String EN_INPUT_DATA;
+    private static final String EN_OUTPUT_DATA;
+
+    static {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream("test/.properties"));
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        RU_RULES = properties.getProperty("RuleStemmer_RU_RULES");
+        EN_RULES = properties.getProperty("RuleStemmer_EN_RULES");
+        RU_INPUT_DATA = properties.getProperty("RuStemmer_INPUT_DATA");
+        RU_OUTPUT_DATA = properties.getProperty("RuStemmer_OUTPUT_DATA");
+        EN_INPUT_DATA = properties.getProperty("EnStemmer_INPUT_DATA");
+        EN_OUTPUT_DATA = properties.getProperty("EnStemmer_OUTPUT_DATA");
+    }
+
+    private static void checkData(RuleStemmer stemmer, String inputData, String outputData) throws Exception {
+        List<String> input = Files.readAllLines(Paths.get(inputData));
+        List<String> output = Files.readAllLines(Paths.get(outputData));
+        for (int i = 0; i < input.size(); i++) {
+            if (!stemmer.stem(input.get(i)).equals(output.get(i))) {
+                throw new Exception("i: " + i + " | input: " + input.get(i) + " | output: " + output.get(i));
+            }
+        }
+    }
+
+    public static void test1() throws Exception {
+        // Russian rules give the same stems as RuPorterStemmer
+        RuleStemmer stemmer = RuleStemmer.load(RU_RULES);
+        checkData(stemmer, RU_INPUT_DATA, RU_OUTPUT_DATA);
+        String[] input = { "явшись", "знавшими", "победнейшее", "читающая", "длинный", "прочитавший", "яв",
+                "мудрость", "мудрости" };
+        for (String word : input) {
+            if (!stemmer.stem(word).equals(RuPorterStemmer.stem(word))) {
+                throw new Exception(word + " | rules: " + stemmer.stem(word));
+            }
+        }
+    }
+
+    public static void test2() throws Exception {
+        // English rules give the same stems as EnPorterStemmer
+        RuleStemmer stemmer = RuleStemmer.load(EN_RULES);
+        checkData(stemmer, EN_INPUT_DATA, EN_OUTPUT_DATA);
+        String[] input = { "'generously's", "communities", "arsenals", "yelling", "sayings", "hopped", "hoping",
+                "skies", "proceeds", "inning", "agreedly", "feed", "logically", "cries", "ties" };
+        for (String word : input) {
+            if (!stemmer.stem(word).equals(EnPorterStemmer.stem(word))) {
+                throw new Exception(word + " | rules: " + stemmer.stem(word));
+            }
+        }
+    }
+
+    public static void test3() throws Exception {
+        // a small language: plurals in R1 lose s but not ss, -ness is removed in R2, words shorter than 4 chars stay
+        RuleStemmer stemmer = RuleStemmer.compile("define v 'aeiou'\n"
+                + "region r1 ( gopast v gopast non-v )\n"
+                + "region r2 ( from r1 gopast v gopast non-v )\n"
+                + "routine plural ( among in r1 ( 'ies' (<- 'y') 's' (delete) 'ss' ) )\n"
+                + "minimum-length 4\n"
+                + "exceptions ( 'news' 'news' )\n"
+                + "backwards ( try plural among in r2 ( 'ness' (delete) ) )");
+        String[] input = { "cats", "bus", "ponies", "news", "goodness", "kindnesses", "seas" };
+        String[] output = { "cat", "bus", "pony", "news", "goodness", "kindnesse", "seas" };
+        for (int i = 0; i < input.length; i++) {
+            if (!stemmer.stem(input[i]).equals(output[i])) {
+                throw new Exception(input[i] + " | " + stemmer.stem(input[i]));
+            }
+        }
+
+        // the cursor is restored when the command of a suffix fails
+        stemmer = RuleStemmer.compile("backwards ( try among ( 's' (hop 1 'x') ) 'bus' among ( 's' (<- 't') ) )");
+        if (!stemmer.stem("bus").equals("but")) {
+            throw new Exception("bus | " + stemmer.stem("bus"));
+        }
+
+        // a shorter suffix is found in the region when a longer one begins before it
+        stemmer = RuleStemmer.compile("define v 'aeiou'\n"
+                + "region r1 ( gopast v gopast non-v )\n"
+                + "backwards ( among in r1 ( 'ness' 'ss' (delete) ) )");
+        if (!stemmer.stem("aness").equals("ane")) {
+            throw new Exception("aness | " + stemmer.stem("aness"));
+        }
+
+        // errors are reported with the line
+        try {
+            RuleStemmer.compile("define v 'aeiou'\nbackwards ( gopast w )");
+            throw new Exception("unknown grouping is accepted");
+        } catch (IllegalArgumentException e) {
+            if (!e.getMessage().startsWith("line 2:")) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package stemming;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StemCacheTester {
+
+    public static void test1() throws Exception {
+        // 16 segments of 2 entries, keys of one segment are found by their hash codes
+        StemCache cache = new StemCache(32);
+        List<String> keys = keysOfOneSegment(4);
+        cache.put(keys.get(0), Arrays.asList("a"));
+        cache.put(keys.get(1), Arrays.asList("b"));
+        // the second use protects the first key
+        if (!Arrays.asList("a").equals(cache.get(keys.get(0)))) {
+            throw new Exception("no first key");
+        }
+        // new keys push out each other from probation but not the protected one
+        cache.put(keys.get(2), Arrays.asList("c"));
+        cache.put(keys.get(3), Arrays.asList("d"));
+        if (cache.get(keys.get(0)) == null || cache.get(keys.get(1)) != null || cache.get(keys.get(2)) != null
+                || cache.get(keys.get(3)) == null) {
+            throw new Exception("wrong eviction");
+        }
+        if (cache.getHits() != 3 || cache.getMisses() != 2 || cache.getEvictions() != 2 || cache.size() != 2) {
+            throw new Exception(cache.toString());
+        }
+    }
+
+    public static void test2() throws Exception {
+        // the weight limit is kept too
+        StemCache cache = new StemCache(1000, 16 * 30);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, Arrays.asList("stem" + i));
+        }
+        if (cache.weight() > 16 * 30 || cache.size() == 0 || cache.getEvictions() != 1000 - cache.size()) {
+            throw new Exception(cache.toString());
+        }
+
+        // limits smaller than the number of segments are kept too
+        for (int maxEntries = 1; maxEntries <= 20; maxEntries++) {
+            StemCache small = new StemCache(maxEntries);
+            StemCache light = new StemCache(1000, maxEntries * 9);
+            for (int i = 0; i < 100; i++) {
+                small.put("key" + i, Arrays.asList("stem" + i));
+                light.put("key" + i, Arrays.asList("s" + i));
+            }
+            if (small.size() != maxEntries || light.weight() > maxEntries * 9) {
+                throw new Exception(maxEntries + ": " + small + " | " + light);
+            }
+        }
+    }
+
+    public static void test3() throws Exception {
+        // threads sharing a small cache get the same stems as without it
+        List<String> words = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get("data/in/testSample.csv"))) {
+            String word = line.replace("\"", "");
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        final List<List<String>> expected = new ArrayList<List<String>>();
+        for (String word : words) {
+            expected.add(GeneralStemmer.getStemmedStrings(word));
+        }
+
+        StemCache cache = new StemCache(64);
+        GeneralStemmer.setCache(cache);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int t = 0; t < 4; t++) {
+                final List<String> shuffled = new ArrayList<String>(words);
+                Collections.shuffle(shuffled);
+                final List<String> original = words;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (String word : shuffled) {
+                            List<String> stems = GeneralStemmer.getStemmedStrings(word);
+                            if (!stems.equals(expected.get(original.indexOf(word)))) {
+                                throw new Exception("word: " + word + " | stems: " + stems);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            GeneralStemmer.setCache(null);
+        }
+        if (cache.size() > 64 || cache.getHits() + cache.getMisses() != 4L * words.size()) {
+            throw new Exception(cache.toString());
+        }
+    }
+
+    private static List<String> keysOfOneSegment(int count) {
+        List<String> keys = new ArrayList<String>();
+        int segment = -1;
+        for (int i = 0; keys.size() < count; i++) {
+            String key = "key" + i;
+            int h = key.hashCode();
+            h ^= h >>> 16;
+            if (segment < 0) {
+                segment = h & 15;
+            }
+            if ((h & 15) == segment) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,140 @@
+package stemming;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StemStoreTester {
+
+    public static void test1() throws Exception {
+        // entries are kept between openings, the table grows, entries of another version are stale and replaced
+        String path = tempPath();
+        try {
+            StemStore store = StemStore.open(path, 1);
+            if (!store.isWriter()) {
+                throw new Exception("not a writer");
+            }
+            for (int i = 0; i < 3000; i++) {
+                store.put("Слово" + i, Arrays.asList("Слов" + i, "Word" + i));
+            }
+            store.put("Пусто", new ArrayList<String>());
+            store.close();
+
+            store = StemStore.open(path, 1);
+            for (int i = 0; i < 3000; i++) {
+                if (!Arrays.asList("Слов" + i, "Word" + i).equals(store.get("Слово" + i))) {
+                    throw new Exception("Слово" + i + " | " + store.get("Слово" + i));
+                }
+            }
+            if (!store.get("Пусто").isEmpty() || store.get("Слово") != null || store.size() != 3001) {
+                throw new Exception(store.toString());
+            }
+            store.close();
+
+            store = StemStore.open(path, 2);
+            if (store.get("Слово1") != null || store.getStale() != 1) {
+                throw new Exception("not stale: " + store);
+            }
+            store.put("Слово1", Arrays.asList("Слово"));
+            if (!Arrays.asList("Слово").equals(store.get("Слово1")) || store.size() != 3001) {
+                throw new Exception("not replaced: " + store);
+            }
+            store.close();
+        } finally {
+            delete(path);
+        }
+    }
+
+    public static void test2() throws Exception {
+        // a store opened while another one writes only reads, and it sees what is written after its opening
+        String path = tempPath();
+        try {
+            StemStore writer = StemStore.open(path, 1);
+            StemStore reader = StemStore.open(path, 1);
+            try {
+                if (!writer.isWriter() || reader.isWriter()) {
+                    throw new Exception("not one writer");
+                }
+                reader.put("Слово", Arrays.asList("Слов"));
+                if (reader.get("Слово") != null) {
+                    throw new Exception("the reader writes");
+                }
+                for (int i = 0; i < 10000; i++) {
+                    writer.put("Слово" + i, Arrays.asList("Слов" + i));
+                }
+                for (int i = 0; i < 10000; i++) {
+                    if (!Arrays.asList("Слов" + i).equals(reader.get("Слово" + i))) {
+                        throw new Exception("Слово" + i + " | " + reader.get("Слово" + i));
+                    }
+                }
+            } finally {
+                reader.close();
+                writer.close();
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    public static void test3() throws Exception {
+        // stemming with a store gives the same forms, the version changes with stemmers
+        long version = GeneralStemmer.getVersion();
+        if (version != GeneralStemmer.getVersion()) {
+            throw new Exception("unstable version");
+        }
+        GeneralStemmer.setStemmers(RuleStemmer.load("src/stemming/rules/russian.rules"),
+                GeneralStemmer.EN_PORTER_STEMMER);
+        long ruleVersion = GeneralStemmer.getVersion();
+        GeneralStemmer.setStemmers(GeneralStemmer.RU_PORTER_STEMMER, GeneralStemmer.EN_PORTER_STEMMER);
+        GeneralStemmer.setTransliteration(true);
+        long transliterationVersion = GeneralStemmer.getVersion();
+        GeneralStemmer.setTransliteration(false);
+        if (ruleVersion == version || transliterationVersion == version) {
+            throw new Exception("the same version for other stemmers");
+        }
+
+        List<String> words = Arrays.asList("Бегущими", "running", "Вода-water", "42", "бегущими");
+        List<List<String>> expected = new ArrayList<List<String>>();
+        for (String word : words) {
+            expected.add(new ArrayList<String>(GeneralStemmer.getStemmedStrings(word)));
+        }
+        String path = tempPath();
+        StemCache cache = GeneralStemmer.getCache();
+        GeneralStemmer.setCache(null);
+        try {
+            for (int i = 0; i < 2; i++) {
+                StemStore store = StemStore.open(path, version);
+                GeneralStemmer.setStore(store);
+                try {
+                    for (int j = 0; j < words.size(); j++) {
+                        if (!expected.get(j).equals(GeneralStemmer.getStemmedStrings(words.get(j)))) {
+                            throw new Exception(words.get(j) + " | " + GeneralStemmer.getStemmedStrings(words.get(j)));
+                        }
+                    }
+                    // the second time all of them are taken from the store
+                    if (i == 1 && store.getMisses() != 0) {
+                        throw new Exception(store.toString());
+                    }
+                } finally {
+                    GeneralStemmer.setStore(null);
+                    store.close();
+                }
+            }
+        } finally {
+            GeneralStemmer.setCache(cache);
+            delete(path);
+        }
+    }
+
+    private static String tempPath() throws Exception {
+        File file = File.createTempFile("stemStore", "");
+        file.delete();
+        return file.getPath();
+    }
+
+    private static void delete(String path) {
+        new File(path + ".log").delete();
+        new File(path + ".idx").delete();
+    }
+}
@@ -0,0 +1,62 @@
+package stemming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransliteratorTester {
+
+    public static void test1() throws Exception {
+        // the longest string wins, case is kept, other chars stay, nothing to transliterate - null
+        String[][] cyrillicToLatin = { { "Щука", "Shchuka" }, { "Ксерокс", "Xerox" }, { "ЩУКА", "SHCHUKA" },
+                { "Дмитрий", "Dmitry" }, { "объём-2", "obёm-2" }, { "Ъ", "" } };
+        for (String[] pair : cyrillicToLatin) {
+            String result = Transliterator.CYRILLIC_TO_LATIN.transliterate(pair[0]);
+            if (!pair[1].equals(result)) {
+                throw new Exception(pair[0] + " | " + result);
+            }
+        }
+        String[][] latinToCyrillic = { { "Samsung", "Самсунг" }, { "Shell", "Шелл" }, { "SHELL", "ШЕЛЛ" },
+                { "Toyota", "Тойота" }, { "Philips", "Филипс" }, { "Jack's", "Джак'с" }, { "Yandex", "Яндекс" } };
+        for (String[] pair : latinToCyrillic) {
+            String result = Transliterator.LATIN_TO_CYRILLIC.transliterate(pair[0]);
+            if (!pair[1].equals(result)) {
+                throw new Exception(pair[0] + " | " + result);
+            }
+        }
+        if (Transliterator.LATIN_TO_CYRILLIC.transliterate("Мир 42") != null) {
+            throw new Exception("nothing to transliterate");
+        }
+    }
+
+    public static void test2() throws Exception {
+        // stemmed forms of Latin words get Cyrillic keys, Cyrillic words and words of both alphabets get no keys
+        GeneralStemmer.setTransliteration(true);
+        try {
+            List<String> latin = GeneralStemmer.getStemmedStrings("Samsung");
+            List<String> cyrillic = GeneralStemmer.getStemmedStrings("самсунга");
+            if (!latin.contains("Samsung") || !latin.contains("Самсунг")
+                    || !cyrillic.equals(Arrays.asList("Самсунг"))) {
+                throw new Exception(latin + " | " + cyrillic);
+            }
+            // keys are stemmed as Cyrillic words, so spellings which the Russian stemmer changes share them too
+            String[][] pairs = { { "Toyota", "Тойота" }, { "Nokia", "Нокиа" }, { "Philips", "Филипс" },
+                    { "Mazda", "Мазда" }, { "Lada", "Лада" }, { "Yandex", "Яндекс" } };
+            for (String[] pair : pairs) {
+                List<String> keys = new ArrayList<String>(GeneralStemmer.getStemmedStrings(pair[0]));
+                keys.retainAll(GeneralStemmer.getStemmedStrings(pair[1]));
+                if (keys.isEmpty()) {
+                    throw new Exception(GeneralStemmer.getStemmedStrings(pair[0]) + " | "
+                            + GeneralStemmer.getStemmedStrings(pair[1]));
+                }
+            }
+            List<String> mixed = new ArrayList<String>(GeneralStemmer.getStemmedStrings("Вода-water"));
+            GeneralStemmer.setTransliteration(false);
+            if (!mixed.equals(GeneralStemmer.getStemmedStrings("Вода-water"))) {
+                throw new Exception(mixed.toString());
+            }
+        } finally {
+            GeneralStemmer.setTransliteration(false);
+        }
+    }
+}
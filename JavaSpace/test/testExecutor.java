@@ -1,18 +1,69 @@
+import stemming.AnalyzerTester;
 import stemming.EnPorterStemmerTester;
 import stemming.RuPorterStemmerTester;
+import stemming.RuleStemmerTester;
+import stemming.StemCacheTester;
+import stemming.StemStoreTester;
+import stemming.TransliteratorTester;
 
 public class testExecutor {
 
     public static void main(String[] args) throws Exception {
         RuPorterStemmerTester.test1();
         RuPorterStemmerTester.test2();
+        RuPorterStemmerTester.test3();
         
         IoDataTester.test1();
+        IoDataTester.test2();
+        IoDataTester.test3();
+        IoDataTester.test4();
+        IoDataTester.test5();
+        IoDataTester.test6();
+        IoDataTester.test7();
+        IoDataTester.test8();
+        
+        WordSetTester.test1();
+        WordSetTester.test2();
+        WordSetTester.test3();
+        WordSetTester.test4();
+        WordSetTester.test5();
+        WordSetTester.test6();
+        WordSetTester.test7();
+        
+        WordStoreTester.test1();
+        WordStoreTester.test2();
+        
+        WordDifferenceCalculatorTester.test1();
+        WordDifferenceCalculatorTester.test2();
+        WordDifferenceCalculatorTester.test3();
+        WordDifferenceCalculatorTester.test4();
+        WordDifferenceCalculatorTester.test5();
+        WordDifferenceCalculatorTester.test6();
         
         EnPorterStemmerTester.test1();
         EnPorterStemmerTester.test2();
         EnPorterStemmerTester.test3();
         EnPorterStemmerTester.test4();
+        EnPorterStemmerTester.test5();
+        
+        AnalyzerTester.test1();
+        AnalyzerTester.test2();
+        AnalyzerTester.test3();
+        
+        StemCacheTester.test1();
+        StemCacheTester.test2();
+        StemCacheTester.test3();
+        
+        RuleStemmerTester.test1();
+        RuleStemmerTester.test2();
+        RuleStemmerTester.test3();
+        
+        TransliteratorTester.test1();
+        TransliteratorTester.test2();
+        
+        StemStoreTester.test1();
+        StemStoreTester.test2();
+        StemStoreTester.test3();
 
     }
 